@@ -13,6 +13,7 @@ import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
 import android.hardware.usb.UsbRequest;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -77,9 +78,12 @@ public class Hackrf implements Runnable{
 	private int transceiverMode = HACKRF_TRANSCEIVER_MODE_OFF;	// current mode of the HackRF
 	private Thread usbThread = null;							// hold the transceiver Thread if running
 	private ArrayBlockingQueue<byte[]> queue = null;			// queue that buffers samples to pass them
-																// between hackrf_android and the application
+																// between the application and hackrf_android while transmitting
 	private ArrayBlockingQueue<byte[]> bufferPool = null;		// queue that holds old buffers which can be
-																// reused while receiving or transmitting samples
+																// reused while transmitting samples
+	private SampleRing ring = null;								// lock-free ring that passes the received samples
+																// from hackrf_android to the application
+	private ByteBuffer[] requestBuffers = null;					// the buffers of the usb requests while receiving
 	
 	// startTime (in ms since 1970) and packetCounter for statistics:
 	private long transceiveStartTime = 0;
@@ -122,8 +126,12 @@ public class Hackrf implements Runnable{
 	// Some Constants:
 	private static final String logTag 					= "hackrf_android";
 	private static final String HACKRF_USB_PERMISSION 	= "com.mantz_it.hackrf_android.USB_PERMISSION";
-	private static final int numUsbRequests 			= 4; 		// Number of parallel UsbRequests
-	private static final int packetSize 				= 1024*16;	// Buffer Size of each UsbRequest
+	public static final int DEFAULT_NUM_USB_REQUESTS 	= 4; 		// Default number of parallel UsbRequests
+	public static final int DEFAULT_PACKET_SIZE 		= 1024*16;	// Default buffer Size of each UsbRequest
+	public static final int USB_PACKET_SIZE 			= 512;		// The transfer size must be a multiple of this
+	
+	private final int numUsbRequests;							// Number of parallel UsbRequests
+	private final int packetSize;								// Buffer Size of each UsbRequest
 	
 	/**
 	 * Initializing the Hackrf Instance with a USB Device. This will try to request
@@ -138,6 +146,30 @@ public class Hackrf implements Runnable{
 	 */
 	public static boolean initHackrf(Context context, final UsbDevice hackrfUsbDvice, final HackrfCallbackInterface callbackInterface, final int queueSize)
 	{
+		return initHackrf(context, hackrfUsbDvice, callbackInterface, queueSize, DEFAULT_NUM_USB_REQUESTS, DEFAULT_PACKET_SIZE);
+	}
+	
+	/**
+	 * Initializing the Hackrf Instance with a USB Device and a custom usb transfer configuration.
+	 * 
+	 * @param context				Application context. Used to retrieve System Services (USB)
+	 * @param callbackInterface		This interface declares two methods that are called if the
+	 * 								device is ready or if there was an error
+	 * @param queueSize				Size of the receive/transmit queue in bytes
+	 * @param numUsbRequests		Number of UsbRequests in flight at the same time
+	 * @param packetSize			Size of each UsbRequest in bytes, a multiple of USB_PACKET_SIZE
+	 * @return false if no Hackrf could be found
+	 */
+	public static boolean initHackrf(Context context, final UsbDevice hackrfUsbDvice, final HackrfCallbackInterface callbackInterface, final int queueSize,
+									 final int numUsbRequests, final int packetSize)
+	{
+		if (numUsbRequests <= 0)
+			throw new IllegalArgumentException("numUsbRequests must be positive");
+		if (packetSize <= 0 || packetSize % USB_PACKET_SIZE != 0)
+			throw new IllegalArgumentException("packetSize must be a positive multiple of " + USB_PACKET_SIZE);
+		if (queueSize / packetSize < 1)
+			throw new IllegalArgumentException("queueSize must hold at least one packet");
+		
 		final UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
 
 		if(usbManager == null) {
@@ -156,7 +188,7 @@ public class Hackrf implements Runnable{
 	                	// return it to the calling application.
 	                	Log.d(logTag,"initHackrf: Permission granted for device " + device.getDeviceName());
 	                	try {
-							Hackrf hackrf = new Hackrf(usbManager, device, queueSize);
+							Hackrf hackrf = new Hackrf(usbManager, device, queueSize, numUsbRequests, packetSize);
 							Toast.makeText(context, "HackRF at " + device.getDeviceName() + " is ready!",Toast.LENGTH_LONG).show();
 							callbackInterface.onHackrfReady(hackrf);
 						} catch (HackrfUsbException e) {
@@ -195,7 +227,7 @@ public class Hackrf implements Runnable{
         } else {
             Log.e(logTag, "No need to ask for permission for device " + hackrfUsbDvice.getDeviceName());
 			try {
-				Hackrf hackrf = new Hackrf(usbManager, hackrfUsbDvice, queueSize);
+				Hackrf hackrf = new Hackrf(usbManager, hackrfUsbDvice, queueSize, numUsbRequests, packetSize);
 				callbackInterface.onHackrfReady(hackrf);
 			} catch (HackrfUsbException e) {
 				e.printStackTrace();
@@ -216,13 +248,17 @@ public class Hackrf implements Runnable{
 	 * @param usbManager	Instance of the USB Manager (System Service)
 	 * @param usbDevice		Instance of an USB Device representing the HackRF
 	 * @param queueSize		Size of the receive/transmit queue in bytes
+	 * @param numUsbRequests	Number of UsbRequests in flight at the same time
+	 * @param packetSize	Size of each UsbRequest in bytes
 	 * @throws HackrfUsbException
 	 */
-	private Hackrf (UsbManager usbManager, UsbDevice usbDevice, int queueSize) throws HackrfUsbException
+	private Hackrf (UsbManager usbManager, UsbDevice usbDevice, int queueSize, int numUsbRequests, int packetSize) throws HackrfUsbException
 	{
 		// Initialize the class attributes:
 		this.usbManager = usbManager;
 		this.usbDevice = usbDevice;
+		this.numUsbRequests = numUsbRequests;
+		this.packetSize = packetSize;
 		
 		// For detailed trouble shooting: Read out information of the device:
 		Log.i(logTag,"constructor: create Hackrf instance from " + usbDevice.getDeviceName()
@@ -273,6 +309,13 @@ public class Hackrf implements Runnable{
 		// Create another queue that will be used to collect old buffers for reusing them.
 		// This will speed up things a lot!
 		this.bufferPool = new ArrayBlockingQueue<byte[]>(queueSize/getPacketSize());
+		
+		// The ring and the buffers of the usb requests are allocated once, the buffers are exchanged
+		// between them while receiving:
+		this.ring = new SampleRing(queueSize/getPacketSize(), getPacketSize());
+		this.requestBuffers = new ByteBuffer[numUsbRequests];
+		for(int i = 0; i < numUsbRequests; i++)
+			this.requestBuffers[i] = ByteBuffer.allocateDirect(getPacketSize());
 	}
 	
 	/**
@@ -952,14 +995,15 @@ public class Hackrf implements Runnable{
 	/**
 	 * Starts receiving.
 	 * 
-	 * @return 	An ArrayBlockingQueue that will fill with the samples as they arrive. 
-	 * 			Each queue element is a block of samples (byte[]) of size getPacketSize().
+	 * @return 	A SampleRing that will fill with the samples as they arrive. 
+	 * 			Each packet is a block of samples (ByteBuffer) of size getPacketSize() and must be
+	 * 			released after it has been processed.
 	 * @throws	HackrfUsbException
 	 */
-	public ArrayBlockingQueue<byte[]> startRX() throws HackrfUsbException
+	public SampleRing startRX() throws HackrfUsbException
 	{
-		// Flush the queue
-	    this.queue.clear();
+		// Flush the ring
+	    this.ring.clear();
 	    
 		// Signal the HackRF Device to start receiving:
 		this.setTransceiverMode(HACKRF_TRANSCEIVER_MODE_RECEIVE);
@@ -972,7 +1016,7 @@ public class Hackrf implements Runnable{
 		this.transceiveStartTime = System.currentTimeMillis();
 		this.transceivePacketCounter = 0;
 		
-		return this.queue;
+		return this.ring;
 	}
 	
 	/**
@@ -1026,8 +1070,9 @@ public class Hackrf implements Runnable{
 			// Create, initialize and queue all usb requests:
 			for(int i = 0; i < numUsbRequests; i++)
 			{
-				// Get a ByteBuffer for the request from the buffer pool:
-				buffer = ByteBuffer.wrap(this.getBufferFromBufferPool());
+				// Each request starts with its own buffer, later it gets the buffers released by the application:
+				buffer = this.requestBuffers[i];
+				buffer.clear();
 				
 			    // Initialize the USB Request:
 				usbRequests[i] = new UsbRequest();
@@ -1065,19 +1110,25 @@ public class Hackrf implements Runnable{
 			    // Increment the packetCounter (for statistics)
 			    this.transceivePacketCounter++;
 			    
-			    // Put the received samples into the queue, so that they can be read by the application
-			    if(!this.queue.offer(buffer.array()))
+			    // Hand the received samples to the application and get a free buffer in exchange:
+			    ByteBuffer free = this.ring.exchange(buffer, SystemClock.elapsedRealtimeNanos());
+			    if(free == buffer)
 			    {
-			    	// We hit the timeout.
+			    	// The application is too slow. The buffer is reused.
 			    	Log.e(logTag,"receiveLoop: Queue is full. Dropping packet!");
 			    }
 			    
-			    // Get a fresh ByteBuffer for the request from the buffer pool:
-				buffer = ByteBuffer.wrap(this.getBufferFromBufferPool());
-				request.setClientData(buffer);
+			    // Keep track of the buffers owned by the requests, they are used again by the next startRX:
+			    for(int i = 0; i < numUsbRequests; i++)
+			    {
+			    	if(this.requestBuffers[i] == buffer)
+			    		this.requestBuffers[i] = free;
+			    }
+			    free.clear();
+				request.setClientData(free);
 			    
 			    // Queue the request again...
-			    if(request.queue(buffer, getPacketSize()) == false){
+			    if(request.queue(free, getPacketSize()) == false){
 	                Log.e(logTag,"receiveLoop: Couldn't queue USB Request.");
 	                break;
 			    }
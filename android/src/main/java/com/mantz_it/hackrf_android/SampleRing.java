@@ -0,0 +1,181 @@
+package com.mantz_it.hackrf_android;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>HackRF USB Library for Android</h1>
+ * 
+ * Module:      SampleRing.java
+ * Description: A lock-free ring which hands the received packets from the usb thread (the only producer)
+ *              to the application (the only consumer). The ring holds preallocated buffers. The producer
+ *              exchanges a filled buffer against the free buffer of the next slot, so the same buffers
+ *              circulate between the usb requests and the application and neither side ever takes a lock.
+ *              The consumer waits by spinning first, then yielding and finally parking until the producer
+ *              wakes it up.
+ */
+public class SampleRing {
+	
+	private static final int SPIN_TRIES 	= 100;		// busy polls before yielding
+	private static final int YIELD_TRIES 	= 10;		// yields before parking
+	private static final long MAX_PARK_NS 	= TimeUnit.MILLISECONDS.toNanos(10);
+	
+	private final ByteBuffer[] slots;
+	
+	// SystemClock.elapsedRealtimeNanos() when the packet of the slot was published
+	private final long[] timestamps;
+	
+	// number of the packet of the slot counting the dropped ones, so dropped packets leave a gap
+	private final long[] sequences;
+	
+	// number of published packets, only written by the producer
+	private final AtomicLong head = new AtomicLong();
+	
+	// number of consumed packets, only written by the consumer
+	private final AtomicLong tail = new AtomicLong();
+	
+	// cached value of tail to avoid reading the consumer's counter for every packet
+	private long tailCache = 0;
+	
+	private volatile Thread waitingConsumer = null;
+	
+	// only written by the producer
+	private volatile long droppedPackets = 0;
+	
+	/**
+	 * @param slotCount		Number of packets the ring can hold
+	 * @param bufferSize	Size of each buffer in bytes
+	 */
+	public SampleRing(int slotCount, int bufferSize)
+	{
+		if (slotCount <= 0) throw new IllegalArgumentException("slotCount must be positive");
+		this.slots = new ByteBuffer[slotCount];
+		this.timestamps = new long[slotCount];
+		this.sequences = new long[slotCount];
+		for(int i = 0; i < slotCount; i++)
+			this.slots[i] = ByteBuffer.allocateDirect(bufferSize);
+	}
+	
+	/**
+	 * Publishes a filled buffer. Must only be called by the producer.
+	 * 
+	 * @param filled		the buffer holding the received packet
+	 * @param timestamp	SystemClock.elapsedRealtimeNanos() when the packet was received
+	 * @return	a free buffer which replaces the filled one, or the filled buffer itself if the ring
+	 * 			is full. In this case the packet is dropped.
+	 */
+	public ByteBuffer exchange(ByteBuffer filled, long timestamp)
+	{
+		long h = this.head.get();
+		if (h - this.tailCache >= this.slots.length) {
+			this.tailCache = this.tail.get();
+			if (h - this.tailCache >= this.slots.length) {
+				this.droppedPackets++;
+				return filled;
+			}
+		}
+		int index = (int) (h % this.slots.length);
+		ByteBuffer free = this.slots[index];
+		this.slots[index] = filled;
+		this.timestamps[index] = timestamp;
+		this.sequences[index] = h + this.droppedPackets;
+		// a full volatile write, so a consumer which is about to park sees either the new head
+		// or is seen as waiting consumer
+		this.head.set(h + 1);
+		Thread consumer = this.waitingConsumer;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+		return free;
+	}
+	
+	/**
+	 * Returns the oldest published packet without removing it. The buffer is valid until
+	 * release() is called. Must only be called by the consumer.
+	 * 
+	 * @param timeout	maximum time to wait for a packet
+	 * @param unit		unit of the timeout
+	 * @return	the buffer with the packet or null if the timeout elapsed
+	 * @throws InterruptedException if the thread has been interrupted while waiting
+	 */
+	public ByteBuffer poll(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long t = this.tail.get();
+		int tries = 0;
+		long deadline = 0;
+		while (this.head.get() == t) {
+			if (tries < SPIN_TRIES) {
+				tries++;
+			} else if (tries < SPIN_TRIES + YIELD_TRIES) {
+				tries++;
+				Thread.yield();
+			} else {
+				long now = System.nanoTime();
+				if (deadline == 0)
+					deadline = now + unit.toNanos(timeout);
+				else if (now >= deadline)
+					return null;
+				this.waitingConsumer = Thread.currentThread();
+				// check again, the producer may have published before it could see the waiting consumer
+				if (this.head.get() == t)
+					LockSupport.parkNanos(this, Math.min(MAX_PARK_NS, deadline - now));
+				this.waitingConsumer = null;
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		}
+		return this.slots[(int) (t % this.slots.length)];
+	}
+	
+	/**
+	 * @return	SystemClock.elapsedRealtimeNanos() when the packet returned by poll() was received. Must only be
+	 * 			called by the consumer.
+	 */
+	public long getTimestamp()
+	{
+		return this.timestamps[(int) (this.tail.get() % this.slots.length)];
+	}
+	
+	/**
+	 * @return	Number of the packet returned by poll() since the ring was created, including the dropped
+	 * 			packets. Must only be called by the consumer.
+	 */
+	public long getSequence()
+	{
+		return this.sequences[(int) (this.tail.get() % this.slots.length)];
+	}
+	
+	/**
+	 * @return	Number of packets waiting for the consumer
+	 */
+	public int size()
+	{
+		return (int) (this.head.get() - this.tail.get());
+	}
+	
+	/**
+	 * Hands the buffer returned by poll() back to the ring. Must only be called by the consumer.
+	 */
+	public void release()
+	{
+		this.tail.lazySet(this.tail.get() + 1);
+	}
+	
+	/**
+	 * Discards all packets. Must only be called while the producer is not running.
+	 */
+	public void clear()
+	{
+		this.tail.set(this.head.get());
+		this.tailCache = this.tail.get();
+	}
+	
+	/**
+	 * @return	Number of packets dropped because the ring was full
+	 */
+	public long getDroppedPackets()
+	{
+		return this.droppedPackets;
+	}
+}
@@ -1,7 +1,5 @@
 package com.mschwartz.rtl_sdr_flutter;
 
-import static com.mschwartz.rtl_sdr_flutter.SdrDeviceProviderRegistry.SDR_DEVICE_PROVIDERS;
-
 import android.content.Context;
 import android.content.Intent;
 
@@ -10,8 +8,12 @@ import androidx.annotation.Nullable;
 
 import com.mschwartz.rtl_sdr_flutter.devices.SdrDevice;
 import com.mschwartz.rtl_sdr_flutter.devices.SdrDeviceProvider;
+import com.mschwartz.rtl_sdr_flutter.dsp.DemodulatorMode;
+import com.mschwartz.rtl_sdr_flutter.recording.RecordingSink;
+import com.mschwartz.rtl_sdr_flutter.rtlsdrdevice.RtlSdrDevice;
 import com.mschwartz.rtl_sdr_flutter.tools.Log;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -77,6 +79,12 @@ public class MethodHandlerImpl implements MethodCallHandler {
                     result.success(names);
                     break;
                 }
+                case "enableGeneratorDevices": {
+                    int enabled = (int) call.arguments;
+                    SdrDeviceProviderRegistry.setGeneratorEnabled(enabled > 0);
+                    result.success("OK");
+                    break;
+                }
                 case "startServer": {
                     if (mConnection != null) {
                         result.error("1003", "Device already selected", "Cannot select a device when there is already one selected");
@@ -85,7 +93,7 @@ public class MethodHandlerImpl implements MethodCallHandler {
                     ArrayList args = (ArrayList) call.arguments;
                     String name = (String) args.get(0);
                     Map<String, Object> map = (Map<String, Object>) args.get(1);
-                    SdrArguments sdrArguments = new SdrArguments((int) map.get("gain"), (int) map.get("samplerateHz"), (int) map.get("frequencyHz"), (int) map.get("ppm"), (int)map.get("amplitude"));
+                    SdrArguments sdrArguments = SdrArguments.fromMap(map);
                     SdrDevice device = null;
                     List<SdrDevice> devices = listDevices();
                     for (SdrDevice d : devices) {
@@ -98,6 +106,9 @@ public class MethodHandlerImpl implements MethodCallHandler {
                         result.error("1004", "Device not found", "Device not found");
                         return;
                     }
+                    streamHandler.getSampleChannel().configure(sdrArguments);
+                    device.startSession(sdrArguments);
+                    streamHandler.startMetrics(device, sdrArguments.getMetricsIntervalMs());
                     mConnection = new SdrServiceConnection(device, sdrArguments);
                     Intent intent = new Intent(context, SdrService.class);
                     context.bindService(intent, mConnection, Context.BIND_AUTO_CREATE);
@@ -109,6 +120,7 @@ public class MethodHandlerImpl implements MethodCallHandler {
                         result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
                         return;
                     }
+                    streamHandler.stopMetrics();
                     mConnection.unbind(context);
                     mConnection = null;
                     result.success("OK");
@@ -247,6 +259,112 @@ public class MethodHandlerImpl implements MethodCallHandler {
                     result.success("OK");
                     break;
                 }
+                case "enableSampleChannel": {
+                    int enabled = (int) call.arguments;
+                    streamHandler.getSampleChannel().setEnabled(enabled > 0);
+                    result.success("OK");
+                    break;
+                }
+                case "getDropStatistics": {
+                    result.success(streamHandler.getSampleChannel().getStatistics());
+                    break;
+                }
+                case "getMetrics": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    result.success(mConnection.getSdrDevice().getMetrics());
+                    break;
+                }
+                case "suggestAsyncBuffers": {
+                    ArrayList args = (ArrayList) call.arguments;
+                    long samplerate = ((Number) args.get(0)).longValue();
+                    int latencyMs = ((Number) args.get(1)).intValue();
+                    result.success(RtlSdrDevice.suggestAsyncBuffers(samplerate, latencyMs));
+                    break;
+                }
+                case "setDemodulator": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    ArrayList args = (ArrayList) call.arguments;
+                    DemodulatorMode mode = DemodulatorMode.valueOf((String) args.get(0));
+                    long offsetHz = ((Number) args.get(1)).longValue();
+                    int deemphasisUs = ((Number) args.get(2)).intValue();
+                    mConnection.getSdrDevice().setDemodulator(mode, offsetHz, deemphasisUs);
+                    result.success("OK");
+                    break;
+                }
+                case "startRecording": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    ArrayList args = (ArrayList) call.arguments;
+                    File prefix = args.get(0) != null ? new File((String) args.get(0)) : RecordingSink.defaultPrefix(context);
+                    long segmentBytes = ((Number) args.get(1)).longValue();
+                    long maxBytes = ((Number) args.get(2)).longValue();
+                    long maxDurationMs = ((Number) args.get(3)).longValue();
+                    mConnection.getSdrDevice().startRecording(prefix, segmentBytes, maxBytes, maxDurationMs);
+                    result.success(prefix.getPath());
+                    break;
+                }
+                case "stopRecording": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    result.success(mConnection.getSdrDevice().stopRecording());
+                    break;
+                }
+                case "getRecordingStatus": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    result.success(mConnection.getSdrDevice().getRecordingStatus());
+                    break;
+                }
+                case "startTriggerCapture": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    ArrayList args = (ArrayList) call.arguments;
+                    File prefix = args.get(0) != null ? new File((String) args.get(0)) : RecordingSink.defaultPrefix(context);
+                    long preTriggerMs = ((Number) args.get(1)).longValue();
+                    long postTriggerMs = ((Number) args.get(2)).longValue();
+                    boolean squelchTrigger = (Boolean) args.get(3);
+                    mConnection.getSdrDevice().startTriggerCapture(prefix, preTriggerMs, postTriggerMs, squelchTrigger);
+                    result.success(prefix.getPath());
+                    break;
+                }
+                case "trigger": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    result.success(mConnection.getSdrDevice().trigger());
+                    break;
+                }
+                case "stopTriggerCapture": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    result.success(mConnection.getSdrDevice().stopTriggerCapture());
+                    break;
+                }
+                case "getTriggerCaptureStatus": {
+                    if (mConnection == null) {
+                        result.error("1000", "No device selected", "Cannot perform the requested command without a selected device");
+                        return;
+                    }
+                    result.success(mConnection.getSdrDevice().getTriggerCaptureStatus());
+                    break;
+                }
                 default:
                     result.notImplemented();
                     break;
@@ -259,6 +377,7 @@ public class MethodHandlerImpl implements MethodCallHandler {
     }
 
     public void deviceClosed(SdrDevice device) {
+        streamHandler.stopMetrics();
         if (mConnection != null) {
             // The service will unbind itself
             //mConnection.unbind(context);
@@ -268,7 +387,7 @@ public class MethodHandlerImpl implements MethodCallHandler {
 
     private List<SdrDevice> listDevices() {
         List<SdrDevice> availableSdrDevices = new ArrayList<>();
-        for (SdrDeviceProvider sdrDeviceProvider : SDR_DEVICE_PROVIDERS) {
+        for (SdrDeviceProvider sdrDeviceProvider : SdrDeviceProviderRegistry.getProviders()) {
             List<SdrDevice> devicesForProvider = sdrDeviceProvider.listDevices(context, streamHandler, this,false);
             availableSdrDevices.addAll(devicesForProvider);
             Log.appendLine("%s: found %d device opening options", sdrDeviceProvider.getName(), devicesForProvider.size());
@@ -0,0 +1,13 @@
+package com.mschwartz.rtl_sdr_flutter;
+
+/**
+ * What the {@link SampleChannel} does with new data if flutter falls behind and all frames are queued.
+ */
+public enum OverflowPolicy {
+    /// the oldest queued frame is discarded to make room for the new data
+    DROP_OLDEST,
+    /// the new data is discarded
+    DROP_NEWEST,
+    /// the device thread waits until flutter has consumed a frame
+    BLOCK,
+}
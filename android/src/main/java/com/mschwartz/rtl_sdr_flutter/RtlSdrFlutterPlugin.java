@@ -70,7 +70,7 @@ public class RtlSdrFlutterPlugin implements FlutterPlugin, ActivityAware {
 
         context = binding.getActivity().getApplicationContext();
         //activity = binding.getActivity();
-        streamHandlerImpl = new StreamHandlerImpl();
+        streamHandlerImpl = new StreamHandlerImpl(binaryMessenger);
         methodHandlerImpl = new MethodHandlerImpl(context, streamHandlerImpl);
         methodChannel = new MethodChannel(binaryMessenger, "rtl_sdr_flutter");
         methodChannel.setMethodCallHandler(methodHandlerImpl);
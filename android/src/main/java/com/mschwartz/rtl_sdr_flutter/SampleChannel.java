@@ -0,0 +1,427 @@
+package com.mschwartz.rtl_sdr_flutter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.mschwartz.rtl_sdr_flutter.devices.DeviceMetrics;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.tools.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * A channel dedicated to the sample data. Each frame is sent as one binary message consisting of a small header
+ * followed by the payload, so no map, no codec and no allocation is involved per packet. The packets are copied into
+ * a ring of preallocated frames by the device thread. Flutter only accepts messages from the main thread, hence the
+ * frames are sent by a single drain task which handles all frames available at that time.
+ * <p>
+ * Packets may be batched: a frame is sent when it holds maxBatchBytes or when its first packet is older than
+ * maxBatchLatencyMs, whichever comes first. Without batching every packet becomes its own frame.
+ * <p>
+ * The number of queued frames is bounded by queueSize. If flutter falls behind the {@link OverflowPolicy} decides
+ * whether old or new data is dropped or the device thread waits. Dropped data is counted, see
+ * {@link #getStatistics()}.
+ * <p>
+ * The header is little endian:
+ * <pre>
+ *   0 u8  version
+ *   1 u8  flags, see FLAG_xxx
+ *   2 u16 size of the header in bytes
+ *   4 u32 length of the payload in bytes
+ *   8 u64 sequence number of the frame
+ *  16 u64 timestamp in nanoseconds (SystemClock.elapsedRealtimeNanos) when the usb buffer of the first payload
+ *         was received
+ *  24 u64 sequence number of the usb buffer of the first payload, see {@link SamplePacket}
+ *  32 u64 index of the first sample of the payload within the stream of the device
+ *  40 u32 number of usb buffers which start in the frame
+ *  44 u8  format of the payload, see {@link SampleFormat}
+ *  45     3 bytes reserved, 0
+ * </pre>
+ * The usb buffers of a frame are consecutive and have the same format. If buffers are missing between two packets a
+ * new frame is started and flagged with {@link #FLAG_GAP}, so the sample index of the frame is exact for every
+ * payload, e.g. for each burst passed by the squelch.
+ * The delivered and dropped buffers, the fill level of the queue and the latency of the frames are counted in the
+ * {@link DeviceMetrics} of the current device. A buffer which is split across two frames is counted in the frame of
+ * its first byte only.
+ * <p>
+ * If the channel is not enabled the frames are handed to the {@link Listener} instead, which sends them via the
+ * map-based {@link StreamHandlerImpl}. Device and usb events are always sent via the {@link StreamHandlerImpl}.
+ */
+public class SampleChannel {
+
+    public static final String CHANNEL_NAME = "rtl_sdr_flutter_samples";
+
+    public static final int VERSION = 2;
+
+    public static final int HEADER_SIZE = 48;
+
+    /// at least one frame before this one has been dropped
+    public static final int FLAG_DISCONTINUITY = 1;
+
+    /// usb buffers before this frame did not reach java, they were dropped by the driver or trimmed completely
+    public static final int FLAG_GAP = 2;
+
+    private static final int DEFAULT_FRAME_CAPACITY = 16 * 32 * 512;
+
+    private static final long BLOCK_WAIT_MS = 100;
+
+    private final BinaryMessenger messenger;
+
+    private final Listener listener;
+
+    private final MainThread mainThread;
+
+    /// guards all fields below. The drain task holds the lock while a frame is sent, so the producer never
+    /// writes into a frame which is read at the same time.
+    private final Object lock = new Object();
+
+    private ByteBuffer[] frames;
+
+    /// number of buffers which start in the frame with the same index
+    private int[] frameBuffers;
+
+    /// number of frames published by the producer
+    private long head;
+
+    /// number of frames sent or dropped
+    private long tail;
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final Runnable drainTask = this::drain;
+
+    private final Runnable flushTask = this::flushExpired;
+
+    private volatile boolean enabled;
+
+    /// the frame which is currently filled by the producer or null
+    private ByteBuffer open;
+
+    private long openTimestamp;
+
+    private boolean flushScheduled;
+
+    private int maxBatchBytes;
+
+    private long maxBatchLatencyNanos;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    private long sequence;
+
+    private boolean discontinuity;
+
+    /// the sequence number of the last usb buffer offered and whether the next frame follows missing buffers
+    private long lastBufferSequence;
+
+    private SampleFormat lastFormat;
+
+    private boolean gap;
+
+    private long droppedBuffers;
+
+    private long droppedBytes;
+
+    private volatile DeviceMetrics metrics = new DeviceMetrics();
+
+    public SampleChannel(BinaryMessenger messenger, Listener listener) {
+        this(messenger, listener, new LooperMainThread());
+    }
+
+    SampleChannel(BinaryMessenger messenger, Listener listener, MainThread mainThread) {
+        this.messenger = messenger;
+        this.listener = listener;
+        this.mainThread = mainThread;
+        configure(new SdrArguments(0, 0, 0, 0, 0));
+    }
+
+    /**
+     * Sets the batching and queueing parameters for a new session and reallocates the frames if necessary.
+     * Frames not yet sent are discarded and the statistics are reset.
+     */
+    public void configure(SdrArguments sdrArguments) {
+        int maxBatchBytes = sdrArguments.getMaxBatchBytes();
+        int frameCapacity = maxBatchBytes > 0 ? maxBatchBytes : DEFAULT_FRAME_CAPACITY;
+        int queueSize = sdrArguments.getQueueSize();
+        synchronized (lock) {
+            this.maxBatchBytes = maxBatchBytes;
+            this.maxBatchLatencyNanos = TimeUnit.MILLISECONDS.toNanos(sdrArguments.getMaxBatchLatencyMs());
+            this.overflowPolicy = sdrArguments.getOverflowPolicy();
+            if (frames == null || frames.length != queueSize || frames[0].capacity() != HEADER_SIZE + frameCapacity) {
+                frames = new ByteBuffer[queueSize];
+                for (int i = 0; i < frames.length; ++i) {
+                    frames[i] = ByteBuffer.allocateDirect(HEADER_SIZE + frameCapacity).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                frameBuffers = new int[queueSize];
+            }
+            open = null;
+            tail = head;
+            droppedBuffers = 0;
+            droppedBytes = 0;
+            discontinuity = false;
+            lastBufferSequence = -1;
+            lastFormat = null;
+            gap = false;
+            lock.notifyAll();
+        }
+        Log.appendLine("SampleChannel: batching %d bytes, %d ms, %d frames, %s", maxBatchBytes,
+                sdrArguments.getMaxBatchLatencyMs(), queueSize, overflowPolicy);
+    }
+
+    /**
+     * Sets the metrics of the device which sends the samples.
+     */
+    public void setMetrics(DeviceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        Log.appendLine("SampleChannel: " + (enabled ? "enabled" : "disabled"));
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the number of dropped buffers and bytes since the last {@link #configure(SdrArguments)} as well as the
+     * current fill level of the queue.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> map = new HashMap<>();
+        synchronized (lock) {
+            map.put("droppedBuffers", droppedBuffers);
+            map.put("droppedBytes", droppedBytes);
+            map.put("queued", head - tail);
+            map.put("queueSize", frames.length);
+            map.put("overflowPolicy", overflowPolicy.name());
+        }
+        return map;
+    }
+
+    /**
+     * Queues the remaining bytes of the packet. The buffer of the packet may be reused as soon as this method returns.
+     * If all frames are in use the {@link OverflowPolicy} applies and the frame following the dropped data is flagged
+     * with {@link #FLAG_DISCONTINUITY}.
+     */
+    public void offer(SamplePacket packet) {
+        ByteBuffer data = packet.getBuffer();
+        long timestamp = packet.getTimestampNanos();
+        boolean scheduleFlush = false;
+        synchronized (lock) {
+            long bufferSequence = packet.getSequence();
+            SampleFormat format = packet.getFormat();
+            if (bufferSequence != lastBufferSequence + 1) {
+                // the frames only hold consecutive buffers
+                if (open != null) publish();
+                gap = true;
+            } else if (format != lastFormat && open != null) {
+                publish();
+            }
+            lastBufferSequence = bufferSequence;
+            lastFormat = format;
+            int start = data.position();
+            int limit = data.limit();
+            while (data.hasRemaining()) {
+                long sampleIndex = packet.getSampleIndex() + (data.position() - start) / format.getBytesPerSample();
+                boolean first = data.position() == start;
+                if (open == null && !openFrame(timestamp, bufferSequence, sampleIndex, format)) {
+                    // the rest of a buffer whose start was queued is only counted in bytes
+                    if (first) {
+                        metrics.onDropped(1);
+                        droppedBuffers++;
+                    }
+                    droppedBytes += data.remaining();
+                    discontinuity = true;
+                    data.position(limit);
+                    break;
+                }
+                int length = Math.min(data.remaining(), open.remaining());
+                data.limit(data.position() + length);
+                open.put(data);
+                data.limit(limit);
+                if (first) frameBuffers[(int) (head % frames.length)]++;
+                if (!open.hasRemaining()) publish();
+            }
+            data.position(start);
+            if (open != null) {
+                if (maxBatchBytes == 0 || (maxBatchLatencyNanos > 0 && timestamp - openTimestamp >= maxBatchLatencyNanos)) {
+                    publish();
+                } else if (maxBatchLatencyNanos > 0 && !flushScheduled) {
+                    flushScheduled = true;
+                    scheduleFlush = true;
+                }
+            }
+        }
+        if (scheduleFlush) {
+            mainThread.postDelayed(flushTask, TimeUnit.NANOSECONDS.toMillis(maxBatchLatencyNanos));
+        }
+        scheduleDrain();
+    }
+
+    /// opens the frame at head, returns false if the data must be dropped
+    private boolean openFrame(long timestamp, long bufferSequence, long sampleIndex, SampleFormat format) {
+        while (head - tail >= frames.length) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    return false;
+                case DROP_OLDEST:
+                    dropOldest();
+                    break;
+                case BLOCK:
+                    scheduleDrain();
+                    try {
+                        lock.wait(BLOCK_WAIT_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    break;
+            }
+        }
+        int index = (int) (head % frames.length);
+        open = frames[index];
+        frameBuffers[index] = 0;
+        open.clear();
+        open.put((byte) VERSION);
+        open.put((byte) ((discontinuity ? FLAG_DISCONTINUITY : 0) | (gap ? FLAG_GAP : 0)));
+        open.putShort((short) HEADER_SIZE);
+        open.putInt(0);
+        open.putLong(sequence++);
+        open.putLong(timestamp);
+        open.putLong(bufferSequence);
+        open.putLong(sampleIndex);
+        open.putInt(0);
+        open.putInt(format.getCode());
+        openTimestamp = timestamp;
+        discontinuity = false;
+        gap = false;
+        return true;
+    }
+
+    private void dropOldest() {
+        int index = (int) (tail % frames.length);
+        droppedBuffers += frameBuffers[index];
+        metrics.onDropped(frameBuffers[index]);
+        droppedBytes += frames[index].getInt(4);
+        tail++;
+        int next = (int) (tail % frames.length);
+        if (tail < head) {
+            ByteBuffer frame = frames[next];
+            frame.put(1, (byte) (frame.get(1) | FLAG_DISCONTINUITY));
+        } else {
+            discontinuity = true;
+        }
+    }
+
+    private void publish() {
+        // flutter sends everything up to the position of the buffer, so the position stays at the end
+        open.putInt(4, open.position() - HEADER_SIZE);
+        open.putInt(40, frameBuffers[(int) (head % frames.length)]);
+        open = null;
+        head++;
+        metrics.onQueueLevel(head - tail);
+    }
+
+    /// sends the open frame if it waits longer than maxBatchLatencyMs, runs in the main thread
+    private void flushExpired() {
+        long delayNanos = 0;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (open != null) {
+                long age = mainThread.elapsedRealtimeNanos() - openTimestamp;
+                if (age >= maxBatchLatencyNanos) {
+                    publish();
+                } else {
+                    flushScheduled = true;
+                    delayNanos = maxBatchLatencyNanos - age;
+                }
+            }
+        }
+        if (delayNanos > 0) {
+            mainThread.postDelayed(flushTask, Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos)));
+        }
+        drain();
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            mainThread.post(drainTask);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        synchronized (lock) {
+            while (tail < head) {
+                int index = (int) (tail % frames.length);
+                ByteBuffer frame = frames[index];
+                metrics.onDelivered(frameBuffers[index], frame.getInt(4), frame.getLong(16));
+                if (enabled) {
+                    messenger.send(CHANNEL_NAME, frame);
+                } else {
+                    int position = frame.position();
+                    frame.limit(position);
+                    frame.position(HEADER_SIZE);
+                    listener.onFrame(frame);
+                    frame.limit(frame.capacity());
+                    frame.position(position);
+                }
+                tail++;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Runs the drain and flush tasks in the main thread and tells the time of the frames.
+     */
+    interface MainThread {
+        void post(Runnable task);
+
+        void postDelayed(Runnable task, long delayMs);
+
+        /// SystemClock.elapsedRealtimeNanos()
+        long elapsedRealtimeNanos();
+    }
+
+    private static class LooperMainThread implements MainThread {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void post(Runnable task) {
+            handler.post(task);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            handler.postDelayed(task, delayMs);
+        }
+
+        @Override
+        public long elapsedRealtimeNanos() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+    }
+
+    /**
+     * Receives the frames while the channel is not enabled.
+     */
+    public interface Listener {
+        /**
+         * Called in the main thread. The remaining bytes of the payload are the data of the frame, the buffer
+         * is reused after the method returns.
+         */
+        void onFrame(ByteBuffer payload);
+    }
+}
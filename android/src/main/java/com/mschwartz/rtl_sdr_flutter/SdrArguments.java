@@ -20,7 +20,12 @@
 
 package com.mschwartz.rtl_sdr_flutter;
 
+import com.mschwartz.rtl_sdr_flutter.dsp.DemodulatorMode;
+import com.mschwartz.rtl_sdr_flutter.dsp.WindowType;
+import com.mschwartz.rtl_sdr_flutter.tools.Check;
+
 import java.io.Serializable;
+import java.util.Map;
 
 public class SdrArguments implements Serializable {
 
@@ -32,6 +37,39 @@ public class SdrArguments implements Serializable {
     private static final int DEFAULT_PPM = 0;
     private static final long DEFAULT_FREQUENCY = 100000000;
     private static final long DEFAULT_SAMPLING_RATE = 2048000;
+    private static final int DEFAULT_BUFFER_POOL_SIZE = 0;
+    private static final int DEFAULT_MAX_BATCH_BYTES = 0;
+    private static final int DEFAULT_MAX_BATCH_LATENCY_MS = 20;
+    private static final int DEFAULT_QUEUE_SIZE = 8;
+    private static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_NEWEST;
+    private static final int DEFAULT_HACKRF_USB_REQUESTS = 4;
+    private static final int DEFAULT_HACKRF_TRANSFER_SIZE = 16 * 1024;
+    private static final int DEFAULT_HACKRF_BUFFER_TIME_MS = 100;
+    private static final String DEFAULT_TCP_ADDRESS = "localhost";
+    private static final int DEFAULT_TCP_PORT = 7777;
+    private static final int DEFAULT_TCP_MAX_CLIENTS = 4;
+    private static final int DEFAULT_TCP_CLIENT_QUEUE_SIZE = 64;
+    private static final int DEFAULT_ASYNC_BUFFER_COUNT = 0;
+    private static final int DEFAULT_ASYNC_BUFFER_LENGTH = 0;
+    private static final int DEFAULT_METRICS_INTERVAL_MS = 0;
+    private static final int DEFAULT_SPECTRUM_FFT_SIZE = 0;
+    private static final int DEFAULT_SPECTRUM_AVERAGES = 8;
+    private static final WindowType DEFAULT_SPECTRUM_WINDOW = WindowType.HANN;
+    private static final int DEFAULT_CHANNEL_DECIMATION = 1;
+    private static final int DEFAULT_CHANNEL_TAPS = 0;
+    private static final DemodulatorMode DEFAULT_DEMODULATOR = DemodulatorMode.OFF;
+    private static final int DEFAULT_DEEMPHASIS_US = 50;
+    private static final int DEFAULT_SQUELCH_THRESHOLD = 0;
+    private static final int DEFAULT_SQUELCH_HYSTERESIS = 0;
+    private static final int DEFAULT_SQUELCH_ATTACK = 1;
+    private static final int DEFAULT_SQUELCH_RELEASE = 64;
+    private static final int DEFAULT_SQUELCH_PRE_TRIGGER = 0;
+    private static final int DEFAULT_SQUELCH_POST_TRIGGER = 0;
+
+    private static final int DEFAULT_GENERATOR_SNR_DB = 20;
+
+    private static final long DEFAULT_GENERATOR_OFFSET_HZ = 100000;
+    private static final int MAX_SQUELCH_SAMPLES = 1 << 20;
 
 	private final int gain;
 	private final long samplerateHz;
@@ -40,6 +78,204 @@ public class SdrArguments implements Serializable {
 
     private final int amplitude;
 
+    /**
+     * Number of direct buffers which are registered at the native side to hand over the samples. Zero means
+     * that a new byte array will be created for each packet.
+     */
+    private int bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+
+    /**
+     * Packets are collected until this number of bytes is reached before they are sent to flutter. Zero sends
+     * every packet on its own.
+     */
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+
+    /**
+     * The maximum time in milliseconds a packet waits for further packets if batching is enabled. Zero waits until
+     * maxBatchBytes is reached.
+     */
+    private int maxBatchLatencyMs = DEFAULT_MAX_BATCH_LATENCY_MS;
+
+    /**
+     * The maximum number of frames waiting to be sent to flutter.
+     */
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    /**
+     * What happens to new data if queueSize frames are waiting.
+     */
+    private OverflowPolicy overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+
+    /**
+     * Number of usb requests a HackRF keeps in flight. More requests tolerate longer scheduling delays of the phone.
+     */
+    private int hackrfUsbRequests = DEFAULT_HACKRF_USB_REQUESTS;
+
+    /**
+     * Size of each usb transfer of a HackRF in bytes, a multiple of 512. Bigger transfers need less cpu, smaller
+     * transfers lower the latency.
+     */
+    private int hackrfTransferSize = DEFAULT_HACKRF_TRANSFER_SIZE;
+
+    /**
+     * The time in milliseconds of samples a HackRF buffers between the usb thread and the consumer.
+     */
+    private int hackrfBufferTimeMs = DEFAULT_HACKRF_BUFFER_TIME_MS;
+
+    /**
+     * True if a rtl-sdr device serves its samples to rtl_tcp clients in addition to flutter. HackRF devices always
+     * serve via tcp.
+     */
+    private boolean tcpServer;
+
+    /**
+     * The address the rtl_tcp server binds to, e.g. "0.0.0.0" to accept clients of other hosts.
+     */
+    private String tcpAddress = DEFAULT_TCP_ADDRESS;
+
+    /**
+     * The port of the rtl_tcp server of devices which serve their samples via tcp.
+     */
+    private int tcpPort = DEFAULT_TCP_PORT;
+
+    /**
+     * True if a HackRF sends its signed 8 bit samples to the tcp clients as they are. By default they are converted
+     * to unsigned samples like the ones of a rtl-sdr dongle.
+     */
+    private boolean signedSamples;
+
+    /**
+     * The maximum number of clients connected to the rtl_tcp server at the same time.
+     */
+    private int tcpMaxClients = DEFAULT_TCP_MAX_CLIENTS;
+
+    /**
+     * The number of packets queued per client of the rtl_tcp server. Further packets are dropped for this client.
+     */
+    private int tcpClientQueueSize = DEFAULT_TCP_CLIENT_QUEUE_SIZE;
+
+    /**
+     * Number of usb transfers librtlsdr keeps in flight for a rtl-sdr device. More buffers tolerate longer
+     * scheduling delays of the phone. Zero uses the default of librtlsdr (15).
+     */
+    private int asyncBufferCount = DEFAULT_ASYNC_BUFFER_COUNT;
+
+    /**
+     * Size of each usb transfer of a rtl-sdr device in bytes, a multiple of 512. Smaller buffers lower the latency,
+     * bigger buffers need less cpu. Zero uses the default of librtlsdr (256 KiB).
+     */
+    private int asyncBufferLength = DEFAULT_ASYNC_BUFFER_LENGTH;
+
+    /**
+     * The interval in milliseconds the metrics of the device are sent to flutter as "Metrics" event. Zero sends
+     * them only on request.
+     */
+    private int metricsIntervalMs = DEFAULT_METRICS_INTERVAL_MS;
+
+    /**
+     * False if the samples are not sent to flutter, e.g. if only the spectrum is needed.
+     */
+    private boolean sendSamples = true;
+
+    /**
+     * Number of bins of the spectrum which is computed from the I/Q samples and sent to flutter as "Spectrum" event,
+     * a power of two. Zero computes no spectrum.
+     */
+    private int spectrumFftSize = DEFAULT_SPECTRUM_FFT_SIZE;
+
+    /**
+     * Number of frames which are averaged for one spectrum.
+     */
+    private int spectrumAverages = DEFAULT_SPECTRUM_AVERAGES;
+
+    private WindowType spectrumWindow = DEFAULT_SPECTRUM_WINDOW;
+
+    /**
+     * The samples sent to flutter are reduced to a channel at channelOffsetHz from the center frequency and
+     * samplerateHz / channelDecimation. One sends the samples of the device as they are.
+     */
+    private int channelDecimation = DEFAULT_CHANNEL_DECIMATION;
+
+    /**
+     * The center of the channel relative to the center frequency of the device.
+     */
+    private long channelOffsetHz;
+
+    /**
+     * Number of taps of the channel filter, zero chooses 8 taps per decimation.
+     */
+    private int channelTaps = DEFAULT_CHANNEL_TAPS;
+
+    /**
+     * The channel at channelOffsetHz is demodulated and sent to flutter as 16 bit audio at 48 kHz, see
+     * {@link com.mschwartz.rtl_sdr_flutter.dsp.Demodulator}. Takes precedence over channelDecimation.
+     */
+    private DemodulatorMode demodulator = DEFAULT_DEMODULATOR;
+
+    /**
+     * Time constant of the FM de-emphasis in microseconds, 50 in Europe and 75 in America, zero turns it off.
+     */
+    private int deemphasisUs = DEFAULT_DEEMPHASIS_US;
+
+    /**
+     * Decodes Mode-S and ADS-B messages and sends them as "ModeS" event, see
+     * {@link com.mschwartz.rtl_sdr_flutter.modes.ModeSDecoder}. Needs a sample rate of 2 MS/s.
+     */
+    private boolean modeS;
+
+    /**
+     * Only the bursts whose magnitude (0 to 255) exceeds this threshold are sent to flutter, see
+     * {@link com.mschwartz.rtl_sdr_flutter.dsp.Squelch}. Zero sends everything. Can be changed with setMargin.
+     */
+    private int squelchThreshold = DEFAULT_SQUELCH_THRESHOLD;
+
+    /**
+     * The squelch closes below squelchThreshold - squelchHysteresis.
+     */
+    private int squelchHysteresis = DEFAULT_SQUELCH_HYSTERESIS;
+
+    /**
+     * Number of samples in a row above the threshold which open the squelch.
+     */
+    private int squelchAttack = DEFAULT_SQUELCH_ATTACK;
+
+    /**
+     * Number of samples in a row below the closing level which close the squelch.
+     */
+    private int squelchRelease = DEFAULT_SQUELCH_RELEASE;
+
+    /**
+     * Number of samples sent before the attack of a burst.
+     */
+    private int squelchPreTrigger = DEFAULT_SQUELCH_PRE_TRIGGER;
+
+    /**
+     * Number of samples sent after the release of a burst.
+     */
+    private int squelchPostTrigger = DEFAULT_SQUELCH_POST_TRIGGER;
+
+    /**
+     * True if a replayed recording or a generated signal is delivered at samplerateHz like a real device, false
+     * delivers it as fast as the consumers can take it, see {@link com.mschwartz.rtl_sdr_flutter.devices.SoftwareSdrDevice}.
+     */
+    private boolean replayPaced = true;
+
+    /**
+     * True if a replayed recording starts again at its end instead of closing the device.
+     */
+    private boolean replayLoop;
+
+    /**
+     * The ratio of the power of a generated signal to the power of the noise in dB, see
+     * {@link com.mschwartz.rtl_sdr_flutter.generatordevice.GeneratorSdrDevice}.
+     */
+    private int generatorSnrDb = DEFAULT_GENERATOR_SNR_DB;
+
+    /**
+     * The frequency of a generated tone and of the carrier of generated Mode-S bursts relative to the center.
+     */
+    private long generatorOffsetHz = DEFAULT_GENERATOR_OFFSET_HZ;
+
     public SdrArguments(int gain, long samplerateHz, long frequencyHz, int ppm, int amplitude) {
         this.gain = gain;
         this.samplerateHz = samplerateHz;
@@ -48,6 +284,71 @@ public class SdrArguments implements Serializable {
         this.amplitude = amplitude;
     }
 
+    /**
+     * Creates the arguments from the map sent by flutter. Optional settings which are not contained in the map
+     * keep their default values.
+     */
+    public static SdrArguments fromMap(Map<String, Object> map) {
+        SdrArguments sdrArguments = new SdrArguments(
+                getInt(map, "gain", DEFAULT_GAIN),
+                getLong(map, "samplerateHz", DEFAULT_SAMPLING_RATE),
+                getLong(map, "frequencyHz", DEFAULT_FREQUENCY),
+                getInt(map, "ppm", DEFAULT_PPM),
+                getInt(map, "amplitude", 0));
+        sdrArguments.setBufferPoolSize(getInt(map, "bufferPoolSize", DEFAULT_BUFFER_POOL_SIZE));
+        sdrArguments.setMaxBatchBytes(getInt(map, "maxBatchBytes", DEFAULT_MAX_BATCH_BYTES));
+        sdrArguments.setMaxBatchLatencyMs(getInt(map, "maxBatchLatencyMs", DEFAULT_MAX_BATCH_LATENCY_MS));
+        sdrArguments.setQueueSize(getInt(map, "queueSize", DEFAULT_QUEUE_SIZE));
+        if (map.get("overflowPolicy") != null)
+            sdrArguments.setOverflowPolicy(OverflowPolicy.valueOf((String) map.get("overflowPolicy")));
+        sdrArguments.setHackrfUsbRequests(getInt(map, "hackrfUsbRequests", DEFAULT_HACKRF_USB_REQUESTS));
+        sdrArguments.setHackrfTransferSize(getInt(map, "hackrfTransferSize", DEFAULT_HACKRF_TRANSFER_SIZE));
+        sdrArguments.setHackrfBufferTimeMs(getInt(map, "hackrfBufferTimeMs", DEFAULT_HACKRF_BUFFER_TIME_MS));
+        sdrArguments.setTcpServer(map.get("tcpServer") != null && (Boolean) map.get("tcpServer"));
+        if (map.get("tcpAddress") != null)
+            sdrArguments.setTcpAddress((String) map.get("tcpAddress"));
+        sdrArguments.setTcpPort(getInt(map, "tcpPort", DEFAULT_TCP_PORT));
+        sdrArguments.setSignedSamples(map.get("signedSamples") != null && (Boolean) map.get("signedSamples"));
+        sdrArguments.setTcpMaxClients(getInt(map, "tcpMaxClients", DEFAULT_TCP_MAX_CLIENTS));
+        sdrArguments.setTcpClientQueueSize(getInt(map, "tcpClientQueueSize", DEFAULT_TCP_CLIENT_QUEUE_SIZE));
+        sdrArguments.setAsyncBufferCount(getInt(map, "asyncBufferCount", DEFAULT_ASYNC_BUFFER_COUNT));
+        sdrArguments.setAsyncBufferLength(getInt(map, "asyncBufferLength", DEFAULT_ASYNC_BUFFER_LENGTH));
+        sdrArguments.setMetricsIntervalMs(getInt(map, "metricsIntervalMs", DEFAULT_METRICS_INTERVAL_MS));
+        sdrArguments.setSendSamples(map.get("sendSamples") == null || (Boolean) map.get("sendSamples"));
+        sdrArguments.setSpectrumFftSize(getInt(map, "spectrumFftSize", DEFAULT_SPECTRUM_FFT_SIZE));
+        sdrArguments.setSpectrumAverages(getInt(map, "spectrumAverages", DEFAULT_SPECTRUM_AVERAGES));
+        if (map.get("spectrumWindow") != null)
+            sdrArguments.setSpectrumWindow(WindowType.valueOf((String) map.get("spectrumWindow")));
+        sdrArguments.setChannelDecimation(getInt(map, "channelDecimation", DEFAULT_CHANNEL_DECIMATION));
+        sdrArguments.setChannelOffsetHz(getLong(map, "channelOffsetHz", 0));
+        sdrArguments.setChannelTaps(getInt(map, "channelTaps", DEFAULT_CHANNEL_TAPS));
+        if (map.get("demodulator") != null)
+            sdrArguments.setDemodulator(DemodulatorMode.valueOf((String) map.get("demodulator")));
+        sdrArguments.setDeemphasisUs(getInt(map, "deemphasisUs", DEFAULT_DEEMPHASIS_US));
+        sdrArguments.setModeS(map.get("modeS") != null && (Boolean) map.get("modeS"));
+        sdrArguments.setSquelchThreshold(getInt(map, "squelchThreshold", DEFAULT_SQUELCH_THRESHOLD));
+        sdrArguments.setSquelchHysteresis(getInt(map, "squelchHysteresis", DEFAULT_SQUELCH_HYSTERESIS));
+        sdrArguments.setSquelchAttack(getInt(map, "squelchAttack", DEFAULT_SQUELCH_ATTACK));
+        sdrArguments.setSquelchRelease(getInt(map, "squelchRelease", DEFAULT_SQUELCH_RELEASE));
+        sdrArguments.setSquelchPreTrigger(getInt(map, "squelchPreTrigger", DEFAULT_SQUELCH_PRE_TRIGGER));
+        sdrArguments.setSquelchPostTrigger(getInt(map, "squelchPostTrigger", DEFAULT_SQUELCH_POST_TRIGGER));
+        sdrArguments.setReplayPaced(map.get("replayPaced") == null || (Boolean) map.get("replayPaced"));
+        sdrArguments.setReplayLoop(map.get("replayLoop") != null && (Boolean) map.get("replayLoop"));
+        sdrArguments.setGeneratorSnrDb(getInt(map, "generatorSnrDb", DEFAULT_GENERATOR_SNR_DB));
+        sdrArguments.setGeneratorOffsetHz(getLong(map, "generatorOffsetHz", DEFAULT_GENERATOR_OFFSET_HZ));
+        return sdrArguments;
+    }
+
+    private static int getInt(Map<String, Object> map, String key, int defValue) {
+        Object value = map.get(key);
+        return value == null ? defValue : ((Number) value).intValue();
+    }
+
+    private static long getLong(Map<String, Object> map, String key, long defValue) {
+        Object value = map.get(key);
+        return value == null ? defValue : ((Number) value).longValue();
+    }
+
     public int getGain() {
         return gain;
     }
@@ -67,4 +368,328 @@ public class SdrArguments implements Serializable {
     public int getAmplitude() {
         return amplitude;
     }
+
+    public int getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    public void setBufferPoolSize(int bufferPoolSize) {
+        if (bufferPoolSize < 0) throw new IllegalArgumentException("bufferPoolSize cannot be negative");
+        this.bufferPoolSize = bufferPoolSize;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        if (maxBatchBytes < 0) throw new IllegalArgumentException("maxBatchBytes cannot be negative");
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public int getMaxBatchLatencyMs() {
+        return maxBatchLatencyMs;
+    }
+
+    public void setMaxBatchLatencyMs(int maxBatchLatencyMs) {
+        if (maxBatchLatencyMs < 0) throw new IllegalArgumentException("maxBatchLatencyMs cannot be negative");
+        this.maxBatchLatencyMs = maxBatchLatencyMs;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        if (queueSize <= 0) throw new IllegalArgumentException("queueSize must be positive");
+        this.queueSize = queueSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = Check.isNotNull(overflowPolicy);
+    }
+
+    public int getHackrfUsbRequests() {
+        return hackrfUsbRequests;
+    }
+
+    public void setHackrfUsbRequests(int hackrfUsbRequests) {
+        if (hackrfUsbRequests <= 0 || hackrfUsbRequests > 64) throw new IllegalArgumentException("hackrfUsbRequests must be between 1 and 64");
+        this.hackrfUsbRequests = hackrfUsbRequests;
+    }
+
+    public int getHackrfTransferSize() {
+        return hackrfTransferSize;
+    }
+
+    public void setHackrfTransferSize(int hackrfTransferSize) {
+        if (hackrfTransferSize <= 0 || hackrfTransferSize % 512 != 0 || hackrfTransferSize > 1024 * 1024)
+            throw new IllegalArgumentException("hackrfTransferSize must be a multiple of 512 up to 1 MiB");
+        this.hackrfTransferSize = hackrfTransferSize;
+    }
+
+    public int getHackrfBufferTimeMs() {
+        return hackrfBufferTimeMs;
+    }
+
+    public void setHackrfBufferTimeMs(int hackrfBufferTimeMs) {
+        if (hackrfBufferTimeMs <= 0) throw new IllegalArgumentException("hackrfBufferTimeMs must be positive");
+        this.hackrfBufferTimeMs = hackrfBufferTimeMs;
+    }
+
+    public boolean isTcpServer() {
+        return tcpServer;
+    }
+
+    public void setTcpServer(boolean tcpServer) {
+        this.tcpServer = tcpServer;
+    }
+
+    public String getTcpAddress() {
+        return tcpAddress;
+    }
+
+    public void setTcpAddress(String tcpAddress) {
+        this.tcpAddress = Check.stringLessThan(Check.isNotNull(tcpAddress), MAX_STRING_LENGTH);
+    }
+
+    public int getTcpPort() {
+        return tcpPort;
+    }
+
+    public void setTcpPort(int tcpPort) {
+        if (tcpPort <= 0 || tcpPort > 65535) throw new IllegalArgumentException("tcpPort must be between 1 and 65535");
+        this.tcpPort = tcpPort;
+    }
+
+    public boolean isSignedSamples() {
+        return signedSamples;
+    }
+
+    public void setSignedSamples(boolean signedSamples) {
+        this.signedSamples = signedSamples;
+    }
+
+    public int getTcpMaxClients() {
+        return tcpMaxClients;
+    }
+
+    public void setTcpMaxClients(int tcpMaxClients) {
+        if (tcpMaxClients <= 0) throw new IllegalArgumentException("tcpMaxClients must be positive");
+        this.tcpMaxClients = tcpMaxClients;
+    }
+
+    public int getTcpClientQueueSize() {
+        return tcpClientQueueSize;
+    }
+
+    public void setTcpClientQueueSize(int tcpClientQueueSize) {
+        if (tcpClientQueueSize <= 0) throw new IllegalArgumentException("tcpClientQueueSize must be positive");
+        this.tcpClientQueueSize = tcpClientQueueSize;
+    }
+
+    public int getAsyncBufferCount() {
+        return asyncBufferCount;
+    }
+
+    public void setAsyncBufferCount(int asyncBufferCount) {
+        if (asyncBufferCount < 0 || asyncBufferCount > 256) throw new IllegalArgumentException("asyncBufferCount must be between 0 and 256");
+        this.asyncBufferCount = asyncBufferCount;
+    }
+
+    public int getAsyncBufferLength() {
+        return asyncBufferLength;
+    }
+
+    public void setAsyncBufferLength(int asyncBufferLength) {
+        if (asyncBufferLength < 0 || asyncBufferLength % 512 != 0 || asyncBufferLength > 4 * 1024 * 1024)
+            throw new IllegalArgumentException("asyncBufferLength must be zero or a multiple of 512 up to 4 MiB");
+        this.asyncBufferLength = asyncBufferLength;
+    }
+
+    public int getMetricsIntervalMs() {
+        return metricsIntervalMs;
+    }
+
+    public void setMetricsIntervalMs(int metricsIntervalMs) {
+        if (metricsIntervalMs < 0) throw new IllegalArgumentException("metricsIntervalMs cannot be negative");
+        this.metricsIntervalMs = metricsIntervalMs;
+    }
+
+    public boolean isSendSamples() {
+        return sendSamples;
+    }
+
+    public void setSendSamples(boolean sendSamples) {
+        this.sendSamples = sendSamples;
+    }
+
+    public int getSpectrumFftSize() {
+        return spectrumFftSize;
+    }
+
+    public void setSpectrumFftSize(int spectrumFftSize) {
+        if (spectrumFftSize != 0 && (spectrumFftSize < 16 || spectrumFftSize > 65536 || Integer.bitCount(spectrumFftSize) != 1))
+            throw new IllegalArgumentException("spectrumFftSize must be zero or a power of two between 16 and 65536");
+        this.spectrumFftSize = spectrumFftSize;
+    }
+
+    public int getSpectrumAverages() {
+        return spectrumAverages;
+    }
+
+    public void setSpectrumAverages(int spectrumAverages) {
+        if (spectrumAverages <= 0) throw new IllegalArgumentException("spectrumAverages must be positive");
+        this.spectrumAverages = spectrumAverages;
+    }
+
+    public WindowType getSpectrumWindow() {
+        return spectrumWindow;
+    }
+
+    public void setSpectrumWindow(WindowType spectrumWindow) {
+        this.spectrumWindow = Check.isNotNull(spectrumWindow);
+    }
+
+    public int getChannelDecimation() {
+        return channelDecimation;
+    }
+
+    public void setChannelDecimation(int channelDecimation) {
+        if (channelDecimation <= 0 || channelDecimation > 1024) throw new IllegalArgumentException("channelDecimation must be between 1 and 1024");
+        this.channelDecimation = channelDecimation;
+    }
+
+    public long getChannelOffsetHz() {
+        return channelOffsetHz;
+    }
+
+    public void setChannelOffsetHz(long channelOffsetHz) {
+        this.channelOffsetHz = channelOffsetHz;
+    }
+
+    public int getChannelTaps() {
+        return channelTaps;
+    }
+
+    public void setChannelTaps(int channelTaps) {
+        if (channelTaps < 0 || channelTaps > 4096) throw new IllegalArgumentException("channelTaps must be between 0 and 4096");
+        this.channelTaps = channelTaps;
+    }
+
+    public DemodulatorMode getDemodulator() {
+        return demodulator;
+    }
+
+    public void setDemodulator(DemodulatorMode demodulator) {
+        this.demodulator = Check.isNotNull(demodulator);
+    }
+
+    public int getDeemphasisUs() {
+        return deemphasisUs;
+    }
+
+    public void setDeemphasisUs(int deemphasisUs) {
+        if (deemphasisUs < 0 || deemphasisUs > 1000) throw new IllegalArgumentException("deemphasisUs must be between 0 and 1000");
+        this.deemphasisUs = deemphasisUs;
+    }
+
+    public boolean isModeS() {
+        return modeS;
+    }
+
+    public void setModeS(boolean modeS) {
+        this.modeS = modeS;
+    }
+
+    public int getSquelchThreshold() {
+        return squelchThreshold;
+    }
+
+    public void setSquelchThreshold(int squelchThreshold) {
+        if (squelchThreshold < 0 || squelchThreshold > 255) throw new IllegalArgumentException("squelchThreshold must be between 0 and 255");
+        this.squelchThreshold = squelchThreshold;
+    }
+
+    public int getSquelchHysteresis() {
+        return squelchHysteresis;
+    }
+
+    public void setSquelchHysteresis(int squelchHysteresis) {
+        if (squelchHysteresis < 0 || squelchHysteresis > 255) throw new IllegalArgumentException("squelchHysteresis must be between 0 and 255");
+        this.squelchHysteresis = squelchHysteresis;
+    }
+
+    public int getSquelchAttack() {
+        return squelchAttack;
+    }
+
+    public void setSquelchAttack(int squelchAttack) {
+        if (squelchAttack <= 0 || squelchAttack > MAX_SQUELCH_SAMPLES) throw new IllegalArgumentException("squelchAttack must be between 1 and " + MAX_SQUELCH_SAMPLES);
+        this.squelchAttack = squelchAttack;
+    }
+
+    public int getSquelchRelease() {
+        return squelchRelease;
+    }
+
+    public void setSquelchRelease(int squelchRelease) {
+        if (squelchRelease <= 0 || squelchRelease > MAX_SQUELCH_SAMPLES) throw new IllegalArgumentException("squelchRelease must be between 1 and " + MAX_SQUELCH_SAMPLES);
+        this.squelchRelease = squelchRelease;
+    }
+
+    public int getSquelchPreTrigger() {
+        return squelchPreTrigger;
+    }
+
+    public void setSquelchPreTrigger(int squelchPreTrigger) {
+        if (squelchPreTrigger < 0 || squelchPreTrigger > MAX_SQUELCH_SAMPLES) throw new IllegalArgumentException("squelchPreTrigger must be between 0 and " + MAX_SQUELCH_SAMPLES);
+        this.squelchPreTrigger = squelchPreTrigger;
+    }
+
+    public int getSquelchPostTrigger() {
+        return squelchPostTrigger;
+    }
+
+    public void setSquelchPostTrigger(int squelchPostTrigger) {
+        if (squelchPostTrigger < 0 || squelchPostTrigger > MAX_SQUELCH_SAMPLES) throw new IllegalArgumentException("squelchPostTrigger must be between 0 and " + MAX_SQUELCH_SAMPLES);
+        this.squelchPostTrigger = squelchPostTrigger;
+    }
+
+    public boolean isReplayPaced() {
+        return replayPaced;
+    }
+
+    public void setReplayPaced(boolean replayPaced) {
+        this.replayPaced = replayPaced;
+    }
+
+    public boolean isReplayLoop() {
+        return replayLoop;
+    }
+
+    public void setReplayLoop(boolean replayLoop) {
+        this.replayLoop = replayLoop;
+    }
+
+    public int getGeneratorSnrDb() {
+        return generatorSnrDb;
+    }
+
+    public void setGeneratorSnrDb(int generatorSnrDb) {
+        if (generatorSnrDb < -30 || generatorSnrDb > 60) throw new IllegalArgumentException("generatorSnrDb must be between -30 and 60");
+        this.generatorSnrDb = generatorSnrDb;
+    }
+
+    public long getGeneratorOffsetHz() {
+        return generatorOffsetHz;
+    }
+
+    public void setGeneratorOffsetHz(long generatorOffsetHz) {
+        this.generatorOffsetHz = generatorOffsetHz;
+    }
 }
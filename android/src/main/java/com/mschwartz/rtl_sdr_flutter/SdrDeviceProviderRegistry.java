@@ -1,11 +1,37 @@
 package com.mschwartz.rtl_sdr_flutter;
 
 import com.mschwartz.rtl_sdr_flutter.devices.SdrDeviceProvider;
+import com.mschwartz.rtl_sdr_flutter.generatordevice.GeneratorDeviceProvider;
+import com.mschwartz.rtl_sdr_flutter.replaydevice.ReplayDeviceProvider;
 import com.mschwartz.rtl_sdr_flutter.rtlsdrdevice.RtlSdrDeviceProvider;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class SdrDeviceProviderRegistry {
     public final static SdrDeviceProvider[] SDR_DEVICE_PROVIDERS = new SdrDeviceProvider[] {
             new RtlSdrDeviceProvider(),
             //new HackRfDeviceProvider(),
+            new ReplayDeviceProvider(),
     };
+
+    /// The generator devices are meant for benchmarks, they are only listed after enableGeneratorDevices
+    private final static SdrDeviceProvider GENERATOR_DEVICE_PROVIDER = new GeneratorDeviceProvider();
+
+    private static volatile boolean generatorEnabled;
+
+    /// Adds the generator devices to the device list or removes them again
+    public static void setGeneratorEnabled(boolean enabled) {
+        generatorEnabled = enabled;
+    }
+
+    /// The providers whose devices are listed
+    public static List<SdrDeviceProvider> getProviders() {
+        List<SdrDeviceProvider> providers = new ArrayList<>(Arrays.asList(SDR_DEVICE_PROVIDERS));
+        if (generatorEnabled) {
+            providers.add(GENERATOR_DEVICE_PROVIDER);
+        }
+        return providers;
+    }
 }
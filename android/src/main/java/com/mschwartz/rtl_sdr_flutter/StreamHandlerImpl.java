@@ -3,16 +3,23 @@ package com.mschwartz.rtl_sdr_flutter;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.devices.SdrDevice;
 import com.mschwartz.rtl_sdr_flutter.tools.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
 
 /**
  * Implementation of the communication from java to flutter. The sink will be created/deleted whenever
- * flutter starts/stops listening with the RtlSdrFlutter.listen() method.
+ * flutter starts/stops listening with the RtlSdrFlutter.listen() method. If flutter listens to the
+ * {@link SampleChannel} the data is sent there instead of the sink.
  */
 public class StreamHandlerImpl implements EventChannel.StreamHandler {
 
@@ -20,6 +27,35 @@ public class StreamHandlerImpl implements EventChannel.StreamHandler {
 
     private final Handler uiThreadHandler = new Handler(Looper.getMainLooper());
 
+    private final SampleChannel sampleChannel;
+
+    /// sends the metrics periodically while set, runs in the main thread
+    private Runnable metricsTask;
+
+    /// the latest spectrum which is not yet sent, older ones are replaced if flutter falls behind
+    private final AtomicReference<Map<String, Object>> pendingSpectrum = new AtomicReference<>();
+
+    private final Runnable spectrumTask = this::sendPendingSpectrum;
+
+    /// the Mode-S messages are collected this long and sent as one "ModeS" event
+    private static final int MODES_INTERVAL_MS = 50;
+
+    /// size of a Mode-S record without the message, see {@link #sendModeS}
+    private static final int MODES_RECORD_HEADER = 20;
+
+    /// the records of the Mode-S messages which are not yet sent
+    private ByteBuffer pendingModeS = newModeSBuffer(4096);
+
+    private final Runnable modeSTask = this::sendPendingModeS;
+
+    public StreamHandlerImpl(BinaryMessenger binaryMessenger) {
+        sampleChannel = new SampleChannel(binaryMessenger, this::sendFrame);
+    }
+
+    public SampleChannel getSampleChannel() {
+        return sampleChannel;
+    }
+
     @Override
     public void onListen(Object arguments, EventChannel.EventSink events) {
         Log.appendLine("StreamHandlerImpl: Start listening");
@@ -32,15 +68,24 @@ public class StreamHandlerImpl implements EventChannel.StreamHandler {
         uiThreadHandler.post(() -> eventSink = null);
     }
 
-    public void sendData(byte[] data, int dataLength) {
+    /// sends the remaining bytes of the packet. The buffer of the packet may be reused as soon as this method returns.
+    public void sendData(SamplePacket packet) {
+        if (eventSink == null && !sampleChannel.isEnabled()) return;
+        sampleChannel.offer(packet);
+    }
+
+    /// receives the (possibly batched) data from the {@link SampleChannel} in the main thread if flutter
+    /// does not listen to the sample channel.
+    private void sendFrame(ByteBuffer payload) {
         if (eventSink == null) return;
+        int dataLength = payload.remaining();
+        byte[] data = new byte[dataLength];
+        payload.get(data);
         Map<String, Object> map = new HashMap<>();
         map.put("event", "Data");
         map.put("content", data);
         map.put("length", dataLength);
-        uiThreadHandler.post(() -> {
-            if (eventSink != null) eventSink.success(map);
-        });
+        eventSink.success(map);
     }
 
     public void sendDataDebug(byte[] data, int dataLength, byte[] debugData) {
@@ -55,6 +100,95 @@ public class StreamHandlerImpl implements EventChannel.StreamHandler {
         });
     }
 
+    /// sends the spectrum as "Spectrum" event, called in the thread of the device. If the previous spectrum has not
+    /// been sent yet it is replaced.
+    public void sendSpectrum(float[] bins, long sampleIndex, long timestampNanos) {
+        if (eventSink == null) return;
+        Map<String, Object> map = new HashMap<>();
+        map.put("event", "Spectrum");
+        map.put("bins", bins.clone());
+        map.put("sampleIndex", sampleIndex);
+        map.put("timestampNanos", timestampNanos);
+        if (pendingSpectrum.getAndSet(map) == null) {
+            uiThreadHandler.post(spectrumTask);
+        }
+    }
+
+    private void sendPendingSpectrum() {
+        Map<String, Object> map = pendingSpectrum.getAndSet(null);
+        if (map != null && eventSink != null) eventSink.success(map);
+    }
+
+    /// appends a decoded Mode-S message to the records of the next "ModeS" event, called in the thread of the
+    /// device. A record is the length of the message (u8), the signal (u8), the corrected bits (u8), a reserved
+    /// byte, the sample index (u64), the timestamp (u64) and the message, all little endian.
+    public void sendModeS(byte[] message, int length, long sampleIndex, long timestampNanos, int signal, int correctedBits) {
+        if (eventSink == null) return;
+        boolean first;
+        synchronized (this) {
+            if (pendingModeS.remaining() < MODES_RECORD_HEADER + length) {
+                ByteBuffer larger = newModeSBuffer(2 * pendingModeS.capacity());
+                pendingModeS.flip();
+                larger.put(pendingModeS);
+                pendingModeS = larger;
+            }
+            first = pendingModeS.position() == 0;
+            pendingModeS.put((byte) length);
+            pendingModeS.put((byte) signal);
+            pendingModeS.put((byte) correctedBits);
+            pendingModeS.put((byte) 0);
+            pendingModeS.putLong(sampleIndex);
+            pendingModeS.putLong(timestampNanos);
+            pendingModeS.put(message, 0, length);
+        }
+        if (first) uiThreadHandler.postDelayed(modeSTask, MODES_INTERVAL_MS);
+    }
+
+    private void sendPendingModeS() {
+        byte[] records;
+        synchronized (this) {
+            records = new byte[pendingModeS.position()];
+            pendingModeS.flip();
+            pendingModeS.get(records);
+            pendingModeS.clear();
+        }
+        if (records.length == 0 || eventSink == null) return;
+        Map<String, Object> map = new HashMap<>();
+        map.put("event", "ModeS");
+        map.put("records", records);
+        eventSink.success(map);
+    }
+
+    private static ByteBuffer newModeSBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /// sends the metrics of the device every intervalMs as "Metrics" event until {@link #stopMetrics()} is called.
+    /// Zero does not send any metrics.
+    public void startMetrics(SdrDevice device, int intervalMs) {
+        uiThreadHandler.post(() -> {
+            if (metricsTask != null) uiThreadHandler.removeCallbacks(metricsTask);
+            metricsTask = null;
+            if (intervalMs <= 0) return;
+            metricsTask = new Runnable() {
+                @Override
+                public void run() {
+                    if (eventSink != null) {
+                        Map<String, Object> map = device.getMetrics();
+                        map.put("event", "Metrics");
+                        eventSink.success(map);
+                    }
+                    uiThreadHandler.postDelayed(this, intervalMs);
+                }
+            };
+            uiThreadHandler.postDelayed(metricsTask, intervalMs);
+        });
+    }
+
+    public void stopMetrics() {
+        startMetrics(null, 0);
+    }
+
     /// sends a notification to flutter if a new device is attached.
     /// [MethodHandlerImpl] binds the UsbService, the UsbService will create a new instance of
     /// UsbBinder and the ServiceConntectionImpl which is created by [MethodHandlerImpl] will
@@ -0,0 +1,139 @@
+package com.mschwartz.rtl_sdr_flutter.devices;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of the data path of a device, so a missing signal can be told apart from data which was lost on the way
+ * to the consumer. The device thread counts the received packets, the consumers count what they delivered or
+ * dropped and how long the packets waited since they were received. All methods may be called from any thread.
+ * <p>
+ * The latency histogram has {@link #LATENCY_BUCKETS} buckets, bucket i counts the packets with a latency below
+ * 2^i milliseconds, the last bucket everything above.
+ * <p>
+ * The effective sample rate is derived from the received bytes since the configured rate was set. The bytes are
+ * counted before the squelch.
+ */
+public class DeviceMetrics {
+
+    public static final int LATENCY_BUCKETS = 12;
+
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    private final AtomicLong receivedPackets = new AtomicLong();
+
+    private final AtomicLong deliveredBytes = new AtomicLong();
+
+    private final AtomicLong deliveredPackets = new AtomicLong();
+
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    private final AtomicLong queueHighWater = new AtomicLong();
+
+    private final AtomicLongArray latency = new AtomicLongArray(LATENCY_BUCKETS);
+
+    private volatile long configuredSamplerate;
+
+    /// 1 for amplitudes, 2 for I/Q pairs
+    private volatile int bytesPerSample = 2;
+
+    /// received bytes and time when the configured rate was set
+    private volatile long rateStartBytes;
+
+    private volatile long rateStartNanos;
+
+    /**
+     * Clears all counters for a new session.
+     */
+    public void reset(long configuredSamplerate, int bytesPerSample) {
+        receivedBytes.set(0);
+        receivedPackets.set(0);
+        deliveredBytes.set(0);
+        deliveredPackets.set(0);
+        droppedPackets.set(0);
+        queueHighWater.set(0);
+        for (int i = 0; i < LATENCY_BUCKETS; ++i) latency.set(i, 0);
+        this.bytesPerSample = bytesPerSample;
+        setConfiguredSamplerate(configuredSamplerate);
+    }
+
+    /**
+     * Sets the sample rate requested from the device, e.g. after the rate was changed by a client. The effective
+     * rate is measured from now on.
+     */
+    public void setConfiguredSamplerate(long configuredSamplerate) {
+        this.configuredSamplerate = configuredSamplerate;
+        rateStartBytes = receivedBytes.get();
+        rateStartNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    public long getConfiguredSamplerate() {
+        return configuredSamplerate;
+    }
+
+    public void setBytesPerSample(int bytesPerSample) {
+        this.bytesPerSample = bytesPerSample;
+        setConfiguredSamplerate(configuredSamplerate);
+    }
+
+    /// a packet was received from the device
+    public void onReceived(int bytes) {
+        receivedBytes.addAndGet(bytes);
+        receivedPackets.incrementAndGet();
+    }
+
+    /// packets were handed to the consumer, receivedNanos is the SystemClock.elapsedRealtimeNanos() of the arrival
+    /// of the oldest one
+    public void onDelivered(int packets, int bytes, long receivedNanos) {
+        deliveredBytes.addAndGet(bytes);
+        deliveredPackets.addAndGet(packets);
+        long micros = (SystemClock.elapsedRealtimeNanos() - receivedNanos) / 1000;
+        // bucket 0 is below 1 ms
+        int bucket = micros < 1000 ? 0 : 64 - Long.numberOfLeadingZeros(micros / 1000);
+        latency.incrementAndGet(Math.min(bucket, LATENCY_BUCKETS - 1));
+    }
+
+    public void onDropped(long packets) {
+        droppedPackets.addAndGet(packets);
+    }
+
+    /// the number of packets waiting for the consumer
+    public void onQueueLevel(long level) {
+        long highWater = queueHighWater.get();
+        while (level > highWater && !queueHighWater.compareAndSet(highWater, level)) {
+            highWater = queueHighWater.get();
+        }
+    }
+
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
+    /**
+     * Returns a snapshot of the counters as sent to flutter.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        long received = receivedBytes.get();
+        map.put("receivedBytes", received);
+        map.put("receivedPackets", receivedPackets.get());
+        map.put("deliveredBytes", deliveredBytes.get());
+        map.put("deliveredPackets", deliveredPackets.get());
+        map.put("droppedPackets", droppedPackets.get());
+        map.put("queueHighWater", queueHighWater.get());
+        List<Long> histogram = new ArrayList<>(LATENCY_BUCKETS);
+        for (int i = 0; i < LATENCY_BUCKETS; ++i) histogram.add(latency.get(i));
+        map.put("latencyHistogram", histogram);
+        map.put("configuredSamplerate", configuredSamplerate);
+        long elapsed = SystemClock.elapsedRealtimeNanos() - rateStartNanos;
+        long samples = (received - rateStartBytes) / bytesPerSample;
+        map.put("effectiveSamplerate", elapsed > 0 ? (long) (samples * 1e9 / elapsed) : 0L);
+        return map;
+    }
+}
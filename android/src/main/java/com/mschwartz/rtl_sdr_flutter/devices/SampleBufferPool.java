@@ -0,0 +1,66 @@
+package com.mschwartz.rtl_sdr_flutter.devices;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed set of direct buffers which is handed to the native driver once. The driver copies each received
+ * packet into the next free slot and tells java the index and the length of the slot (see
+ * {@link SdrDevice#bufferReceived(int, int, long, long, long)}). The slot must be handed back to the driver when the data is consumed.
+ * This way the data path does not allocate memory per packet.
+ * <p>
+ * Each slot is wrapped in a {@link SamplePacket}, so consumers may hold on to the data, e.g. until it is sent to a
+ * tcp client. The slot is handed back to the driver when the last consumer releases the packet.
+ */
+public class SampleBufferPool {
+
+    private final ByteBuffer[] buffers;
+
+    private final SamplePacket[] packets;
+
+    private final int capacity;
+
+    public SampleBufferPool(int count, int capacity, SlotReleaser releaser) {
+        if (count <= 0) throw new IllegalArgumentException("count must be positive");
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        buffers = new ByteBuffer[count];
+        packets = new SamplePacket[count];
+        for (int i = 0; i < count; ++i) {
+            final int slot = i;
+            buffers[i] = ByteBuffer.allocateDirect(capacity);
+            packets[i] = new SamplePacket(buffers[i], packet -> releaser.release(slot));
+        }
+    }
+
+    /**
+     * Returns the packet of the given slot prepared for reading the given number of bytes. The caller holds one
+     * reference to the packet.
+     */
+    public SamplePacket acquire(int slot, int length) {
+        SamplePacket packet = packets[slot];
+        ByteBuffer buffer = packet.getBuffer();
+        buffer.clear();
+        buffer.limit(length);
+        packet.retain();
+        return packet;
+    }
+
+    public ByteBuffer[] getBuffers() {
+        return buffers;
+    }
+
+    public int getCount() {
+        return buffers.length;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Hands a slot back to the driver.
+     */
+    public interface SlotReleaser {
+        void release(int slot);
+    }
+}
@@ -0,0 +1,33 @@
+package com.mschwartz.rtl_sdr_flutter.devices;
+
+/**
+ * The format of the data of a {@link SamplePacket}. The code is sent to flutter in the header of each frame of the
+ * sample channel.
+ */
+public enum SampleFormat {
+    /// unsigned 8 bit I/Q pairs with an offset of 127.5 as delivered by rtl-sdr dongles
+    CU8(0, 2),
+    /// unsigned 8 bit amplitudes of the I/Q pairs, see the amplitude mode of the rtl-sdr device
+    U8_AMPLITUDE(1, 1),
+    /// signed 16 bit little endian I/Q pairs, full scale is +-32767
+    CS16(2, 4),
+    /// signed 16 bit little endian mono audio
+    PCM16(3, 2);
+
+    private final int code;
+
+    private final int bytesPerSample;
+
+    SampleFormat(int code, int bytesPerSample) {
+        this.code = code;
+        this.bytesPerSample = bytesPerSample;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public int getBytesPerSample() {
+        return bytesPerSample;
+    }
+}
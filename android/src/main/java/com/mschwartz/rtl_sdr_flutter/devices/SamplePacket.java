@@ -0,0 +1,122 @@
+package com.mschwartz.rtl_sdr_flutter.devices;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A buffer of samples which is shared by all consumers, e.g. the clients of a tcp server. The packet counts its
+ * references and hands itself back to its {@link Recycler} as soon as the last consumer has released it, so the same
+ * data are never copied per consumer. Consumers which need their own position, e.g. for partial socket writes, use a
+ * view of the buffer. The views are created once and reused whenever the packet is recycled.
+ * <p>
+ * Each packet describes where its data belong in the stream of the device: the sequence number of the usb buffer,
+ * the index of its first sample and the time the buffer was received. A gap in the sequence numbers means that
+ * buffers were dropped before they reached java, or removed by the squelch.
+ */
+public class SamplePacket {
+
+    private final ByteBuffer buffer;
+
+    private final Recycler recycler;
+
+    private final AtomicInteger references = new AtomicInteger();
+
+    private ByteBuffer[] views = new ByteBuffer[0];
+
+    private long sequence;
+
+    private long sampleIndex;
+
+    private long timestampNanos;
+
+    private SampleFormat format = SampleFormat.CU8;
+
+    public SamplePacket(ByteBuffer buffer, Recycler recycler) {
+        this.buffer = buffer;
+        this.recycler = recycler;
+    }
+
+    /**
+     * The data of the packet between position and limit. Must not be modified while the packet is referenced by a
+     * client.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Positions the view with the given index at the data of the packet and returns it. Must be called by the
+     * producing thread while it holds a reference.
+     */
+    public ByteBuffer prepareView(int index) {
+        if (index >= views.length) views = Arrays.copyOf(views, index + 1);
+        ByteBuffer view = views[index];
+        if (view == null) {
+            view = buffer.duplicate();
+            views[index] = view;
+        }
+        view.limit(buffer.limit());
+        view.position(buffer.position());
+        return view;
+    }
+
+    /**
+     * Returns the view with the given index, its position is advanced by the client while the data are written.
+     */
+    public ByteBuffer view(int index) {
+        return views[index];
+    }
+
+    /**
+     * Describes the data of the packet, must be called by the producing thread before the packet is published.
+     *
+     * @param sequence       number of the usb buffer since the device was opened
+     * @param sampleIndex    index of the first sample of the packet within the stream of the device
+     * @param timestampNanos SystemClock.elapsedRealtimeNanos() when the usb buffer was received
+     */
+    public void setMetadata(long sequence, long sampleIndex, long timestampNanos) {
+        this.sequence = sequence;
+        this.sampleIndex = sampleIndex;
+        this.timestampNanos = timestampNanos;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getSampleIndex() {
+        return sampleIndex;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public SampleFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the format of the data, {@link SampleFormat#CU8} by default. Must be called by the producing thread before
+     * the packet is published.
+     */
+    public void setFormat(SampleFormat format) {
+        this.format = format;
+    }
+
+    public void retain() {
+        references.incrementAndGet();
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            recycler.recycle(this);
+        }
+    }
+
+    public interface Recycler {
+        /// called when the last reference to the packet has been released
+        void recycle(SamplePacket packet);
+    }
+}
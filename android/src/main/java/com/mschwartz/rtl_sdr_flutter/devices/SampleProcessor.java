@@ -0,0 +1,13 @@
+package com.mschwartz.rtl_sdr_flutter.devices;
+
+/**
+ * A stage between the device and flutter which transforms the packets before they are sent, e.g. to reduce the
+ * sample rate. It runs in the thread of the device. The sinks of the device still receive the original packets.
+ */
+public interface SampleProcessor {
+    /**
+     * Processes the data of the packet and returns the packet to be sent to flutter or null if there is nothing to
+     * send yet. The returned packet is only used until the next call.
+     */
+    SamplePacket process(SamplePacket packet);
+}
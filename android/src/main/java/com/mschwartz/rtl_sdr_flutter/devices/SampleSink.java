@@ -0,0 +1,12 @@
+package com.mschwartz.rtl_sdr_flutter.devices;
+
+/**
+ * Receives the packets of a {@link SdrDevice} in addition to flutter, e.g. a tcp server.
+ */
+public interface SampleSink {
+    /**
+     * Called in the thread of the device for each packet. The data between position and limit of the buffer must
+     * not be modified. The packet is only valid during the call unless the sink retains it.
+     */
+    void onSamples(SamplePacket packet);
+}
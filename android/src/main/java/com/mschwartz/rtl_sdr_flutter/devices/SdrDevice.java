@@ -24,9 +24,25 @@ import com.mschwartz.rtl_sdr_flutter.MethodHandlerImpl;
 import com.mschwartz.rtl_sdr_flutter.StreamHandlerImpl;
 import com.mschwartz.rtl_sdr_flutter.SdrArguments;
 import com.mschwartz.rtl_sdr_flutter.UsedByJni;
+import com.mschwartz.rtl_sdr_flutter.dsp.Channelizer;
+import com.mschwartz.rtl_sdr_flutter.dsp.Demodulator;
+import com.mschwartz.rtl_sdr_flutter.dsp.DemodulatorMode;
+import com.mschwartz.rtl_sdr_flutter.dsp.SpectrumSink;
+import com.mschwartz.rtl_sdr_flutter.dsp.Squelch;
+import com.mschwartz.rtl_sdr_flutter.modes.ModeSDecoder;
+import com.mschwartz.rtl_sdr_flutter.recording.RecordingSink;
+import com.mschwartz.rtl_sdr_flutter.recording.SigMfMetadata;
+import com.mschwartz.rtl_sdr_flutter.recording.TriggerCapture;
 import com.mschwartz.rtl_sdr_flutter.tools.Log;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The base class for a device. The implementation could be either [HackRfSdrDevice] or [RtlSdrDevice].
@@ -37,6 +53,83 @@ public abstract class SdrDevice implements Serializable {
 
 	protected  final MethodHandlerImpl methodhandler;
 
+	/**
+	 * The buffers the native driver writes into if the pooled delivery is used, null otherwise.
+	 */
+	protected SampleBufferPool bufferPool;
+
+	/**
+	 * Consumers of the packets besides flutter.
+	 */
+	protected final CopyOnWriteArrayList<SampleSink> sinks = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Counters of the data path, see {@link #getMetrics()}.
+	 */
+	protected final DeviceMetrics metrics = new DeviceMetrics();
+
+	/**
+	 * The processing stages created by {@link #startSession(SdrArguments)}, they are replaced by the next session.
+	 */
+	private final List<SampleSink> sessionSinks = new ArrayList<>();
+
+	/**
+	 * False if the samples are only consumed by the sinks and not sent to flutter.
+	 */
+	private volatile boolean sendSamples = true;
+
+	/**
+	 * The format of the packets delivered by the driver.
+	 */
+	private volatile SampleFormat deviceFormat = SampleFormat.CU8;
+
+	/**
+	 * Transforms the packets before they are sent to flutter, null sends them as they are.
+	 */
+	private volatile SampleProcessor processor;
+
+	/**
+	 * Drops the quiet samples before they are processed and sent to flutter, created by
+	 * {@link #startSession(SdrArguments)}.
+	 */
+	private volatile Squelch squelch;
+
+	private final Squelch.Output squelchOutput = this::sendProcessed;
+
+	/**
+	 * Writes the packets to disk, null if no recording was started.
+	 */
+	private volatile RecordingSink recording;
+
+	/**
+	 * Keeps the last samples for a dump when a trigger fires, null if no trigger capture was started.
+	 */
+	private volatile TriggerCapture triggerCapture;
+
+	/**
+	 * The arguments of the current session, the processors are rebuilt from them. They are also the fallback for the
+	 * settings which the device does not report.
+	 */
+	private volatile SdrArguments sessionArguments;
+
+	/**
+	 * The processor requested by the arguments of the session if no demodulator is set.
+	 */
+	private volatile SampleProcessor sessionProcessor;
+
+	/**
+	 * The sample rate the processors were built for, they are rebuilt by {@link #tuningChanged()} if it changes.
+	 */
+	private volatile long processorSamplerate;
+
+	// the settings of the demodulator, guarded by this
+
+	private DemodulatorMode demodulatorMode = DemodulatorMode.OFF;
+
+	private long demodulatorOffsetHz;
+
+	private int deemphasisUs;
+
 	protected SdrDevice(StreamHandlerImpl streamHandler, MethodHandlerImpl methodhandler) {
 		this.streamHandler = streamHandler;
 		this.methodhandler = methodhandler;
@@ -48,6 +141,8 @@ public abstract class SdrDevice implements Serializable {
 	 */
 	protected void announceOnClosed(Throwable e) {
 		Log.appendLine("SdrDevice: announceOnClosed");
+		stopRecording();
+		stopTriggerCapture();
 		methodhandler.deviceClosed(this);
 		streamHandler.onDeviceClose();
 	}
@@ -60,10 +155,320 @@ public abstract class SdrDevice implements Serializable {
 		streamHandler.onDeviceOpen();
 	}
 
+	/**
+	 * Called by the native driver for each packet if the pooled delivery is not used.
+	 *
+	 * @param sequence       number of the usb buffer, see {@link SamplePacket#setMetadata(long, long, long)}
+	 * @param sampleIndex    index of the first sample of the packet within the stream of the device
+	 * @param timestampNanos SystemClock.elapsedRealtimeNanos() when the usb buffer was received
+	 */
 	@UsedByJni
-	protected void dataReceived(byte[] data, int dataLength) {
+	protected void dataReceived(byte[] data, int dataLength, long sequence, long sampleIndex, long timestampNanos) {
 		//Log.appendLine("data: " + dataLength + " bytes");
-		streamHandler.sendData(data, dataLength);
+		metrics.onReceived(dataLength);
+		SamplePacket packet = new SamplePacket(ByteBuffer.wrap(data, 0, dataLength), p -> {});
+		packet.setMetadata(sequence, sampleIndex, timestampNanos);
+		packet.setFormat(deviceFormat);
+		packet.retain();
+		try {
+			publish(packet);
+			if (sendSamples) send(packet);
+		} finally {
+			packet.release();
+		}
+	}
+
+	/**
+	 * Called by the native driver if the pooled delivery is used. The data is in the slot of the {@link #bufferPool}.
+	 * The slot is handed back to the driver as soon as the data is consumed by flutter and all sinks. The other
+	 * arguments are the same as for {@link #dataReceived(byte[], int, long, long, long)}.
+	 */
+	@UsedByJni
+	protected void bufferReceived(int slot, int dataLength, long sequence, long sampleIndex, long timestampNanos) {
+		metrics.onReceived(dataLength);
+		SamplePacket packet = bufferPool.acquire(slot, dataLength);
+		packet.setMetadata(sequence, sampleIndex, timestampNanos);
+		packet.setFormat(deviceFormat);
+		try {
+			// the sinks first, they must not wait for flutter
+			publish(packet);
+			if (sendSamples) send(packet);
+		} finally {
+			packet.release();
+		}
+	}
+
+	private void send(SamplePacket packet) {
+		Squelch squelch = this.squelch;
+		if (squelch != null) {
+			squelch.process(packet, squelchOutput);
+		} else {
+			sendProcessed(packet);
+		}
+	}
+
+	private void sendProcessed(SamplePacket packet) {
+		SampleProcessor processor = this.processor;
+		SamplePacket processed = processor == null ? packet : processor.process(packet);
+		if (processed != null) streamHandler.sendData(processed);
+	}
+
+	private void publish(SamplePacket packet) {
+		for (SampleSink sink : sinks) {
+			sink.onSamples(packet);
+		}
+	}
+
+	/**
+	 * Prepares a new session with the given arguments before the device is opened: clears the metrics, lets the
+	 * sample channel count into them and creates the processing stages requested by the arguments.
+	 */
+	public void startSession(SdrArguments sdrArguments) {
+		sessionArguments = sdrArguments;
+		deviceFormat = sdrArguments.getAmplitude() != 0 ? SampleFormat.U8_AMPLITUDE : SampleFormat.CU8;
+		metrics.reset(sdrArguments.getSamplerateHz(), deviceFormat.getBytesPerSample());
+		streamHandler.getSampleChannel().setMetrics(metrics);
+		for (SampleSink sink : sessionSinks) {
+			removeSampleSink(sink);
+		}
+		sessionSinks.clear();
+		sendSamples = sdrArguments.isSendSamples();
+		squelch = new Squelch(sdrArguments.getSquelchThreshold(), sdrArguments.getSquelchHysteresis(),
+				sdrArguments.getSquelchAttack(), sdrArguments.getSquelchRelease(),
+				sdrArguments.getSquelchPreTrigger(), sdrArguments.getSquelchPostTrigger());
+		squelch.setListener(this::squelchOpened);
+		if (sdrArguments.getSpectrumFftSize() > 0) {
+			if (deviceFormat != SampleFormat.CU8)
+				throw new IllegalArgumentException("the spectrum needs I/Q samples, amplitude must be off");
+			sessionSinks.add(new SpectrumSink(sdrArguments.getSpectrumFftSize(), sdrArguments.getSpectrumAverages(),
+					sdrArguments.getSpectrumWindow(), streamHandler::sendSpectrum));
+		}
+		if (sdrArguments.isModeS()) {
+			ModeSDecoder.checkSamplerate(sdrArguments.getSamplerateHz());
+			sessionSinks.add(new ModeSDecoder(streamHandler::sendModeS));
+		}
+		for (SampleSink sink : sessionSinks) {
+			addSampleSink(sink);
+		}
+		processorSamplerate = sdrArguments.getSamplerateHz();
+		sessionProcessor = createChannelizer(sdrArguments, processorSamplerate);
+		processor = sessionProcessor;
+		setDemodulator(sdrArguments.getDemodulator(), sdrArguments.getChannelOffsetHz(), sdrArguments.getDeemphasisUs());
+	}
+
+	/**
+	 * Returns the channelizer requested by the arguments for the sample rate, null if none is requested.
+	 */
+	private SampleProcessor createChannelizer(SdrArguments sdrArguments, long samplerate) {
+		if (sdrArguments.getChannelDecimation() <= 1) return null;
+		if (deviceFormat != SampleFormat.CU8)
+			throw new IllegalArgumentException("the channelizer needs I/Q samples, amplitude must be off");
+		return new Channelizer(samplerate, sdrArguments.getChannelOffsetHz(), sdrArguments.getChannelDecimation(),
+				sdrArguments.getChannelTaps());
+	}
+
+	/**
+	 * Builds the processors for the new sample rate, their filters and their output rate depend on it. A channel
+	 * which no longer fits into the band is dropped, the samples are sent as they are.
+	 */
+	private synchronized void samplerateChanged(long samplerate) {
+		processorSamplerate = samplerate;
+		SdrArguments sdrArguments = sessionArguments;
+		if (sdrArguments == null) return;
+		SampleProcessor channelizer = null;
+		try {
+			channelizer = createChannelizer(sdrArguments, samplerate);
+		} catch (IllegalArgumentException e) {
+			Log.appendLine("SdrDevice: the channel is dropped due to %s", e.getMessage());
+		}
+		sessionProcessor = channelizer;
+		try {
+			setDemodulator(demodulatorMode, demodulatorOffsetHz, deemphasisUs);
+		} catch (IllegalArgumentException e) {
+			Log.appendLine("SdrDevice: the demodulator is turned off due to %s", e.getMessage());
+			demodulatorMode = DemodulatorMode.OFF;
+			processor = channelizer;
+		}
+	}
+
+	/**
+	 * Replaces the samples sent to flutter by the demodulated audio of the channel at offsetHz, see
+	 * {@link Demodulator}. The device keeps running, the next packet is already demodulated with the new settings.
+	 * {@link DemodulatorMode#OFF} sends the samples of the session again. A change of the sample rate rebuilds the
+	 * demodulator with the same settings.
+	 *
+	 * @param deemphasisUs the time constant of the FM de-emphasis in microseconds, 0 turns it off
+	 */
+	public synchronized void setDemodulator(DemodulatorMode mode, long offsetHz, int deemphasisUs) {
+		if (mode == DemodulatorMode.OFF) {
+			demodulatorMode = mode;
+			processor = sessionProcessor;
+			return;
+		}
+		if (deviceFormat != SampleFormat.CU8)
+			throw new IllegalArgumentException("the demodulator needs I/Q samples, amplitude must be off");
+		processor = new Demodulator(processorSamplerate, offsetHz, mode, deemphasisUs);
+		demodulatorMode = mode;
+		demodulatorOffsetHz = offsetHz;
+		this.deemphasisUs = deemphasisUs;
+	}
+
+	/**
+	 * Sets the format of the packets delivered by the driver, e.g. if the amplitude mode is switched.
+	 */
+	protected void setDeviceFormat(SampleFormat format) {
+		deviceFormat = format;
+		metrics.setBytesPerSample(format.getBytesPerSample());
+	}
+
+	/**
+	 * Returns the received, delivered and dropped data, the high water mark of the queue, the histogram of the
+	 * latency between the arrival of a packet and its delivery and the effective sample rate, see {@link DeviceMetrics}.
+	 */
+	public Map<String, Object> getMetrics() {
+		return metrics.toMap();
+	}
+
+	/**
+	 * Records the packets of the device into files of segmentBytes each, see {@link RecordingSink}. A running
+	 * recording is stopped first.
+	 *
+	 * @param maxBytes      the recording stops after this number of bytes, 0 for no limit
+	 * @param maxDurationMs the recording stops after the samples of this time, 0 for no limit
+	 */
+	public synchronized void startRecording(File prefix, long segmentBytes, long maxBytes, long maxDurationMs) throws IOException {
+		stopRecording();
+		RecordingSink sink = new RecordingSink(prefix, segmentBytes, maxBytes, maxDurationMs, getSigMfMetadata());
+		sink.start();
+		recording = sink;
+		addSampleSink(sink);
+	}
+
+	/**
+	 * Stops the recording and returns its final state, see {@link #getRecordingStatus()}.
+	 */
+	public synchronized Map<String, Object> stopRecording() {
+		RecordingSink sink = recording;
+		if (sink == null) return null;
+		removeSampleSink(sink);
+		sink.stop();
+		return sink.getStatus();
+	}
+
+	/**
+	 * Keeps the last preTriggerMs of the samples in a buffer outside of the java heap and dumps them together with the
+	 * following postTriggerMs when {@link #trigger()} is called or, if squelchTrigger is set, whenever the squelch
+	 * opens, see {@link TriggerCapture}. The squelch only runs while the samples are sent to flutter. A running
+	 * trigger capture is stopped first.
+	 */
+	public synchronized void startTriggerCapture(File prefix, long preTriggerMs, long postTriggerMs, boolean squelchTrigger) {
+		stopTriggerCapture();
+		TriggerCapture capture = new TriggerCapture(prefix, preTriggerMs, postTriggerMs, squelchTrigger, getSigMfMetadata());
+		triggerCapture = capture;
+		addSampleSink(capture);
+	}
+
+	/**
+	 * Dumps the samples around the newest one. Returns the path of the dump, null if there is no running trigger
+	 * capture or no samples were received yet.
+	 */
+	public String trigger() {
+		TriggerCapture capture = triggerCapture;
+		return capture == null ? null : capture.trigger(-1, "manual");
+	}
+
+	private void squelchOpened(long sampleIndex) {
+		TriggerCapture capture = triggerCapture;
+		if (capture != null && capture.isSquelchTrigger()) capture.triggerLater(sampleIndex, "squelch");
+	}
+
+	/**
+	 * Completes the running dump, releases the buffer and returns the final state, see
+	 * {@link #getTriggerCaptureStatus()}.
+	 */
+	public synchronized Map<String, Object> stopTriggerCapture() {
+		TriggerCapture capture = triggerCapture;
+		if (capture == null) return null;
+		removeSampleSink(capture);
+		capture.stop();
+		return capture.getStatus();
+	}
+
+	/**
+	 * Returns the dumps of the last trigger capture, null if there was none.
+	 */
+	public Map<String, Object> getTriggerCaptureStatus() {
+		TriggerCapture capture = triggerCapture;
+		return capture == null ? null : capture.getStatus();
+	}
+
+	/**
+	 * Returns the current settings for the metadata of a recording. The values which the device cannot report are
+	 * taken from the arguments of the session.
+	 */
+	private SigMfMetadata getSigMfMetadata() {
+		SdrArguments arguments = sessionArguments;
+		long samplerate = arguments == null ? 0 : arguments.getSamplerateHz();
+		long frequency = arguments == null ? 0 : arguments.getFrequencyHz();
+		int gain = arguments == null ? 0 : arguments.getGain();
+		int ppm = arguments == null ? 0 : arguments.getPpm();
+		try {
+			samplerate = getSamplingrate();
+			frequency = getFrequency();
+			ppm = getFrequencyCorrection();
+		} catch (RuntimeException e) {
+			// not reported by the device
+		}
+		if (gain != 0) {
+			// the tuner rounds a manual gain to the next one it supports
+			try {
+				gain = getTunergain();
+			} catch (RuntimeException e) {
+				// not reported by the device
+			}
+		}
+		return new SigMfMetadata(getName(), samplerate, frequency, gain, ppm);
+	}
+
+	/**
+	 * Called by the subclasses after the frequency or the sample rate was changed, rebuilds the processors for a new
+	 * sample rate and marks the change in a running recording and in the next dumps of the trigger capture.
+	 */
+	protected void tuningChanged() {
+		long configured = metrics.getConfiguredSamplerate();
+		if (configured > 0 && configured != processorSamplerate) samplerateChanged(configured);
+		RecordingSink sink = recording;
+		TriggerCapture capture = triggerCapture;
+		if (sink == null && capture == null) return;
+		try {
+			long frequency = getFrequency();
+			long samplerate = getSamplingrate();
+			if (sink != null) sink.retune(frequency, samplerate);
+			if (capture != null) capture.retune(frequency, samplerate);
+		} catch (RuntimeException e) {
+			Log.appendLine("SdrDevice: the tuning cannot be recorded due to %s", e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the files, the written bytes and the dropped packets of the last recording, null if there was none.
+	 */
+	public synchronized Map<String, Object> getRecordingStatus() {
+		return recording == null ? null : recording.getStatus();
+	}
+
+	public void addSampleSink(SampleSink sink) {
+		sinks.add(sink);
+	}
+
+	public void removeSampleSink(SampleSink sink) {
+		sinks.remove(sink);
+	}
+
+	/**
+	 * Hands the slot of the {@link #bufferPool} back to the driver so that it can be filled again.
+	 */
+	protected void releaseBuffer(int slot) {
 	}
 
 	@UsedByJni
@@ -132,12 +537,21 @@ public abstract class SdrDevice implements Serializable {
 		throw new RuntimeException("unimplemented");
 	}
 
+	/**
+	 * Returns the threshold of the squelch, see {@link Squelch}.
+	 */
 	public int getMargin() {
-		throw new RuntimeException("unimplemented");
+		Squelch squelch = this.squelch;
+		return squelch == null ? 0 : squelch.getThreshold();
 	}
 
+	/**
+	 * Changes the threshold of the squelch while the device is running, 0 sends all samples.
+	 */
 	public void setMargin(int margin) {
-		throw new RuntimeException("unimplemented");
+		Squelch squelch = this.squelch;
+		if (squelch == null) throw new IllegalStateException("the session has not been started");
+		squelch.setThreshold(margin);
 	}
 
 	public void setTunergainMode(int tunergain) {
@@ -0,0 +1,371 @@
+package com.mschwartz.rtl_sdr_flutter.devices;
+
+import android.os.SystemClock;
+
+import com.mschwartz.rtl_sdr_flutter.MethodHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.SdrArguments;
+import com.mschwartz.rtl_sdr_flutter.StreamHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand;
+import com.mschwartz.rtl_sdr_flutter.tcp.TcpServer;
+import com.mschwartz.rtl_sdr_flutter.tools.Log;
+import com.mschwartz.rtl_sdr_flutter.tools.SampleConverter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A device whose samples are produced in java, e.g. read from a file or generated, instead of being received by a
+ * native driver. The samples are written into the slots of a {@link SampleBufferPool} and delivered through
+ * {@link #bufferReceived(int, int, long, long, long)} like the packets of the native driver, so the sinks, the squelch,
+ * the processors and the sample channel see no difference. A slot is filled again as soon as all consumers released
+ * it.
+ * <p>
+ * The packets are delivered at the sample rate ({@link SdrArguments#isReplayPaced()}) or as fast as the consumers
+ * hand the slots back. The subclasses write unsigned I/Q pairs, the amplitudes of the amplitude mode are computed
+ * here. The samples can be served to rtl_tcp clients like the ones of a rtl-sdr device.
+ */
+public abstract class SoftwareSdrDevice extends SdrDevice {
+
+    /// the default buffer length of librtlsdr
+    private static final int DEFAULT_BUF_LENGTH = 16 * 32 * 512;
+
+    /// the number of slots if the arguments do not ask for more
+    private static final int MIN_SLOTS = 8;
+
+    /// how long the device thread waits for a slot before it checks whether the device was closed
+    private static final long SLOT_POLL_MS = 100;
+
+    private Thread thread;
+
+    private volatile boolean canceled;
+
+    /// the slots which are not held by a consumer
+    private volatile BlockingQueue<Integer> freeSlots;
+
+    private volatile long frequency;
+
+    private volatile long samplerate;
+
+    private volatile int ppm;
+
+    private volatile boolean amplitude;
+
+    /// the format of the packets delivered last
+    private SampleFormat format;
+
+    private boolean paced;
+
+    /// set if the pacing has to start over, e.g. because the sample rate was changed
+    private volatile boolean restartPacing;
+
+    private long paceStartNanos;
+
+    private long paceStartIndex;
+
+    private long sequence;
+
+    private long sampleIndex;
+
+    private int packetLength;
+
+    /// serves the samples to rtl_tcp clients if requested by the arguments, created as soon as the device is open
+    private volatile TcpServer tcpServer;
+
+    private SdrArguments sdrArguments;
+
+    protected SoftwareSdrDevice(StreamHandlerImpl streamHandler, MethodHandlerImpl methodhandler) {
+        super(streamHandler, methodhandler);
+    }
+
+    @Override
+    public void openAsync(final SdrArguments sdrArguments) {
+        canceled = false;
+        thread = new Thread(getName()) {
+            @Override
+            public void run() {
+                try {
+                    prepare(sdrArguments);
+                    produce(sdrArguments);
+                    announceOnClosed(null);
+                } catch (Throwable e) {
+                    announceOnClosed(e);
+                } finally {
+                    stopTcpServer();
+                }
+                Log.appendLine("%s: finished", getName());
+            }
+        };
+        thread.start();
+    }
+
+    private void prepare(SdrArguments sdrArguments) {
+        if (sdrArguments.getSamplerateHz() <= 0) throw new IllegalArgumentException("samplerateHz must be positive");
+        this.sdrArguments = sdrArguments;
+        frequency = sdrArguments.getFrequencyHz();
+        samplerate = sdrArguments.getSamplerateHz();
+        ppm = sdrArguments.getPpm();
+        amplitude = sdrArguments.getAmplitude() != 0;
+        // as set by startSession
+        format = amplitude ? SampleFormat.U8_AMPLITUDE : SampleFormat.CU8;
+        paced = sdrArguments.isReplayPaced();
+        restartPacing = true;
+        sequence = 0;
+        sampleIndex = 0;
+        // whole I/Q pairs only
+        packetLength = (sdrArguments.getAsyncBufferLength() > 0 ? sdrArguments.getAsyncBufferLength() : DEFAULT_BUF_LENGTH) & ~1;
+        int slots = Math.max(MIN_SLOTS, sdrArguments.getBufferPoolSize());
+        if (sdrArguments.isTcpServer()) {
+            // the tcp clients keep the slots until the data are sent
+            slots = Math.max(slots, sdrArguments.getTcpClientQueueSize() + 1);
+        }
+        BlockingQueue<Integer> free = new ArrayBlockingQueue<>(slots);
+        for (int i = 0; i < slots; ++i) free.add(i);
+        freeSlots = free;
+        bufferPool = new SampleBufferPool(slots, packetLength, this::releaseBuffer);
+    }
+
+    /**
+     * Produces the samples in the device thread: calls {@link #announceOnOpen()} as soon as the samples are
+     * available and {@link #deliver(int)} for each packet. Returns at the end of the samples or as soon as
+     * {@link #deliver(int)} returns false. An exception closes the device with an error.
+     */
+    protected abstract void produce(SdrArguments sdrArguments) throws Exception;
+
+    /**
+     * Writes length bytes of unsigned I/Q pairs into the slot, starting at its position 0. Called by
+     * {@link #deliver(int)} in the device thread.
+     */
+    protected abstract void fill(ByteBuffer slot, int length);
+
+    /**
+     * Waits until the packet is due and a slot is free, lets {@link #fill(ByteBuffer, int)} write the given number of
+     * I/Q pairs into the slot and delivers it. Returns false if the device was closed meanwhile.
+     */
+    protected boolean deliver(int pairs) {
+        if (paced) {
+            if (restartPacing) {
+                restartPacing = false;
+                paceStartNanos = SystemClock.elapsedRealtimeNanos();
+                paceStartIndex = sampleIndex;
+            }
+            // a device delivers a packet as soon as its last sample has been received
+            long due = paceStartNanos + (long) ((sampleIndex + pairs - paceStartIndex) * 1e9 / samplerate);
+            if (!sleepUntil(due)) return false;
+        }
+        int slot = takeSlot();
+        if (slot < 0) return false;
+        ByteBuffer buffer = bufferPool.getBuffers()[slot];
+        buffer.clear();
+        fill(buffer, 2 * pairs);
+        int length = 2 * pairs;
+        boolean amplitude = this.amplitude;
+        if (amplitude) {
+            toAmplitudes(buffer, pairs);
+            length = pairs;
+        }
+        setFormat(amplitude ? SampleFormat.U8_AMPLITUDE : SampleFormat.CU8);
+        bufferReceived(slot, length, sequence++, sampleIndex, SystemClock.elapsedRealtimeNanos());
+        sampleIndex += pairs;
+        return true;
+    }
+
+    /**
+     * Replaces the I/Q pairs at the start of the buffer by their amplitudes, like the ones computed by the native
+     * driver.
+     */
+    private static void toAmplitudes(ByteBuffer buffer, int pairs) {
+        byte[] lut = SampleConverter.MAGNITUDE;
+        // the amplitude n only overwrites pairs which have been read already
+        for (int n = 0; n < pairs; ++n) {
+            buffer.put(n, lut[(buffer.get(2 * n) & 0xFF) << 8 | (buffer.get(2 * n + 1) & 0xFF)]);
+        }
+    }
+
+    /// keeps the format of the packets in line with the amplitude mode, which may be switched while running
+    private void setFormat(SampleFormat format) {
+        if (format == this.format) return;
+        this.format = format;
+        setDeviceFormat(format);
+    }
+
+    /**
+     * Returns the maximal number of bytes of a packet, an even number.
+     */
+    protected int getPacketLength() {
+        return packetLength;
+    }
+
+    protected boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Waits until the consumers handed a slot back. Returns -1 if the device was closed meanwhile.
+     */
+    private int takeSlot() {
+        try {
+            while (!canceled) {
+                Integer slot = freeSlots.poll(SLOT_POLL_MS, TimeUnit.MILLISECONDS);
+                if (slot != null) return slot;
+            }
+        } catch (InterruptedException e) {
+            canceled = true;
+        }
+        return -1;
+    }
+
+    /**
+     * Sleeps until SystemClock.elapsedRealtimeNanos() reaches due. Returns false if the device was closed meanwhile.
+     */
+    private boolean sleepUntil(long due) {
+        long wait = due - SystemClock.elapsedRealtimeNanos();
+        if (wait <= 0) return true;
+        try {
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            return !canceled;
+        } catch (InterruptedException e) {
+            canceled = true;
+            return false;
+        }
+    }
+
+    @Override
+    protected void releaseBuffer(int slot) {
+        BlockingQueue<Integer> free = freeSlots;
+        if (free != null) free.offer(slot);
+    }
+
+    @Override
+    protected void announceOnOpen() {
+        if (sdrArguments != null && sdrArguments.isTcpServer()) {
+            startTcpServer();
+        }
+        super.announceOnOpen();
+    }
+
+    private void startTcpServer() {
+        try {
+            TcpServer server = new TcpServer(sdrArguments, dongleInfo(), this::executeCommand);
+            server.bind();
+            server.start();
+            tcpServer = server;
+            addSampleSink(server);
+        } catch (Exception e) {
+            Log.appendLine("%s: tcp server could not be started due to %s", getName(), e.getMessage());
+        }
+    }
+
+    private void stopTcpServer() {
+        TcpServer server = tcpServer;
+        tcpServer = null;
+        if (server != null) {
+            removeSampleSink(server);
+            server.close();
+        }
+    }
+
+    /// magic "RTL0", an unknown tuner without gains, all big endian
+    private static byte[] dongleInfo() {
+        ByteBuffer info = ByteBuffer.allocate(12).order(ByteOrder.BIG_ENDIAN);
+        info.put((byte) 'R').put((byte) 'T').put((byte) 'L').put((byte) '0');
+        info.putInt(0);
+        info.putInt(0);
+        return info.array();
+    }
+
+    /// executes the commands of the primary tcp client which make sense without a tuner
+    private void executeCommand(int code, long argument) {
+        TcpCommand command = TcpCommand.fromCode(code);
+        if (command == null) {
+            Log.appendLine("%s: unknown tcp command %d", getName(), code);
+            return;
+        }
+        switch (command) {
+            case TCP_SET_FREQ:
+                setFrequency(argument);
+                break;
+            case TCP_SET_SAMPLE_RATE:
+                setSamplingrate(argument);
+                break;
+            case TCP_SET_FREQ_CORRECTION:
+                setFrequencyCorrection((int) argument);
+                break;
+            case TCP_ANDROID_EXIT:
+                Log.appendLine("%s: tcp client requested to close the device", getName());
+                close();
+                break;
+            default:
+                // the gains and the other settings of a tuner do not apply
+                break;
+        }
+    }
+
+    @Override
+    public void close() {
+        canceled = true;
+        stopTcpServer();
+        Thread thread = this.thread;
+        if (thread != null && thread.isAlive() && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Log.appendLine("%s: interrupted while waiting for the thread to stop", getName());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Has no effect on the samples, the frequency is only reported back.
+     */
+    @Override
+    public void setFrequency(long frequency) {
+        this.frequency = frequency;
+        tuningChanged();
+    }
+
+    @Override
+    public long getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Changes the rate at which the packets are paced.
+     */
+    @Override
+    public void setSamplingrate(long samplingrate) {
+        if (samplingrate <= 0) throw new IllegalArgumentException("samplingrate must be positive");
+        samplerate = samplingrate;
+        restartPacing = true;
+        metrics.setConfiguredSamplerate(samplingrate);
+        tuningChanged();
+    }
+
+    @Override
+    public long getSamplingrate() {
+        return samplerate;
+    }
+
+    /**
+     * Has no effect on the samples, the correction is only reported back.
+     */
+    @Override
+    public void setFrequencyCorrection(int ppm) {
+        this.ppm = ppm;
+    }
+
+    @Override
+    public int getFrequencyCorrection() {
+        return ppm;
+    }
+
+    @Override
+    public boolean setAmplitude(boolean on) {
+        amplitude = on;
+        return true;
+    }
+}
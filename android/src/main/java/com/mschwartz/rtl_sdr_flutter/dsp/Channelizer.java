@@ -0,0 +1,190 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleProcessor;
+import com.mschwartz.rtl_sdr_flutter.tools.SampleConverter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A digital down converter which cuts a narrow channel out of the I/Q samples of the device. The channel at
+ * offsetHz from the center frequency is shifted to zero by a numerically controlled oscillator, lowpass filtered
+ * and decimated. The filter only computes the samples which are kept, which is the same as running the polyphase
+ * branches of the filter, so the cost per input sample is (taps / decimation) multiplications.
+ * <p>
+ * The output is {@link SampleFormat#CS16} at samplerate / decimation. The sample index of the output packets counts
+ * the output samples. Packets which are not {@link SampleFormat#CU8} are passed through unchanged.
+ */
+public class Channelizer implements SampleProcessor {
+
+    /// the passband ends at this fraction of the output sample rate
+    private static final double PASSBAND = 0.4;
+
+    /// taps per decimation if the number of taps is not given
+    private static final int DEFAULT_TAPS_PER_DECIMATION = 8;
+
+    private final int decimation;
+
+    private final float[] taps;
+
+    /// the last taps.length mixed samples, stored twice so the window is contiguous
+    private final float[] historyRe;
+
+    private final float[] historyIm;
+
+    private int historyPos;
+
+    /// input samples since the last output
+    private int countdown;
+
+    private final Nco nco;
+
+    /// the outputs of the current packet
+    private float[] outputRe = new float[0];
+
+    private float[] outputIm = new float[0];
+
+    private int outputCount;
+
+    private ByteBuffer output;
+
+    private SamplePacket outputPacket;
+
+    private long outputIndex;
+
+    private long outputSequence;
+
+    private long lastInputSequence = -1;
+
+    /**
+     * @param taps number of taps of the lowpass filter, zero chooses 8 taps per decimation
+     */
+    public Channelizer(long samplerateHz, long offsetHz, int decimation, int taps) {
+        if (samplerateHz <= 0) throw new IllegalArgumentException("samplerateHz must be positive");
+        if (decimation < 1) throw new IllegalArgumentException("decimation must be positive");
+        if (Math.abs(offsetHz) >= samplerateHz / 2)
+            throw new IllegalArgumentException("offsetHz must be within half the sample rate");
+        this.decimation = decimation;
+        int count = taps > 0 ? taps : DEFAULT_TAPS_PER_DECIMATION * decimation + 1;
+        this.taps = Filters.lowpass(count, Math.min(0.49, PASSBAND / decimation));
+        historyRe = new float[2 * count];
+        historyIm = new float[2 * count];
+        // the channel is moved down by offsetHz
+        nco = new Nco((double) -offsetHz / samplerateHz);
+        allocateOutput(16 * 32 * 512);
+    }
+
+    private void allocateOutput(int inputBytes) {
+        int samples = inputBytes / 2 / decimation + 1;
+        output = ByteBuffer.allocateDirect(samples * SampleFormat.CS16.getBytesPerSample()).order(ByteOrder.LITTLE_ENDIAN);
+        outputPacket = new SamplePacket(output, p -> {});
+        outputPacket.setFormat(SampleFormat.CS16);
+    }
+
+    @Override
+    public SamplePacket process(SamplePacket packet) {
+        if (packet.getFormat() != SampleFormat.CU8) return packet;
+        long sequence = packet.getSequence();
+        // missing input leaves a gap in the output too
+        if (lastInputSequence >= 0 && sequence != lastInputSequence + 1) outputSequence += sequence - lastInputSequence - 1;
+        lastInputSequence = sequence;
+        ByteBuffer buffer = packet.getBuffer();
+        int bytes = buffer.remaining();
+        if (getMaxOutput(bytes) * SampleFormat.CS16.getBytesPerSample() > output.capacity()) allocateOutput(bytes);
+        long firstIndex = outputIndex;
+        int count = downconvert(buffer);
+        if (count == 0) return null;
+        output.clear();
+        for (int n = 0; n < count; ++n) {
+            output.putShort(toShort(outputRe[n]));
+            output.putShort(toShort(outputIm[n]));
+        }
+        output.flip();
+        outputPacket.setMetadata(outputSequence++, firstIndex, packet.getTimestampNanos());
+        return outputPacket;
+    }
+
+    int getDecimation() {
+        return decimation;
+    }
+
+    /**
+     * Returns the maximum number of outputs produced by the given number of input bytes.
+     */
+    int getMaxOutput(int bytes) {
+        return (bytes / 2 + countdown) / decimation;
+    }
+
+    /**
+     * Mixes, filters and decimates the unsigned 8 bit I/Q pairs between the position and the limit of the buffer and
+     * returns the number of outputs. They are valid in {@link #getOutputRe()} and {@link #getOutputIm()} until the
+     * next call.
+     */
+    int downconvert(ByteBuffer buffer) {
+        int start = buffer.position();
+        int limit = buffer.limit() - 1;
+        int max = getMaxOutput(limit - start + 1);
+        if (max > outputRe.length) {
+            outputRe = new float[max];
+            outputIm = new float[max];
+        }
+        outputCount = 0;
+        float[] lut = SampleConverter.UNSIGNED_TO_FLOAT;
+        if (buffer.hasArray()) {
+            byte[] data = buffer.array();
+            int offset = buffer.arrayOffset();
+            for (int i = start; i < limit; i += 2) {
+                push(lut[data[offset + i] & 0xFF], lut[data[offset + i + 1] & 0xFF]);
+            }
+        } else {
+            for (int i = start; i < limit; i += 2) {
+                push(lut[buffer.get(i) & 0xFF], lut[buffer.get(i + 1) & 0xFF]);
+            }
+        }
+        return outputCount;
+    }
+
+    float[] getOutputRe() {
+        return outputRe;
+    }
+
+    float[] getOutputIm() {
+        return outputIm;
+    }
+
+    private void push(float i, float q) {
+        int index = nco.next();
+        float c = Nco.cos(index);
+        float s = Nco.sin(index);
+        int length = taps.length;
+        int pos = historyPos;
+        float re = i * c - q * s;
+        float im = i * s + q * c;
+        historyRe[pos] = re;
+        historyRe[pos + length] = re;
+        historyIm[pos] = im;
+        historyIm[pos + length] = im;
+        historyPos = pos + 1 == length ? 0 : pos + 1;
+        if (++countdown < decimation) return;
+        countdown = 0;
+        // the window historyPos .. historyPos + length - 1 holds the samples from the oldest to the newest
+        int from = historyPos;
+        float sumRe = 0;
+        float sumIm = 0;
+        for (int k = 0; k < length; ++k) {
+            sumRe += taps[k] * historyRe[from + k];
+            sumIm += taps[k] * historyIm[from + k];
+        }
+        outputRe[outputCount] = sumRe;
+        outputIm[outputCount] = sumIm;
+        outputCount++;
+        outputIndex++;
+    }
+
+    static short toShort(float value) {
+        int v = Math.round(value * 32767);
+        return (short) Math.max(-32767, Math.min(32767, v));
+    }
+}
@@ -0,0 +1,214 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleProcessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Demodulates a channel of the I/Q samples of the device to {@link SampleFormat#PCM16} audio at
+ * {@link #AUDIO_RATE}. The chain is:
+ * <ol>
+ *     <li>the {@link Channelizer} moves the channel to zero and decimates it to at least the intermediate rate of
+ *     the mode</li>
+ *     <li>a channel filter at the intermediate rate for the narrow modes</li>
+ *     <li>the polar discriminator for FM, the envelope for AM or the Weaver method for SSB</li>
+ *     <li>the de-emphasis for FM</li>
+ *     <li>the {@link Resampler} to the audio rate</li>
+ * </ol>
+ * The sample index of the output packets counts the audio samples. Packets which are not {@link SampleFormat#CU8}
+ * are passed through unchanged.
+ */
+public class Demodulator implements SampleProcessor {
+
+    public static final int AUDIO_RATE = 48000;
+
+    /// the transition band of the channel filter in Hz
+    private static final double CHANNEL_TRANSITION = 2500;
+
+    /// time constant of the carrier level of AM and of the gain of SSB in seconds
+    private static final double LEVEL_TIME = 0.2;
+
+    /// level of the SSB audio relative to full scale
+    private static final float SSB_LEVEL = 0.5f;
+
+    private final DemodulatorMode mode;
+
+    private final Channelizer channelizer;
+
+    /// null if the channelizer already limits the channel
+    private final FirFilter channelRe;
+
+    private final FirFilter channelIm;
+
+    private final Resampler resampler;
+
+    /// the FM output for the full deviation is 1
+    private final float fmScale;
+
+    /// coefficient of the de-emphasis, 0 if it is off
+    private final float deemphasis;
+
+    private final float levelCoefficient;
+
+    /// moves the side band of SSB back from zero to its audio frequencies
+    private final Nco weaver;
+
+    private float previousRe;
+
+    private float previousIm;
+
+    private float deemphasized;
+
+    private float level;
+
+    private float[] audio = new float[0];
+
+    private float[] resampled = new float[0];
+
+    private ByteBuffer output;
+
+    private SamplePacket outputPacket;
+
+    private long outputIndex;
+
+    private long outputSequence;
+
+    private long lastInputSequence = -1;
+
+    /**
+     * @param offsetHz     the center (FM, AM) or the carrier (SSB) of the channel relative to the center frequency
+     * @param deemphasisUs the time constant of the FM de-emphasis in microseconds, 0 turns it off
+     */
+    public Demodulator(long samplerateHz, long offsetHz, DemodulatorMode mode, int deemphasisUs) {
+        if (mode == DemodulatorMode.OFF) throw new IllegalArgumentException("mode must not be OFF");
+        if (deemphasisUs < 0) throw new IllegalArgumentException("deemphasisUs must not be negative");
+        this.mode = mode;
+        int decimation = (int) Math.max(1, samplerateHz / mode.getIntermediateRate());
+        double rate = (double) samplerateHz / decimation;
+        // the Weaver method puts the middle of the side band at zero
+        int sideband = mode.getBandwidth() / 2;
+        long shift = mode == DemodulatorMode.USB ? sideband : mode == DemodulatorMode.LSB ? -sideband : 0;
+        channelizer = new Channelizer(samplerateHz, offsetHz + shift, decimation, 0);
+        if (mode.getBandwidth() / 2.0 < 0.3 * rate) {
+            int taps = (int) Math.ceil(6 * rate / CHANNEL_TRANSITION) | 1;
+            float[] lowpass = Filters.lowpass(taps, mode.getBandwidth() / 2.0 / rate);
+            channelRe = new FirFilter(lowpass);
+            channelIm = new FirFilter(lowpass);
+        } else {
+            channelRe = null;
+            channelIm = null;
+        }
+        weaver = shift != 0 ? new Nco(shift / rate) : null;
+        fmScale = mode.getDeviation() > 0 ? (float) (rate / (2 * Math.PI * mode.getDeviation())) : 0;
+        boolean fm = mode == DemodulatorMode.WFM || mode == DemodulatorMode.NFM;
+        deemphasis = fm && deemphasisUs > 0 ? (float) (1 - Math.exp(-1e6 / (deemphasisUs * rate))) : 0;
+        levelCoefficient = (float) (1 - Math.exp(-1 / (LEVEL_TIME * rate)));
+        resampler = new Resampler(rate, AUDIO_RATE, mode.getAudioBandwidth());
+        allocateOutput(16 * 32 * 512);
+    }
+
+    private void allocateOutput(int inputBytes) {
+        int samples = resampler.getMaxOutput(channelizer.getMaxOutput(inputBytes));
+        output = ByteBuffer.allocateDirect(samples * SampleFormat.PCM16.getBytesPerSample()).order(ByteOrder.LITTLE_ENDIAN);
+        outputPacket = new SamplePacket(output, p -> {});
+        outputPacket.setFormat(SampleFormat.PCM16);
+    }
+
+    public DemodulatorMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public SamplePacket process(SamplePacket packet) {
+        if (packet.getFormat() != SampleFormat.CU8) return packet;
+        long sequence = packet.getSequence();
+        // missing input leaves a gap in the output too
+        if (lastInputSequence >= 0 && sequence != lastInputSequence + 1) outputSequence += sequence - lastInputSequence - 1;
+        lastInputSequence = sequence;
+        int bytes = packet.getBuffer().remaining();
+        if (resampler.getMaxOutput(channelizer.getMaxOutput(bytes)) * SampleFormat.PCM16.getBytesPerSample() > output.capacity())
+            allocateOutput(bytes);
+        int count = channelizer.downconvert(packet.getBuffer());
+        float[] re = channelizer.getOutputRe();
+        float[] im = channelizer.getOutputIm();
+        if (channelRe != null) {
+            channelRe.process(re, count);
+            channelIm.process(im, count);
+        }
+        if (audio.length < count) {
+            audio = new float[count];
+            resampled = new float[resampler.getMaxOutput(count)];
+        }
+        switch (mode) {
+            case WFM:
+            case NFM:
+                demodulateFm(re, im, count);
+                break;
+            case AM:
+                demodulateAm(re, im, count);
+                break;
+            default:
+                demodulateSsb(re, im, count);
+                break;
+        }
+        int produced = resampler.process(audio, count, resampled);
+        if (produced == 0) return null;
+        output.clear();
+        for (int n = 0; n < produced; ++n) {
+            output.putShort(Channelizer.toShort(resampled[n]));
+        }
+        output.flip();
+        outputPacket.setMetadata(outputSequence++, outputIndex, packet.getTimestampNanos());
+        outputIndex += produced;
+        return outputPacket;
+    }
+
+    private void demodulateFm(float[] re, float[] im, int count) {
+        float pr = previousRe;
+        float pi = previousIm;
+        float y = deemphasized;
+        for (int n = 0; n < count; ++n) {
+            // the phase difference to the previous sample is the frequency
+            float r = re[n];
+            float i = im[n];
+            float value = (float) Math.atan2(i * pr - r * pi, r * pr + i * pi) * fmScale;
+            pr = r;
+            pi = i;
+            if (deemphasis > 0) {
+                y += deemphasis * (value - y);
+                value = y;
+            }
+            audio[n] = value;
+        }
+        previousRe = pr;
+        previousIm = pi;
+        deemphasized = y;
+    }
+
+    private void demodulateAm(float[] re, float[] im, int count) {
+        float carrier = level;
+        for (int n = 0; n < count; ++n) {
+            float envelope = (float) Math.sqrt(re[n] * re[n] + im[n] * im[n]);
+            carrier += levelCoefficient * (envelope - carrier);
+            // relative to the carrier, full modulation is full scale
+            audio[n] = carrier > 1e-6f ? (envelope - carrier) / carrier : 0;
+        }
+        level = carrier;
+    }
+
+    private void demodulateSsb(float[] re, float[] im, int count) {
+        float peak = level;
+        for (int n = 0; n < count; ++n) {
+            int index = weaver.next();
+            float value = re[n] * Nco.cos(index) - im[n] * Nco.sin(index);
+            // fast attack, slow decay
+            float magnitude = Math.abs(value);
+            peak = magnitude > peak ? magnitude : peak - levelCoefficient * peak;
+            audio[n] = peak > 1e-6f ? value * SSB_LEVEL / peak : 0;
+        }
+        level = peak;
+    }
+}
@@ -0,0 +1,58 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+/**
+ * The modulation of the channel which is demodulated to audio by the {@link Demodulator}.
+ */
+public enum DemodulatorMode {
+    /// no demodulation, the samples are sent as I/Q pairs
+    OFF(0, 0, 0, 0),
+    /// broadcast FM, 75 kHz deviation
+    WFM(240000, 200000, 15000, 75000),
+    /// narrow band FM, 5 kHz deviation
+    NFM(48000, 12500, 4000, 5000),
+    AM(48000, 10000, 5000, 0),
+    /// upper side band, 0 to 3 kHz above the channel frequency
+    USB(48000, 3000, 3000, 0),
+    /// lower side band, 0 to 3 kHz below the channel frequency
+    LSB(48000, 3000, 3000, 0);
+
+    private final int intermediateRate;
+
+    private final int bandwidth;
+
+    private final int audioBandwidth;
+
+    private final int deviation;
+
+    DemodulatorMode(int intermediateRate, int bandwidth, int audioBandwidth, int deviation) {
+        this.intermediateRate = intermediateRate;
+        this.bandwidth = bandwidth;
+        this.audioBandwidth = audioBandwidth;
+        this.deviation = deviation;
+    }
+
+    /**
+     * The minimum rate of the channel after the first decimation in Hz.
+     */
+    public int getIntermediateRate() {
+        return intermediateRate;
+    }
+
+    /**
+     * The width of the channel in Hz.
+     */
+    public int getBandwidth() {
+        return bandwidth;
+    }
+
+    public int getAudioBandwidth() {
+        return audioBandwidth;
+    }
+
+    /**
+     * The frequency deviation of full scale audio in Hz, zero for the amplitude modulations.
+     */
+    public int getDeviation() {
+        return deviation;
+    }
+}
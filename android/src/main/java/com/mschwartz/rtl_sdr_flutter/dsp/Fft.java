@@ -0,0 +1,71 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+/**
+ * An in-place complex FFT of a fixed power-of-two size. The twiddle factors and the bit reversal permutation are
+ * computed once when the FFT is planned, a transform only reads them, so the same instance can be used for every
+ * frame without allocating memory.
+ */
+public class Fft {
+
+    private final int size;
+
+    private final int[] reversed;
+
+    private final float[] cos;
+
+    private final float[] sin;
+
+    public Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) throw new IllegalArgumentException("size must be a power of two");
+        this.size = size;
+        int bits = Integer.numberOfTrailingZeros(size);
+        reversed = new int[size];
+        for (int i = 0; i < size; ++i) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        cos = new float[size / 2];
+        sin = new float[size / 2];
+        for (int i = 0; i < size / 2; ++i) {
+            double angle = -2 * Math.PI * i / size;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) Math.sin(angle);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Transforms the complex values in re and im (each of the planned size) in place.
+     */
+    public void transform(float[] re, float[] im) {
+        for (int i = 0; i < size; ++i) {
+            int j = reversed[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int half = 1; half < size; half <<= 1) {
+            // the twiddle of the butterfly k is w^(k * size / (2 * half))
+            int step = size / (2 * half);
+            for (int start = 0; start < size; start += 2 * half) {
+                for (int k = 0, w = 0; k < half; ++k, w += step) {
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = re[b] * cos[w] - im[b] * sin[w];
+                    float ti = re[b] * sin[w] + im[b] * cos[w];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+/**
+ * Design of the FIR filters used by the processing stages.
+ */
+public class Filters {
+
+    /**
+     * Returns the taps of a linear phase lowpass filter, a sinc windowed by a Blackman window. The gain at DC is 1.
+     *
+     * @param taps   number of taps, odd numbers keep the delay an integer number of samples
+     * @param cutoff the cutoff frequency as fraction of the sample rate, between 0 and 0.5
+     */
+    public static float[] lowpass(int taps, double cutoff) {
+        if (taps <= 0) throw new IllegalArgumentException("taps must be positive");
+        if (cutoff <= 0 || cutoff >= 0.5) throw new IllegalArgumentException("cutoff must be between 0 and 0.5");
+        double[] h = new double[taps];
+        double center = (taps - 1) / 2.0;
+        double sum = 0;
+        for (int i = 0; i < taps; ++i) {
+            double x = i - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double window = taps == 1 ? 1 : 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (taps - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (taps - 1));
+            h[i] = sinc * window;
+            sum += h[i];
+        }
+        float[] result = new float[taps];
+        for (int i = 0; i < taps; ++i) {
+            result[i] = (float) (h[i] / sum);
+        }
+        return result;
+    }
+
+    private Filters() {
+    }
+}
@@ -0,0 +1,36 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+/**
+ * A FIR filter for real samples which keeps its history between the blocks. The history is stored twice so that the
+ * taps always see a contiguous window.
+ */
+class FirFilter {
+
+    private final float[] taps;
+
+    private final float[] history;
+
+    private int pos;
+
+    FirFilter(float[] taps) {
+        this.taps = taps;
+        history = new float[2 * taps.length];
+    }
+
+    /**
+     * Filters the first count values of data in place.
+     */
+    void process(float[] data, int count) {
+        int length = taps.length;
+        for (int n = 0; n < count; ++n) {
+            history[pos] = data[n];
+            history[pos + length] = data[n];
+            pos = pos + 1 == length ? 0 : pos + 1;
+            float sum = 0;
+            for (int k = 0; k < length; ++k) {
+                sum += taps[k] * history[pos + k];
+            }
+            data[n] = sum;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+/**
+ * A numerically controlled oscillator. The phase is a 32 bit integer which wraps around by itself, the sine and
+ * cosine are looked up with its top bits, the spurs are below -70 dB.
+ */
+final class Nco {
+
+    private static final int BITS = 12;
+
+    private static final float[] COS = new float[1 << BITS];
+
+    private static final float[] SIN = new float[1 << BITS];
+
+    static {
+        for (int i = 0; i < COS.length; ++i) {
+            double angle = 2 * Math.PI * i / COS.length;
+            COS[i] = (float) Math.cos(angle);
+            SIN[i] = (float) Math.sin(angle);
+        }
+    }
+
+    private final int step;
+
+    private int phase;
+
+    /**
+     * @param frequency the frequency as fraction of the sample rate, between -0.5 and 0.5
+     */
+    Nco(double frequency) {
+        step = (int) Math.round(frequency * 4294967296.0);
+    }
+
+    /**
+     * Advances the oscillator by one sample and returns the table index of the phase before the step.
+     */
+    int next() {
+        int index = phase >>> (32 - BITS);
+        phase += step;
+        return index;
+    }
+
+    static float cos(int index) {
+        return COS[index];
+    }
+
+    static float sin(int index) {
+        return SIN[index];
+    }
+}
@@ -0,0 +1,71 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+/**
+ * Converts real samples to another sample rate, e.g. the demodulated signal to the audio rate. The input is lowpass
+ * filtered and the output is interpolated linearly between two filtered input samples. The filter is only computed
+ * at the input samples next to an output sample, so the cost depends on the output rate.
+ */
+class Resampler {
+
+    private final float[] taps;
+
+    /// the last taps.length + 1 input samples, stored twice
+    private final float[] history;
+
+    private int pos;
+
+    /// input samples per output sample
+    private final double step;
+
+    /// position of the next output between the second newest (0) and the newest (1) input sample
+    private double next = 1;
+
+    /**
+     * @param cutoffHz the upper end of the passband, below half the output rate
+     */
+    Resampler(double inputRate, double outputRate, double cutoffHz) {
+        step = inputRate / outputRate;
+        // the transition band ends at half the output rate
+        double transition = Math.max(outputRate / 2 - cutoffHz, outputRate / 16);
+        int count = (int) Math.ceil(6 * inputRate / transition) | 1;
+        taps = Filters.lowpass(count, Math.min(0.49, cutoffHz / inputRate));
+        history = new float[2 * (count + 1)];
+    }
+
+    /**
+     * Returns the maximum number of outputs produced by count inputs.
+     */
+    int getMaxOutput(int count) {
+        return (int) (count / step) + 2;
+    }
+
+    /**
+     * Resamples the first count values of input into output and returns the number of output values.
+     */
+    int process(float[] input, int count, float[] output) {
+        int length = taps.length + 1;
+        int produced = 0;
+        for (int n = 0; n < count; ++n) {
+            history[pos] = input[n];
+            history[pos + length] = input[n];
+            pos = pos + 1 == length ? 0 : pos + 1;
+            if (next > 1) {
+                next -= 1;
+                continue;
+            }
+            // the window pos .. pos + length - 1 holds the samples from the oldest to the newest
+            float previous = 0;
+            float newest = 0;
+            for (int k = 0; k < taps.length; ++k) {
+                previous += taps[k] * history[pos + k];
+                newest += taps[k] * history[pos + k + 1];
+            }
+            while (next <= 1) {
+                output[produced++] = previous + (newest - previous) * (float) next;
+                next += step;
+            }
+            next -= 1;
+        }
+        return produced;
+    }
+}
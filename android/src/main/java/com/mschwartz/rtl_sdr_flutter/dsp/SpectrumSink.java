@@ -0,0 +1,124 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleSink;
+import com.mschwartz.rtl_sdr_flutter.tools.SampleConverter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Computes the power spectrum of the unsigned 8 bit I/Q samples of a device. The samples are collected into frames of
+ * fftSize pairs across the packets, each frame is windowed and transformed and the power of averages frames is
+ * averaged. Only the averaged bins are handed to the {@link Listener}, in dB relative to a full scale tone and with
+ * the center frequency in the middle.
+ * <p>
+ * All buffers are allocated when the sink is created. The sink runs in the thread of the device and expects I/Q
+ * pairs, the packets of the amplitude mode, which may be switched on while running, are skipped.
+ */
+public class SpectrumSink implements SampleSink {
+
+    /// keeps log10 finite for empty bins, -200 dB
+    private static final float MIN_POWER = 1e-20f;
+
+    private final Fft fft;
+
+    private final float[] window;
+
+    private final int averages;
+
+    private final Listener listener;
+
+    private final float[] re;
+
+    private final float[] im;
+
+    private final float[] power;
+
+    private final float[] bins;
+
+    /// scales the power of a full scale tone to 1
+    private final float scale;
+
+    /// number of pairs in the current frame and number of frames in the current average
+    private int filled;
+
+    private int frames;
+
+    private long firstSampleIndex;
+
+    public SpectrumSink(int fftSize, int averages, WindowType windowType, Listener listener) {
+        if (averages <= 0) throw new IllegalArgumentException("averages must be positive");
+        this.fft = new Fft(fftSize);
+        this.window = windowType.create(fftSize);
+        this.averages = averages;
+        this.listener = listener;
+        re = new float[fftSize];
+        im = new float[fftSize];
+        power = new float[fftSize];
+        bins = new float[fftSize];
+        double gain = 0;
+        for (float w : window) gain += w;
+        scale = (float) (1 / (gain * gain * averages));
+    }
+
+    @Override
+    public void onSamples(SamplePacket packet) {
+        if (packet.getFormat() != SampleFormat.CU8) return;
+        ByteBuffer buffer = packet.getBuffer();
+        float[] lut = SampleConverter.UNSIGNED_TO_FLOAT;
+        int start = buffer.position();
+        int limit = buffer.limit() - 1;
+        int size = fft.getSize();
+        if (buffer.hasArray()) {
+            byte[] data = buffer.array();
+            int offset = buffer.arrayOffset();
+            for (int i = start; i < limit; i += 2) {
+                if (filled == 0) firstSampleIndex = packet.getSampleIndex() + (i - start) / 2;
+                re[filled] = lut[data[offset + i] & 0xFF] * window[filled];
+                im[filled] = lut[data[offset + i + 1] & 0xFF] * window[filled];
+                if (++filled == size) frameFilled(packet);
+            }
+        } else {
+            for (int i = start; i < limit; i += 2) {
+                if (filled == 0) firstSampleIndex = packet.getSampleIndex() + (i - start) / 2;
+                re[filled] = lut[buffer.get(i) & 0xFF] * window[filled];
+                im[filled] = lut[buffer.get(i + 1) & 0xFF] * window[filled];
+                if (++filled == size) frameFilled(packet);
+            }
+        }
+    }
+
+    private void frameFilled(SamplePacket packet) {
+        filled = 0;
+        fft.transform(re, im);
+        int size = fft.getSize();
+        for (int i = 0; i < size; ++i) {
+            power[i] += re[i] * re[i] + im[i] * im[i];
+        }
+        if (++frames < averages) return;
+        frames = 0;
+        // negative frequencies first
+        int half = size / 2;
+        for (int i = 0; i < size; ++i) {
+            float p = power[(i + half) & (size - 1)] * scale;
+            bins[i] = (float) (10 * Math.log10(Math.max(p, MIN_POWER)));
+        }
+        Arrays.fill(power, 0);
+        listener.onSpectrum(bins, firstSampleIndex, packet.getTimestampNanos());
+    }
+
+    /**
+     * Receives the averaged spectra.
+     */
+    public interface Listener {
+        /**
+         * Called in the thread of the device. The bins are reused for the next spectrum after the method returns.
+         *
+         * @param sampleIndex    index of the first sample of the last frame within the stream of the device
+         * @param timestampNanos the capture time of the packet which completed the spectrum
+         */
+        void onSpectrum(float[] bins, long sampleIndex, long timestampNanos);
+    }
+}
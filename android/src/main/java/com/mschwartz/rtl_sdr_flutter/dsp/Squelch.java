@@ -0,0 +1,266 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.tools.SampleConverter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Passes only the bursts of the stream of the device and drops the quiet samples between them. The level of a
+ * sample is its magnitude (the amplitude of the amplitude mode, computed for I/Q pairs) between 0 and 255.
+ * <ul>
+ *     <li>the squelch opens after attack samples in a row exceeded the threshold</li>
+ *     <li>it starts to close after release samples in a row did not exceed threshold - hysteresis</li>
+ *     <li>a burst starts preTrigger samples before the attack and ends postTrigger samples after the release. The
+ *     squelch reopens during the post trigger window if the attack is met again, the burst continues then.</li>
+ * </ul>
+ * The state and the samples needed for the pre trigger window are kept across the packets, so the bursts do not
+ * depend on where the usb buffers end. A burst is passed on as one or more packets with consecutive sequence numbers,
+ * the sequence numbers skip one between two bursts, so the receiver sees the gap. The sample index of the packets is
+ * the index of their first sample within the stream of the device. A {@link Listener} is notified whenever the
+ * squelch opens, e.g. to trigger a capture.
+ */
+public class Squelch {
+
+    private static final int CLOSED = 0;
+
+    private static final int OPEN = 1;
+
+    /// released, the post trigger window is still passed on
+    private static final int POST = 2;
+
+    private volatile int threshold;
+
+    /// notified when the squelch opens, null if nobody listens
+    private volatile Listener listener;
+
+    private final int hysteresis;
+
+    private final int attack;
+
+    private final int release;
+
+    private final int preTrigger;
+
+    private final int postTrigger;
+
+    private int state = CLOSED;
+
+    /// samples in a row above the threshold while not open, below the closing level while open
+    private int run;
+
+    /// index of the last sample of the post trigger window
+    private long postEnd;
+
+    /// the last samples before the current packet, as many as the pre trigger window may reach back
+    private final byte[] history;
+
+    /// bytes written into the history, the newest sample ends at historyBytes % history.length
+    private long historyBytes;
+
+    private int historySamples;
+
+    private SampleFormat format;
+
+    private long expectedIndex = -1;
+
+    /// index after the last sample passed on, a pre trigger window never reaches back before it
+    private long passedUpTo = Long.MIN_VALUE;
+
+    private ByteBuffer output;
+
+    private SamplePacket outputPacket;
+
+    /// the first burst gets the sequence number 0
+    private long outputSequence = -2;
+
+    /**
+     * @param threshold   the level which opens the squelch, 0 passes everything
+     * @param hysteresis  the squelch closes below threshold - hysteresis
+     * @param attack      samples above the threshold which open the squelch, at least 1
+     * @param release     samples below the closing level which close the squelch, at least 1
+     * @param preTrigger  samples passed on before the attack
+     * @param postTrigger samples passed on after the release
+     */
+    public Squelch(int threshold, int hysteresis, int attack, int release, int preTrigger, int postTrigger) {
+        if (attack < 1 || release < 1) throw new IllegalArgumentException("attack and release must be positive");
+        if (hysteresis < 0 || preTrigger < 0 || postTrigger < 0)
+            throw new IllegalArgumentException("hysteresis, preTrigger and postTrigger must not be negative");
+        setThreshold(threshold);
+        this.hysteresis = hysteresis;
+        this.attack = attack;
+        this.release = release;
+        this.preTrigger = preTrigger;
+        this.postTrigger = postTrigger;
+        // two bytes per sample for I/Q pairs
+        history = new byte[2 * (preTrigger + attack)];
+        allocateOutput(history.length + 16 * 32 * 512);
+    }
+
+    private void allocateOutput(int capacity) {
+        output = ByteBuffer.allocate(capacity);
+        outputPacket = new SamplePacket(output, p -> {});
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Changes the threshold while the device is running. 0 passes everything.
+     */
+    public void setThreshold(int threshold) {
+        if (threshold < 0 || threshold > 255) throw new IllegalArgumentException("threshold must be between 0 and 255");
+        this.threshold = threshold;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Passes the bursts of the packet to the output. The packets handed to the output are only valid until it
+     * returns. Packets which are neither I/Q pairs nor amplitudes and all packets while the threshold is 0 are
+     * passed on unchanged.
+     */
+    public void process(SamplePacket packet, Output out) {
+        SampleFormat packetFormat = packet.getFormat();
+        int threshold = this.threshold;
+        if (threshold == 0 || (packetFormat != SampleFormat.CU8 && packetFormat != SampleFormat.U8_AMPLITUDE)) {
+            format = null;
+            out.accept(packet);
+            return;
+        }
+        long base = packet.getSampleIndex();
+        if (packetFormat != format || base != expectedIndex) {
+            // the bursts do not continue across a gap
+            format = packetFormat;
+            state = CLOSED;
+            run = 0;
+            historyBytes = 0;
+            historySamples = 0;
+        }
+        int bytesPerSample = format.getBytesPerSample();
+        ByteBuffer buffer = packet.getBuffer();
+        int start = buffer.position();
+        int count = buffer.remaining() / bytesPerSample;
+        expectedIndex = base + count;
+        int needed = (historySamples + count) * bytesPerSample;
+        if (output.capacity() < needed) allocateOutput(needed);
+        int closeLevel = threshold - hysteresis;
+        byte[] lut = SampleConverter.MAGNITUDE;
+        boolean iq = format == SampleFormat.CU8;
+        // the first sample of the current segment within the packet, -1 if the squelch is closed
+        int segment = state == CLOSED ? -1 : 0;
+        boolean continued = segment == 0;
+        for (int n = 0; n < count; ++n) {
+            int i = start + n * bytesPerSample;
+            int level = iq ? lut[(buffer.get(i) & 0xFF) << 8 | (buffer.get(i + 1) & 0xFF)] & 0xFF : buffer.get(i) & 0xFF;
+            if (state == OPEN) {
+                run = level > closeLevel ? 0 : run + 1;
+                if (run < release) continue;
+                run = 0;
+                if (postTrigger == 0) {
+                    state = CLOSED;
+                    emit(packet, segment, n, continued, out);
+                    segment = -1;
+                    continued = false;
+                    continue;
+                }
+                state = POST;
+                postEnd = base + n + postTrigger;
+                continue;
+            }
+            run = level > threshold ? run + 1 : 0;
+            if (run >= attack) {
+                run = 0;
+                if (state == CLOSED) {
+                    long burstStart = Math.max(base + n - attack + 1 - preTrigger, Math.max(passedUpTo, base - historySamples));
+                    output.clear();
+                    copyHistory((int) (base - Math.min(burstStart, base)), bytesPerSample);
+                    segment = (int) Math.max(0, burstStart - base);
+                    Listener listener = this.listener;
+                    if (listener != null) listener.onOpen(base + n);
+                }
+                state = OPEN;
+            } else if (state == POST && base + n >= postEnd) {
+                state = CLOSED;
+                run = 0;
+                emit(packet, segment, n, continued, out);
+                segment = -1;
+                continued = false;
+            }
+        }
+        if (segment >= 0) {
+            // the burst continues in the next packet
+            emit(packet, segment, count - 1, continued, out);
+        }
+        appendHistory(buffer, count, bytesPerSample);
+    }
+
+    /**
+     * Appends the samples first to last of the packet to the output and passes the output on.
+     */
+    private void emit(SamplePacket packet, int first, int last, boolean continued, Output out) {
+        int bytesPerSample = format.getBytesPerSample();
+        ByteBuffer buffer = packet.getBuffer();
+        if (continued) output.clear();
+        int historyPart = output.position() / bytesPerSample;
+        ByteBuffer source = buffer.duplicate();
+        source.position(buffer.position() + first * bytesPerSample);
+        source.limit(buffer.position() + (last + 1) * bytesPerSample);
+        output.put(source);
+        output.flip();
+        // the sequence numbers skip one between two bursts
+        outputSequence += continued ? 1 : 2;
+        long firstIndex = packet.getSampleIndex() + first - historyPart;
+        outputPacket.setFormat(format);
+        outputPacket.setMetadata(outputSequence, firstIndex, packet.getTimestampNanos());
+        passedUpTo = packet.getSampleIndex() + last + 1;
+        out.accept(outputPacket);
+    }
+
+    /**
+     * Copies the newest samples of the history into the output.
+     */
+    private void copyHistory(int samples, int bytesPerSample) {
+        int bytes = samples * bytesPerSample;
+        int end = (int) (historyBytes % history.length);
+        int from = Math.floorMod(end - bytes, history.length);
+        if (from + bytes <= history.length) {
+            output.put(history, from, bytes);
+        } else {
+            output.put(history, from, history.length - from);
+            output.put(history, 0, bytes - (history.length - from));
+        }
+    }
+
+    private void appendHistory(ByteBuffer buffer, int count, int bytesPerSample) {
+        int samples = Math.min(count, history.length / bytesPerSample);
+        int bytes = samples * bytesPerSample;
+        int from = buffer.position() + (count - samples) * bytesPerSample;
+        for (int k = 0; k < bytes; ++k) {
+            history[(int) ((historyBytes + k) % history.length)] = buffer.get(from + k);
+        }
+        historyBytes += bytes;
+        historySamples = Math.min(historySamples + count, history.length / bytesPerSample);
+    }
+
+    /**
+     * Is notified in the thread of the device when the squelch opens.
+     */
+    public interface Listener {
+        /**
+         * @param sampleIndex the index of the sample which completed the attack within the stream of the device
+         */
+        void onOpen(long sampleIndex);
+    }
+
+    /**
+     * Receives the bursts.
+     */
+    public interface Output {
+        void accept(SamplePacket packet);
+    }
+}
@@ -0,0 +1,41 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+/**
+ * The window applied to each frame before the FFT. Windows with a lower side lobe level show weak signals next to
+ * strong ones but widen every peak.
+ */
+public enum WindowType {
+    /// no window, the narrowest peaks and the highest leakage
+    RECTANGULAR,
+    HANN,
+    HAMMING,
+    /// 4 term Blackman-Harris, side lobes below -92 dB
+    BLACKMAN_HARRIS;
+
+    /**
+     * Returns the coefficients of the window for the given number of samples.
+     */
+    public float[] create(int size) {
+        float[] window = new float[size];
+        for (int i = 0; i < size; ++i) {
+            double x = 2 * Math.PI * i / size;
+            double w;
+            switch (this) {
+                case HANN:
+                    w = 0.5 - 0.5 * Math.cos(x);
+                    break;
+                case HAMMING:
+                    w = 0.54 - 0.46 * Math.cos(x);
+                    break;
+                case BLACKMAN_HARRIS:
+                    w = 0.35875 - 0.48829 * Math.cos(x) + 0.14128 * Math.cos(2 * x) - 0.01168 * Math.cos(3 * x);
+                    break;
+                default:
+                    w = 1;
+                    break;
+            }
+            window[i] = (float) w;
+        }
+        return window;
+    }
+}
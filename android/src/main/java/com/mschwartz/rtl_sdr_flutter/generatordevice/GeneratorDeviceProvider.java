@@ -0,0 +1,36 @@
+package com.mschwartz.rtl_sdr_flutter.generatordevice;
+
+import android.content.Context;
+
+import com.mschwartz.rtl_sdr_flutter.MethodHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.StreamHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.devices.SdrDevice;
+import com.mschwartz.rtl_sdr_flutter.devices.SdrDeviceProvider;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Offers a {@link GeneratorSdrDevice} for each {@link GeneratorSignal}, named "generator tone", "generator chirp",
+ * "generator noise" and "generator modes".
+ */
+public class GeneratorDeviceProvider implements SdrDeviceProvider {
+    @Override
+    public List<SdrDevice> listDevices(Context ctx, StreamHandlerImpl streamHandler, MethodHandlerImpl methodhandler, boolean forceRoot) {
+        List<SdrDevice> devices = new LinkedList<>();
+        for (GeneratorSignal signal : GeneratorSignal.values())
+            devices.add(new GeneratorSdrDevice(streamHandler, methodhandler, signal));
+        return devices;
+    }
+
+    @Override
+    public String getName() {
+        return "Generator";
+    }
+
+    @Override
+    public boolean loadNativeLibraries() {
+        // No native libraries to load
+        return true;
+    }
+}
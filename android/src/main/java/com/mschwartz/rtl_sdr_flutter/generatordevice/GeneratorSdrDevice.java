@@ -0,0 +1,157 @@
+package com.mschwartz.rtl_sdr_flutter.generatordevice;
+
+import com.mschwartz.rtl_sdr_flutter.MethodHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.SdrArguments;
+import com.mschwartz.rtl_sdr_flutter.StreamHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.devices.SoftwareSdrDevice;
+import com.mschwartz.rtl_sdr_flutter.tools.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Generates a test signal instead of receiving one, e.g. to find out how many samples per second the plugin and the
+ * app can process without hardware. The signal and the noise are computed once into a table of {@link #TABLE_PAIRS}
+ * unsigned I/Q pairs, the packets are copied from the table, so the generator is not the bottleneck even at
+ * 40 MS/s. The signal repeats with the table, the tone is rounded to a frequency with an integral number of periods
+ * in the table.
+ * <p>
+ * The signal to noise ratio ({@link SdrArguments#getGeneratorSnrDb()}) is the ratio of the power of the signal to the
+ * power of the noise in the whole bandwidth, during the bursts for {@link GeneratorSignal#MODES}. Signal and noise
+ * together stay within the 8 bits. The table is computed again if the sample rate is changed.
+ */
+public class GeneratorSdrDevice extends SoftwareSdrDevice {
+
+    /// the signals repeat after this number of samples
+    static final int TABLE_PAIRS = 1 << 20;
+
+    /// the peak of signal and noise, the noise exceeds 4 sigma only rarely and is clipped then
+    private static final double FULL_SCALE = 120;
+
+    /// the chirp sweeps over this fraction of the sample rate, centered at 0
+    private static final double CHIRP_BANDWIDTH = 0.8;
+
+    /// a Mode-S burst starts every millisecond
+    private static final double MODES_INTERVAL_US = 1000;
+
+    /// an ADS-B identification message (KLM1023) with a valid parity
+    private static final byte[] MODES_MESSAGE = {
+            (byte) 0x8D, 0x48, 0x40, (byte) 0xD6, 0x20, 0x2C, (byte) 0xC3, 0x71, (byte) 0xC3, 0x2C, (byte) 0xE0, 0x57, 0x60, (byte) 0x98
+    };
+
+    /// the preamble and the 112 bits take 120 us
+    private static final double MODES_BURST_US = 8 + 8 * MODES_MESSAGE.length;
+
+    private final GeneratorSignal signal;
+
+    private byte[] table;
+
+    /// the next byte of the table to be delivered
+    private int tablePosition;
+
+    private long tableSamplerate;
+
+    public GeneratorSdrDevice(StreamHandlerImpl streamHandler, MethodHandlerImpl methodhandler, GeneratorSignal signal) {
+        super(streamHandler, methodhandler);
+        this.signal = signal;
+    }
+
+    @Override
+    protected void produce(SdrArguments sdrArguments) {
+        createTable(sdrArguments);
+        announceOnOpen();
+        int pairs = getPacketLength() / 2;
+        do {
+            if (getSamplingrate() != tableSamplerate) createTable(sdrArguments);
+        } while (deliver(pairs));
+    }
+
+    private void createTable(SdrArguments sdrArguments) {
+        long samplerate = getSamplingrate();
+        long start = System.nanoTime();
+        table = createTable(signal, samplerate, sdrArguments.getGeneratorOffsetHz(), sdrArguments.getGeneratorSnrDb(), TABLE_PAIRS);
+        tableSamplerate = samplerate;
+        tablePosition = 0;
+        Log.appendLine("GeneratorSdrDevice: %s at %d Hz computed in %d ms", signal, samplerate, (System.nanoTime() - start) / 1000000);
+    }
+
+    @Override
+    protected void fill(ByteBuffer slot, int length) {
+        while (length > 0) {
+            int count = Math.min(length, table.length - tablePosition);
+            slot.put(table, tablePosition, count);
+            tablePosition = (tablePosition + count) % table.length;
+            length -= count;
+        }
+    }
+
+    /**
+     * Computes the unsigned I/Q pairs of the signal with noise. The table repeats without a jump of the phase.
+     */
+    static byte[] createTable(GeneratorSignal signal, long samplerate, long offsetHz, int snrDb, int pairs) {
+        double sigma;
+        double amplitude;
+        if (signal == GeneratorSignal.NOISE) {
+            sigma = FULL_SCALE / 4;
+            amplitude = 0;
+        } else {
+            // the power of the carrier is amplitude^2, the one of the noise 2 sigma^2
+            double ratio = Math.sqrt(2 * Math.pow(10, snrDb / 10.0));
+            sigma = FULL_SCALE / (ratio + 4);
+            amplitude = ratio * sigma;
+        }
+        double cycles = Math.rint((double) offsetHz * pairs / samplerate);
+        double usPerSample = 1e6 / samplerate;
+        long burstInterval = Math.max(1, Math.round(MODES_INTERVAL_US / usPerSample));
+        long lastBurst = (long) ((pairs - MODES_BURST_US / usPerSample) / burstInterval);
+        // the same noise for each table, so the runs are comparable
+        Random random = new Random(1);
+        double chirpPhase = 0;
+        byte[] table = new byte[2 * pairs];
+        for (int n = 0; n < pairs; ++n) {
+            double phase;
+            double level = amplitude;
+            if (signal == GeneratorSignal.CHIRP) {
+                phase = chirpPhase;
+                // the frequencies are symmetric to 0, the phase is back at 0 at the end of the table
+                chirpPhase += 2 * Math.PI * CHIRP_BANDWIDTH * ((n + 0.5) / pairs - 0.5);
+            } else {
+                phase = 2 * Math.PI * cycles * n / pairs;
+            }
+            if (signal == GeneratorSignal.MODES) {
+                long burst = n / burstInterval;
+                boolean high = burst <= lastBurst && isModeSPulse((n - burst * burstInterval) * usPerSample);
+                level = high ? amplitude : 0;
+            }
+            table[2 * n] = quantize(level * Math.cos(phase) + sigma * random.nextGaussian());
+            table[2 * n + 1] = quantize(level * Math.sin(phase) + sigma * random.nextGaussian());
+        }
+        return table;
+    }
+
+    /**
+     * Returns true if the carrier is on at the time after the start of a Mode-S burst: the four pulses of the preamble
+     * within the first 8 us, then a pulse in the first half of each 1 us bit for a one and in the second half for a
+     * zero.
+     */
+    private static boolean isModeSPulse(double us) {
+        if (us < 8) {
+            return us < 0.5 || (us >= 1 && us < 1.5) || (us >= 3.5 && us < 4) || (us >= 4.5 && us < 5);
+        }
+        int bit = (int) (us - 8);
+        if (bit >= 8 * MODES_MESSAGE.length) return false;
+        boolean one = (MODES_MESSAGE[bit >> 3] & (0x80 >> (bit & 7))) != 0;
+        boolean firstHalf = us - 8 - bit < 0.5;
+        return one == firstHalf;
+    }
+
+    private static byte quantize(double value) {
+        long sample = Math.round(127.5 + value);
+        return (byte) Math.max(0, Math.min(255, sample));
+    }
+
+    @Override
+    public String getName() {
+        return "generator " + signal.name().toLowerCase();
+    }
+}
@@ -0,0 +1,16 @@
+package com.mschwartz.rtl_sdr_flutter.generatordevice;
+
+/**
+ * The signals of the {@link GeneratorSdrDevice}. All signals but the noise are added to white gaussian noise at the
+ * signal to noise ratio of the arguments.
+ */
+public enum GeneratorSignal {
+    /// a carrier at the offset of the arguments
+    TONE,
+    /// a carrier which sweeps over 80 percent of the sample rate
+    CHIRP,
+    /// only white gaussian noise
+    NOISE,
+    /// ADS-B messages every millisecond on a carrier at the offset of the arguments, decodable at 2 MS/s
+    MODES
+}
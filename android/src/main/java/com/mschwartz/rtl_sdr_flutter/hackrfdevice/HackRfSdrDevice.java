@@ -35,7 +35,8 @@ import com.mschwartz.rtl_sdr_flutter.tools.Log;
 import java.io.IOException;
 
 public class HackRfSdrDevice extends SdrDevice {
-    private final static double BUFF_TIME = 0.1;
+    /// the consumer must be able to catch up at least this number of transfers
+    private final static int MIN_BUFFERED_TRANSFERS = 2;
     private final UsbDevice device;
 
     private Thread processingThread;
@@ -54,15 +55,15 @@ public class HackRfSdrDevice extends SdrDevice {
         processingThread = new Thread() {
             @Override
             public void run() {
-                int queue_size = (int) (2 * BUFF_TIME * sdrArguments.getSamplerateHz());
                 try {
+                    int queue_size = queueSize(sdrArguments);
                     Log.appendLine("Opening HackRF");
                     Hackrf.initHackrf(context, device, new HackrfCallbackInterface() {
                         @Override
                         public void onHackrfReady(Hackrf hackrf) {
                             try {
                                 Log.appendLine("HackRF ready");
-                                tcp = new HackRfTcp(hackrf, sdrArguments);
+                                tcp = new HackRfTcp(hackrf, sdrArguments, metrics);
 
                                 Log.appendLine("Initialising TCP");
                                 tcp.initDevice();
@@ -93,7 +94,7 @@ public class HackRfSdrDevice extends SdrDevice {
                         public void onHackrfError(String message) {
                             announceOnClosed(new IOException(message));
                         }
-                    }, queue_size);
+                    }, queue_size, sdrArguments.getHackrfUsbRequests(), sdrArguments.getHackrfTransferSize());
                 } catch (Exception e) {
                     announceOnClosed(e);
                 } finally {
@@ -105,6 +106,28 @@ public class HackRfSdrDevice extends SdrDevice {
         processingThread.start();
     }
 
+    /**
+     * Returns the size of the queue in bytes for the buffered time of the arguments. Throws an
+     * IllegalArgumentException if the transfers do not fit the sample rate.
+     */
+    static int queueSize(SdrArguments sdrArguments) {
+        // 2 bytes per I/Q sample
+        long bytesPerSecond = 2 * sdrArguments.getSamplerateHz();
+        if (bytesPerSecond <= 0) throw new IllegalArgumentException("samplerateHz must be positive");
+        long queueSize = bytesPerSecond * sdrArguments.getHackrfBufferTimeMs() / 1000;
+        int transferSize = sdrArguments.getHackrfTransferSize();
+        if (queueSize / transferSize < MIN_BUFFERED_TRANSFERS) {
+            double transferMs = 1000.0 * transferSize / bytesPerSecond;
+            throw new IllegalArgumentException(String.format("hackrfBufferTimeMs %d must hold at least %d transfers of %.1f ms at %d Hz",
+                    sdrArguments.getHackrfBufferTimeMs(), MIN_BUFFERED_TRANSFERS, transferMs, sdrArguments.getSamplerateHz()));
+        }
+        if (queueSize > Integer.MAX_VALUE) throw new IllegalArgumentException("hackrfBufferTimeMs is too long");
+        long inFlightMs = 1000L * sdrArguments.getHackrfUsbRequests() * transferSize / bytesPerSecond;
+        Log.appendLine("HackRF: %d transfers of %d bytes in flight (%d ms), %d ms buffered", sdrArguments.getHackrfUsbRequests(),
+                transferSize, inFlightMs, sdrArguments.getHackrfBufferTimeMs());
+        return (int) queueSize;
+    }
+
     @Override
     public void close() {
         if (tcp != null) {
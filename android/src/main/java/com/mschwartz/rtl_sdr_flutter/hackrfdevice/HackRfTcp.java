@@ -20,36 +20,42 @@
 
 package com.mschwartz.rtl_sdr_flutter.hackrfdevice;
 
-import static com.mschwartz.rtl_sdr_flutter.hackrfdevice.TcpCommand.TCP_ANDROID_EXIT;
-import static com.mschwartz.rtl_sdr_flutter.hackrfdevice.TcpCommand.TCP_ANDROID_GAIN_BY_PERCENTAGE;
-import static com.mschwartz.rtl_sdr_flutter.hackrfdevice.TcpCommand.TCP_SET_AGC_MODE;
-import static com.mschwartz.rtl_sdr_flutter.hackrfdevice.TcpCommand.TCP_SET_FREQ;
-import static com.mschwartz.rtl_sdr_flutter.hackrfdevice.TcpCommand.TCP_SET_GAIN;
-import static com.mschwartz.rtl_sdr_flutter.hackrfdevice.TcpCommand.TCP_SET_GAIN_MODE;
-import static com.mschwartz.rtl_sdr_flutter.hackrfdevice.TcpCommand.TCP_SET_IF_TUNER_GAIN;
-import static com.mschwartz.rtl_sdr_flutter.hackrfdevice.TcpCommand.TCP_SET_SAMPLE_RATE;
+import static com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand.TCP_ANDROID_EXIT;
+import static com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand.TCP_ANDROID_GAIN_BY_PERCENTAGE;
+import static com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand.TCP_SET_AGC_MODE;
+import static com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand.TCP_SET_FREQ;
+import static com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand.TCP_SET_GAIN;
+import static com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand.TCP_SET_GAIN_MODE;
+import static com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand.TCP_SET_IF_TUNER_GAIN;
+import static com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand.TCP_SET_SAMPLE_RATE;
 
 import com.mantz_it.hackrf_android.Hackrf;
 import com.mantz_it.hackrf_android.HackrfUsbException;
+import com.mantz_it.hackrf_android.SampleRing;
 import com.mschwartz.rtl_sdr_flutter.SdrArguments;
+import com.mschwartz.rtl_sdr_flutter.devices.DeviceMetrics;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.tcp.SamplePacketPool;
+import com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand;
+import com.mschwartz.rtl_sdr_flutter.tcp.TcpServer;
 import com.mschwartz.rtl_sdr_flutter.tools.Log;
+import com.mschwartz.rtl_sdr_flutter.tools.SampleConverter;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Serves the samples of a HackRF to several rtl_tcp clients. The device streams as soon as the first client
+ * connects, every client receives the same stream. Only the primary client may control the device, see
+ * {@link TcpServer}.
+ */
 public class HackRfTcp {
     private final static int DEFAULT_LNA_GAIN = 30;
     private final static int DEFAULT_VGA_GAIN = 32;
 
-    private final static int SOCKET_TIMEOUT_MS = 20 * 1_000;
     public static final List<TcpCommand> SUPPORTED_COMMANDS = Arrays.asList(
             TCP_SET_FREQ,
             TCP_SET_SAMPLE_RATE,
@@ -60,21 +66,26 @@ public class HackRfTcp {
             TCP_SET_AGC_MODE,
             TCP_SET_GAIN_MODE
     );
-    private final ServerSocket socket = new ServerSocket();
+    private final TcpServer server;
     private final Hackrf hackrf;
     private final SdrArguments sdrArguments;
+    private final DeviceMetrics metrics;
     private volatile boolean canceled = false;
 
-    public HackRfTcp(Hackrf hackrf, SdrArguments sdrArguments) throws IOException {
+    public HackRfTcp(Hackrf hackrf, SdrArguments sdrArguments, DeviceMetrics metrics) throws IOException {
         this.hackrf = hackrf;
         this.sdrArguments = sdrArguments;
+        this.metrics = metrics;
+        this.server = new TcpServer(sdrArguments, dongleInfo(), (code, argument) -> {
+            TcpCommand command = TcpCommand.fromCode(code);
+            if (command != null) {
+                executeCommand(command, argument);
+            }
+        });
     }
 
     public void prepareToAcceptConnections() throws IOException {
-        String address = "localhost";
-        int port = 7777;
-        socket.bind(new InetSocketAddress(address, port));
-        socket.setSoTimeout(SOCKET_TIMEOUT_MS);
+        server.bind();
     }
 
     private void executeCommand(TcpCommand command, long argument) throws HackrfUsbException {
@@ -119,7 +130,6 @@ public class HackRfTcp {
                 break;
             case TCP_ANDROID_EXIT:
                 canceled = true;
-                Thread.currentThread().interrupt();
                 break;
              default:
                  Log.appendLine("Unsupported command "+command);
@@ -129,16 +139,13 @@ public class HackRfTcp {
 
     private void setSampleRate(int argument) throws HackrfUsbException {
         hackrf.setSampleRate(argument, 1);
+        metrics.setConfiguredSamplerate(argument);
         hackrf.setBasebandFilterBandwidth(Hackrf.computeBasebandFilterBandwidth((int) (0.75 * argument)));
     }
 
     public void close() {
         canceled = true;
-        try {
-            socket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        server.close();
     }
 
     public void initDevice() throws HackrfUsbException {
@@ -148,44 +155,60 @@ public class HackRfTcp {
     }
 
     public void serveAndBlock() throws IOException, HackrfUsbException {
-        DataInputStream inputStream = null;
-        DataOutputStream outputStream = null;
-        HardwareCommand command = null;
-        Socket conn = null;
-
+        // every client may hold its whole queue, the producer needs one more packet
+        SamplePacketPool packets = new SamplePacketPool(
+                sdrArguments.getTcpMaxClients() * sdrArguments.getTcpClientQueueSize() + 1, hackrf.getPacketSize());
         try {
-            Log.appendLine("Waiting for client on "+socket.getInetAddress().getHostAddress()+"...");
-            conn = socket.accept();
-            Log.appendLine("Client connected");
-
-            conn.setTcpNoDelay(true);
-            inputStream = new DataInputStream(conn.getInputStream());
-            outputStream = new DataOutputStream(conn.getOutputStream());
-            command = new HardwareCommand(inputStream);
-            command.start();
-
-            Log.appendLine("Starting HackRF RX");
-            ArrayBlockingQueue<byte[]> rxqueue = hackrf.startRX();
-
-            Log.appendLine("Sending RX data...");
-            sendDongleInfo(outputStream);
+            server.start();
+            SampleRing rxring = null;
+            long ringDropped = 0;
             try {
-                while (!Thread.currentThread().isInterrupted() && !command.isInterrupted() && !canceled) {
-                    byte[] buff = rxqueue.poll(1, TimeUnit.SECONDS);
-                    if (buff != null) {
+                while (!Thread.currentThread().isInterrupted() && !canceled && !server.isClosed()) {
+                    if (rxring == null) {
+                        if (!server.awaitClient(1, TimeUnit.SECONDS)) continue;
+                        Log.appendLine("Starting HackRF RX");
+                        rxring = hackrf.startRX();
+                        ringDropped = rxring.getDroppedPackets();
+                        Log.appendLine("Sending RX data...");
+                    }
+                    ByteBuffer buff = rxring.poll(1, TimeUnit.SECONDS);
+                    if (buff == null) continue;
+                    long dropped = rxring.getDroppedPackets();
+                    metrics.onDropped(dropped - ringDropped);
+                    ringDropped = dropped;
+                    metrics.onQueueLevel(rxring.size());
+                    metrics.onReceived(buff.capacity());
+                    boolean listening = server.getClientCount() > 0;
+                    SamplePacket packet = listening ? packets.acquire() : null;
+                    if (listening && packet == null) {
+                        // all packets are held by slow clients
+                        metrics.onDropped(1);
+                    }
+                    if (packet != null) {
+                        ByteBuffer data = packet.getBuffer();
+                        // every usb transfer of a HackRF is filled completely, one I/Q pair has two bytes
+                        long sequence = rxring.getSequence();
+                        packet.setMetadata(sequence, sequence * hackrf.getPacketSize() / 2, rxring.getTimestamp());
+                        // the copy is intended: the ring recycles its slots in order on this thread, while the
+                        // clients release the packets out of order on the I/O thread and may hold them for
+                        // seconds, which would stall the usb transfers for all clients
+                        buff.clear();
+                        data.put(buff);
+                        data.flip();
                         // HackRF input is signed
                         // rtl sdr input is unsigned
-                        for (int i = 0; i < buff.length; i++) {
-                            int b = buff[i];
-                            buff[i] = (byte) (b + 128);
+                        if (!sdrArguments.isSignedSamples()) {
+                            SampleConverter.flipSign(data);
                         }
-                        outputStream.write(buff);
-                        hackrf.returnBufferToBufferPool(buff);
+                        server.publish(packet);
+                        metrics.onDelivered(1, data.limit(), packet.getTimestampNanos());
+                        packet.release();
                     }
+                    rxring.release();
                 }
             } catch (InterruptedException ignored) {}
-            if (command.e != null) {
-                Exception e = command.e;
+            Exception e = server.getError();
+            if (e != null) {
                 if (e instanceof IOException) {
                     throw (IOException) e;
                 }
@@ -195,65 +218,14 @@ public class HackRfTcp {
                 throw new RuntimeException(e);
             }
         } finally {
-            if (command != null && command.isAlive()) {
-                command.interrupt();
-            }
-            if (conn != null) {
-                conn.close();
-            }
-            socket.close();
-            if (inputStream != null) {
-                inputStream.close();
-            }
-            if (outputStream != null) {
-                outputStream.close();
-            }
-            if (command != null && command.isAlive()) {
-                try {
-                    Log.appendLine("Joining command thread.");
-                    command.join();
-                    Log.appendLine("Command thread has finished.");
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+            server.close();
             Log.appendLine("Closing TCP server.");
         }
     }
 
-    private void sendDongleInfo(DataOutputStream out) throws IOException {
-        // dongle magic
-        out.write(new byte[]{(byte) 'h', (byte) 'x', (byte) 'r', (byte) 'f'});
-        out.writeInt(0); // tuner unknown
-        out.writeInt(0); // 0 gains
-    }
-
-    private class HardwareCommand extends Thread {
-        private final DataInputStream inputStream;
-        private Exception e;
-
-        public HardwareCommand(DataInputStream inputStream) {
-            this.inputStream = inputStream;
-        }
-
-        @Override
-        public void run() {
-            try {
-                Log.appendLine("Command listener starting");
-                while (!this.isInterrupted()) {
-                    int code = inputStream.readByte() & 0xFF;
-                    long argument = inputStream.readInt() & 0xFFFFFFFFL;
-                    TcpCommand command = TcpCommand.fromCode(code);
-                    if (command != null) {
-                        executeCommand(command, argument);
-                    }
-                }
-            } catch (IOException | HackrfUsbException e) {
-                Log.appendLine("Command listener closing due to " + e.getMessage());
-                this.e = e;
-            }
-            Log.appendLine("Command listener closed");
-        }
+    private static byte[] dongleInfo() {
+        // dongle magic, tuner unknown, 0 gains
+        return new byte[]{(byte) 'h', (byte) 'x', (byte) 'r', (byte) 'f', 0, 0, 0, 0, 0, 0, 0, 0};
     }
 
     private static int remap_rtl_gain_to_perc(int tenthsOfDb) {
@@ -0,0 +1,70 @@
+package com.mschwartz.rtl_sdr_flutter.modes;
+
+/**
+ * The 24 bit parity of Mode-S messages. The parity is the remainder of the message without the last 24 bits divided
+ * by the generator polynomial, the syndrome is the parity xor the last 24 bits of the message. The syndrome of a
+ * valid message is zero or, for the address/parity formats, the address of the aircraft.
+ */
+final class ModeSCrc {
+
+    private static final int POLYNOMIAL = 0xFFF409;
+
+    /// the first 5 bits are the downlink format, a "corrected" one would turn the message into another format
+    private static final int FIRST_CORRECTABLE_BIT = 5;
+
+    private static final int[] TABLE = new int[256];
+
+    /// the syndromes of a single wrong bit, by position
+    private static final int[] SHORT_ERRORS = new int[56];
+
+    private static final int[] LONG_ERRORS = new int[112];
+
+    static {
+        for (int i = 0; i < 256; ++i) {
+            int crc = i << 16;
+            for (int bit = 0; bit < 8; ++bit) {
+                crc = (crc & 0x800000) != 0 ? (crc << 1) ^ POLYNOMIAL : crc << 1;
+            }
+            TABLE[i] = crc & 0xFFFFFF;
+        }
+        fillErrors(SHORT_ERRORS);
+        fillErrors(LONG_ERRORS);
+    }
+
+    private static void fillErrors(int[] errors) {
+        byte[] message = new byte[errors.length / 8];
+        for (int bit = 0; bit < errors.length; ++bit) {
+            message[bit / 8] = (byte) (0x80 >>> (bit % 8));
+            errors[bit] = syndrome(message, errors.length);
+            message[bit / 8] = 0;
+        }
+    }
+
+    /**
+     * Returns the syndrome of the first bits (56 or 112) of the message.
+     */
+    static int syndrome(byte[] message, int bits) {
+        int bytes = bits / 8;
+        int crc = 0;
+        for (int i = 0; i < bytes - 3; ++i) {
+            crc = ((crc << 8) ^ TABLE[((crc >>> 16) ^ message[i]) & 0xFF]) & 0xFFFFFF;
+        }
+        int parity = (message[bytes - 3] & 0xFF) << 16 | (message[bytes - 2] & 0xFF) << 8 | (message[bytes - 1] & 0xFF);
+        return crc ^ parity;
+    }
+
+    /**
+     * Returns the position of the single wrong bit which causes the syndrome or -1 if there is none. Bits of the
+     * downlink format are never corrected.
+     */
+    static int errorBit(int syndrome, int bits) {
+        int[] errors = bits == 56 ? SHORT_ERRORS : LONG_ERRORS;
+        for (int bit = FIRST_CORRECTABLE_BIT; bit < errors.length; ++bit) {
+            if (errors[bit] == syndrome) return bit;
+        }
+        return -1;
+    }
+
+    private ModeSCrc() {
+    }
+}
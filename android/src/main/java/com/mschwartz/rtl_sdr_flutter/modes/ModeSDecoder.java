@@ -0,0 +1,245 @@
+package com.mschwartz.rtl_sdr_flutter.modes;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleSink;
+import com.mschwartz.rtl_sdr_flutter.tools.SampleConverter;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Decodes Mode-S and ADS-B messages at 1090 MHz from the magnitudes of the samples of a device running at
+ * {@link #SAMPLERATE}. The magnitudes are taken from the amplitude mode or computed from the I/Q pairs.
+ * <p>
+ * Each sample is a candidate for the start of the 8 us preamble: the four pulses must have the expected shape and
+ * be at least 6 dB above the gaps between them. The bits are decoded by comparing the two halves of each 1 us bit
+ * and the message is only passed to the {@link Listener} if its parity is valid:
+ * <ul>
+ *     <li>DF11 all-call replies with a syndrome of at most 7 bits (the interrogator id)</li>
+ *     <li>DF17 and DF18 extended squitters, a single wrong bit outside of the downlink format is corrected</li>
+ *     <li>the other surveillance replies (DF0, 4, 5, 16, 20, 21) whose address from the parity was seen during the
+ *     last minute in a DF17/18 message or in a DF11 reply with the interrogator id 0. The other DF11 replies do not
+ *     teach addresses, noise passes their weak check too often.</li>
+ * </ul>
+ * The samples of the previous packet which may still contain the start of a message are kept, so messages spanning
+ * two packets are found as well. A gap in the sample index discards them.
+ */
+public class ModeSDecoder implements SampleSink {
+
+    public static final int SAMPLERATE = 2000000;
+
+    private static final int PREAMBLE_SAMPLES = 16;
+
+    private static final int LONG_BITS = 112;
+
+    private static final int SHORT_BITS = 56;
+
+    /// a long message including the preamble
+    private static final int MESSAGE_SAMPLES = PREAMBLE_SAMPLES + 2 * LONG_BITS;
+
+    private static final long NANOS_PER_SAMPLE = 1000000000L / SAMPLERATE;
+
+    /// addresses of validated messages are accepted for the address/parity formats this long
+    private static final long ADDRESS_TIMEOUT_NANOS = 60000000000L;
+
+    private static final int MAX_ADDRESSES = 1024;
+
+    private final Listener listener;
+
+    /// the kept samples of the previous packet followed by the samples of the current packet
+    private int[] window = new int[MESSAGE_SAMPLES + 16 * 32 * 512];
+
+    private int kept;
+
+    private long expectedIndex = -1;
+
+    private final byte[] message = new byte[LONG_BITS / 8];
+
+    /// the addresses of the validated messages and when they were seen
+    private final Map<Integer, Long> addresses = new HashMap<>();
+
+    /// the capture time of the current packet, used to age the addresses
+    private long now;
+
+    /// number of bits corrected in the last decoded message
+    private int lastCorrected;
+
+    private long messages;
+
+    private long correctedMessages;
+
+    public ModeSDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Throws an IllegalArgumentException if the sample rate cannot be decoded.
+     */
+    public static void checkSamplerate(long samplerateHz) {
+        if (samplerateHz != SAMPLERATE) throw new IllegalArgumentException("Mode-S needs a sample rate of 2 MS/s");
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getCorrectedMessages() {
+        return correctedMessages;
+    }
+
+    @Override
+    public void onSamples(SamplePacket packet) {
+        SampleFormat format = packet.getFormat();
+        if (format != SampleFormat.CU8 && format != SampleFormat.U8_AMPLITUDE) return;
+        ByteBuffer buffer = packet.getBuffer();
+        int count = buffer.remaining() / format.getBytesPerSample();
+        long index = packet.getSampleIndex();
+        now = packet.getTimestampNanos();
+        // a message must not be assembled from both sides of a gap
+        if (index != expectedIndex) kept = 0;
+        expectedIndex = index + count;
+        if (kept + count > window.length) {
+            int[] larger = new int[kept + count];
+            System.arraycopy(window, 0, larger, 0, kept);
+            window = larger;
+        }
+        toMagnitudes(buffer, format, window, kept);
+        int length = kept + count;
+        long firstIndex = index - kept;
+        int last = length - MESSAGE_SAMPLES;
+        int position = 0;
+        while (position <= last) {
+            int used = decode(position);
+            if (used > 0) {
+                long sampleIndex = firstIndex + position;
+                long timestamp = packet.getTimestampNanos() + (sampleIndex - index) * NANOS_PER_SAMPLE;
+                listener.onMessage(message, used == MESSAGE_SAMPLES ? LONG_BITS / 8 : SHORT_BITS / 8, sampleIndex,
+                        timestamp, signal(position), lastCorrected);
+                position += used;
+            } else {
+                position++;
+            }
+        }
+        kept = Math.max(0, length - position);
+        System.arraycopy(window, position, window, 0, kept);
+    }
+
+    private static void toMagnitudes(ByteBuffer buffer, SampleFormat format, int[] magnitudes, int offset) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        if (format == SampleFormat.U8_AMPLITUDE) {
+            for (int i = start; i < limit; ++i) {
+                magnitudes[offset++] = buffer.get(i) & 0xFF;
+            }
+            return;
+        }
+        byte[] lut = SampleConverter.MAGNITUDE;
+        if (buffer.hasArray()) {
+            byte[] data = buffer.array();
+            int base = buffer.arrayOffset();
+            for (int i = start; i < limit - 1; i += 2) {
+                magnitudes[offset++] = lut[(data[base + i] & 0xFF) << 8 | (data[base + i + 1] & 0xFF)] & 0xFF;
+            }
+        } else {
+            for (int i = start; i < limit - 1; i += 2) {
+                magnitudes[offset++] = lut[(buffer.get(i) & 0xFF) << 8 | (buffer.get(i + 1) & 0xFF)] & 0xFF;
+            }
+        }
+    }
+
+    /**
+     * Tries to decode a message whose preamble starts at the position of the window. Returns the number of samples
+     * of the message including the preamble or 0 if there is no valid message.
+     */
+    private int decode(int p) {
+        int[] m = window;
+        // pulses at 0, 1, 3.5 and 4.5 us
+        if (!(m[p] > m[p + 1] && m[p + 1] < m[p + 2] && m[p + 2] > m[p + 3] && m[p + 3] < m[p]
+                && m[p + 4] < m[p] && m[p + 5] < m[p] && m[p + 6] < m[p]
+                && m[p + 7] > m[p + 8] && m[p + 8] < m[p + 9] && m[p + 9] > m[p + 6])) return 0;
+        int pulses = m[p] + m[p + 2] + m[p + 7] + m[p + 9];
+        int gaps = m[p + 1] + m[p + 3] + m[p + 4] + m[p + 5] + m[p + 6] + m[p + 8]
+                + m[p + 11] + m[p + 12] + m[p + 13] + m[p + 14];
+        // the mean of the pulses is at least twice the mean of the gaps
+        if (pulses * 10 <= gaps * 8) return 0;
+        int data = p + PREAMBLE_SAMPLES;
+        for (int i = 0; i < message.length; ++i) {
+            int value = 0;
+            for (int bit = 0; bit < 8; ++bit) {
+                int s = data + 16 * i + 2 * bit;
+                value = (value << 1) | (m[s] > m[s + 1] ? 1 : 0);
+            }
+            message[i] = (byte) value;
+        }
+        int df = (message[0] & 0xFF) >>> 3;
+        int bits = df >= 16 ? LONG_BITS : SHORT_BITS;
+        int syndrome = ModeSCrc.syndrome(message, bits);
+        lastCorrected = 0;
+        switch (df) {
+            case 11:
+                if ((syndrome & ~0x7F) != 0) return 0;
+                // only a syndrome of 0 is as strong as the parity of an extended squitter
+                if (syndrome == 0) rememberAddress();
+                break;
+            case 17:
+            case 18:
+                if (syndrome != 0) {
+                    int bit = ModeSCrc.errorBit(syndrome, bits);
+                    if (bit < 0) return 0;
+                    message[bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+                    lastCorrected = 1;
+                    correctedMessages++;
+                }
+                rememberAddress();
+                break;
+            case 0:
+            case 4:
+            case 5:
+            case 16:
+            case 20:
+            case 21:
+                Long seen = addresses.get(syndrome);
+                if (seen == null || now - seen > ADDRESS_TIMEOUT_NANOS) return 0;
+                break;
+            default:
+                return 0;
+        }
+        messages++;
+        return PREAMBLE_SAMPLES + 2 * bits;
+    }
+
+    private void rememberAddress() {
+        int address = (message[1] & 0xFF) << 16 | (message[2] & 0xFF) << 8 | (message[3] & 0xFF);
+        if (addresses.size() >= MAX_ADDRESSES) {
+            for (Iterator<Long> it = addresses.values().iterator(); it.hasNext(); ) {
+                if (now - it.next() > ADDRESS_TIMEOUT_NANOS) it.remove();
+            }
+            if (addresses.size() >= MAX_ADDRESSES) addresses.clear();
+        }
+        addresses.put(address, now);
+    }
+
+    /// the mean magnitude of the pulses of the preamble
+    private int signal(int p) {
+        return (window[p] + window[p + 2] + window[p + 7] + window[p + 9]) / 4;
+    }
+
+    /**
+     * Receives the decoded messages.
+     */
+    public interface Listener {
+        /**
+         * Called in the thread of the device. The message is reused after the method returns.
+         *
+         * @param length         7 or 14 bytes
+         * @param sampleIndex    index of the first sample of the preamble within the stream of the device
+         * @param timestampNanos the capture time of the preamble
+         * @param signal         the mean magnitude of the preamble pulses, 0 to 255
+         * @param correctedBits  number of bits fixed by the parity
+         */
+        void onMessage(byte[] message, int length, long sampleIndex, long timestampNanos, int signal, int correctedBits);
+    }
+}
@@ -0,0 +1,396 @@
+package com.mschwartz.rtl_sdr_flutter.recording;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleSink;
+import com.mschwartz.rtl_sdr_flutter.tools.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the packets of the device to disk as they are received, before the squelch and the processing. The device
+ * thread only takes a reference to the packet and offers it to a bounded queue, it never waits: if the queue is full
+ * the packet is dropped and counted. A writer thread copies the packets into the current segment, a file which is
+ * preallocated with segmentBytes and mapped into memory. A new segment is started when the current one is full or
+ * the format of the packets changes, the last segment is truncated to its data when the recording stops.
+ * <p>
+ * The segments are named prefix_0000.cu8, prefix_0001.cu8 and so on, the amplitudes of the amplitude mode are
+ * written to .u8 files. The recording stops itself after maxBytes or after maxDurationMs of samples, zero means
+ * no limit.
+ * <p>
+ * Each segment gets its SigMF metadata in prefix_0000.sigmf-meta and so on, see {@link SigMfWriter}. A capture starts
+ * at each retune ({@link #retune(long, long)}) and after each gap in the sample indices of the packets, which were
+ * dropped by the driver or by this sink, an annotation marks each of them. A change of the sample rate starts a new
+ * segment. The sparse index prefix_index.csv lists the segment and the byte offset of a sample at the start of each
+ * segment and capture and about every {@link #INDEX_INTERVAL_SAMPLES} samples, so a reader can seek into long
+ * recordings without scanning them. Its columns are the sample within the recording, the index of the sample within
+ * the stream of the device, the segment, the byte offset within the segment and the time at which the packet of
+ * the sample was received, in nanoseconds since the first packet.
+ * <p>
+ * With the pooled delivery each queued packet holds a slot of the pool, the driver drops packets while all slots
+ * are held, so the pool should be larger than the backlog of the writer.
+ */
+public class RecordingSink implements SampleSink {
+
+    /// the maximal number of packets waiting for the writer thread
+    public static final int QUEUE_PACKETS = 64;
+
+    public static final String RECORDING_DIRECTORY = "recordings";
+
+    /// the maximal distance of two entries of the index
+    public static final long INDEX_INTERVAL_SAMPLES = 1 << 22;
+
+    /// how long the writer waits for a packet before it checks whether the recording was stopped
+    private static final long POLL_MS = 100;
+
+    private final File prefix;
+
+    private final long segmentBytes;
+
+    private final long maxBytes;
+
+    private final long maxDurationNanos;
+
+    private final BlockingQueue<SamplePacket> queue = new ArrayBlockingQueue<>(QUEUE_PACKETS);
+
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    private final List<String> segments = new ArrayList<>();
+
+    private final File indexFile;
+
+    /// the settings of the device, replaced by retune
+    private volatile SigMfMetadata metadata;
+
+    private Thread writerThread;
+
+    /// set by stop, the writer writes the queued packets and finishes
+    private volatile boolean stopRequested;
+
+    /// set by the writer as soon as it no longer takes packets
+    private volatile boolean finished;
+
+    private volatile long bytesWritten;
+
+    private volatile long droppedSamples;
+
+    private volatile IOException error;
+
+    // the state of the writer thread
+
+    private SampleFormat format;
+
+    private RandomAccessFile segmentFile;
+
+    private MappedByteBuffer segment;
+
+    private long firstTimestampNanos = -1;
+
+    /// the metadata of the current segment
+    private SigMfWriter sigMf;
+
+    private String segmentName;
+
+    private File metaFile;
+
+    /// the settings of the last packet written
+    private SigMfMetadata lastMetadata;
+
+    /// the index of the sample following the last packet, -1 before the first one
+    private long expectedIndex = -1;
+
+    private long recordedSamples;
+
+    private long nextIndexSample;
+
+    private BufferedWriter index;
+
+    /**
+     * @param prefix         the path of the segments without the number and the extension
+     * @param segmentBytes   the size of a segment, a multiple of 2 for I/Q pairs
+     * @param maxBytes       the recording stops after this number of bytes, 0 for no limit
+     * @param maxDurationMs  the recording stops after the samples of this time, 0 for no limit
+     * @param metadata       the settings of the device when the recording starts
+     */
+    public RecordingSink(File prefix, long segmentBytes, long maxBytes, long maxDurationMs, SigMfMetadata metadata) {
+        if (segmentBytes < 2 || segmentBytes > Integer.MAX_VALUE || (segmentBytes & 1) != 0)
+            throw new IllegalArgumentException("segmentBytes must be even and fit into a mapped buffer");
+        if (maxBytes < 0 || maxDurationMs < 0) throw new IllegalArgumentException("maxBytes and maxDurationMs must not be negative");
+        this.prefix = prefix;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.maxDurationNanos = maxDurationMs * 1000000;
+        this.metadata = metadata;
+        this.indexFile = new File(prefix.getPath() + "_index.csv");
+    }
+
+    /**
+     * Returns a prefix with the current time in the directory {@link #RECORDING_DIRECTORY} of the external app files,
+     * or of the internal ones if the external storage is not available.
+     */
+    public static File defaultPrefix(Context context) {
+        File filesDir = context.getExternalFilesDir(null);
+        if (filesDir == null) filesDir = context.getFilesDir();
+        String name = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        return new File(new File(filesDir, RECORDING_DIRECTORY), name);
+    }
+
+    /**
+     * Starts the writer thread, the packets are recorded from now on.
+     */
+    public void start() throws IOException {
+        File directory = prefix.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        writerThread = new Thread(this::writeLoop, "RecordingSink");
+        writerThread.start();
+        Log.appendLine("RecordingSink: recording to %s", prefix);
+    }
+
+    @Override
+    public void onSamples(SamplePacket packet) {
+        if (stopRequested || finished) return;
+        packet.retain();
+        if (!queue.offer(packet)) {
+            packet.release();
+            droppedPackets.incrementAndGet();
+        } else if (finished) {
+            // the writer finished meanwhile and does not take the packet anymore
+            releaseQueued();
+        }
+    }
+
+    /// the queued packets hold slots of the device
+    private void releaseQueued() {
+        SamplePacket packet;
+        while ((packet = queue.poll()) != null) {
+            packet.release();
+        }
+    }
+
+    /**
+     * Writes the queued packets, closes the last segment and waits for the writer thread.
+     */
+    public void stop() {
+        stopRequested = true;
+        Thread thread = writerThread;
+        if (thread == null || thread == Thread.currentThread()) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Marks a change of the frequency or the sample rate of the device, it applies from the next packet written on.
+     * The packets buffered by the driver still carry the samples of the old settings, so the mark is only accurate to
+     * a few packets.
+     */
+    public void retune(long frequency, long samplerate) {
+        SigMfMetadata metadata = this.metadata;
+        if (metadata.getFrequency() == frequency && metadata.getSamplerate() == samplerate) return;
+        this.metadata = metadata.withTuning(frequency, samplerate);
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                SamplePacket packet = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (packet == null) {
+                    if (stopRequested) break;
+                    continue;
+                }
+                try {
+                    if (!write(packet)) break;
+                } finally {
+                    packet.release();
+                }
+            }
+        } catch (IOException e) {
+            Log.appendLine("RecordingSink: recording failed due to %s", e.getMessage());
+            error = e;
+        } catch (InterruptedException e) {
+            Log.appendLine("RecordingSink: interrupted");
+        } finally {
+            finished = true;
+            try {
+                closeSegment();
+                if (index != null) index.close();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+            releaseQueued();
+            Log.appendLine("RecordingSink: %d bytes in %d segments recorded, %d packets dropped", bytesWritten,
+                    segments.size(), droppedPackets.get());
+        }
+    }
+
+    /**
+     * Copies the packet into the segments. Returns false if a limit is reached.
+     */
+    private boolean write(SamplePacket packet) throws IOException {
+        if (firstTimestampNanos < 0) firstTimestampNanos = packet.getTimestampNanos();
+        if (maxDurationNanos > 0 && packet.getTimestampNanos() - firstTimestampNanos >= maxDurationNanos) return false;
+        SigMfMetadata metadata = this.metadata;
+        if (packet.getFormat() != format || (sigMf != null && sigMf.getMetadata().getSamplerate() != metadata.getSamplerate())) {
+            // a new segment with the extension of the format or with the sample rate in its metadata
+            closeSegment();
+            format = packet.getFormat();
+        }
+        ByteBuffer data = packet.getBuffer().duplicate();
+        int bytesPerSample = format.getBytesPerSample();
+        long packetIndex = packet.getSampleIndex();
+        long gap = expectedIndex < 0 ? 0 : packetIndex - expectedIndex;
+        boolean retuned = expectedIndex >= 0 && metadata != lastMetadata;
+        expectedIndex = packetIndex + data.remaining() / bytesPerSample;
+        lastMetadata = metadata;
+        long wallMillis = System.currentTimeMillis() - (SystemClock.elapsedRealtimeNanos() - packet.getTimestampNanos()) / 1000000;
+        if (maxBytes > 0) {
+            // whole samples only
+            long room = (maxBytes - bytesWritten) / bytesPerSample * bytesPerSample;
+            if (room == 0) return false;
+            if (data.remaining() > room) data.limit(data.position() + (int) room);
+        }
+        int packetStart = data.position();
+        while (data.hasRemaining()) {
+            long sampleIndex = packetIndex + (data.position() - packetStart) / bytesPerSample;
+            boolean opened = false;
+            if (segment == null || !segment.hasRemaining()) {
+                openSegment(metadata, sampleIndex, packet.getTimestampNanos(), wallMillis);
+                opened = true;
+            }
+            if (data.position() == packetStart && (gap != 0 || retuned)) {
+                long segmentSample = segment.position() / bytesPerSample;
+                if (gap > 0) {
+                    droppedSamples += gap;
+                    sigMf.addAnnotation(segmentSample, "gap", String.format(Locale.US, "%d samples dropped", gap));
+                } else if (gap < 0) {
+                    sigMf.addAnnotation(segmentSample, "gap", String.format(Locale.US, "sample index jumped back by %d", -gap));
+                }
+                if (retuned) {
+                    sigMf.addAnnotation(segmentSample, "retune", String.format(Locale.US, "tuned to %d Hz at %d samples/s",
+                            metadata.getFrequency(), metadata.getSamplerate()));
+                }
+                if (!opened) {
+                    sigMf.addCapture(segmentSample, metadata.getFrequency(), sampleIndex, wallMillis);
+                    addIndexEntry(sampleIndex, packet.getTimestampNanos());
+                }
+            } else if (data.position() == packetStart && recordedSamples >= nextIndexSample) {
+                addIndexEntry(sampleIndex, packet.getTimestampNanos());
+            }
+            int count = Math.min(data.remaining(), segment.remaining());
+            int end = data.position() + count;
+            ByteBuffer part = data.duplicate();
+            part.limit(end);
+            segment.put(part);
+            data.position(end);
+            bytesWritten += count;
+            recordedSamples += count / bytesPerSample;
+        }
+        return maxBytes == 0 || maxBytes - bytesWritten >= format.getBytesPerSample();
+    }
+
+    /**
+     * Appends the position of the next sample to be written to the index.
+     */
+    private void addIndexEntry(long sampleIndex, long timestampNanos) throws IOException {
+        if (index == null) {
+            index = new BufferedWriter(new FileWriter(indexFile));
+            index.write("sample,global_index,segment,byte_offset,time_ns\n");
+        }
+        index.write(String.format(Locale.US, "%d,%d,%s,%d,%d\n", recordedSamples, sampleIndex, segmentName,
+                segment.position(), timestampNanos - firstTimestampNanos));
+        nextIndexSample = recordedSamples + INDEX_INTERVAL_SAMPLES;
+    }
+
+    private void openSegment(SigMfMetadata metadata, long sampleIndex, long timestampNanos, long wallMillis) throws IOException {
+        closeSegment();
+        String extension = format == SampleFormat.U8_AMPLITUDE ? "u8" : format.name().toLowerCase(Locale.US);
+        String path = String.format(Locale.US, "%s_%04d", prefix.getPath(), segments.size());
+        File file = new File(path + "." + extension);
+        segmentFile = new RandomAccessFile(file, "rw");
+        try {
+            // a write into a mapped sparse file on a full storage would crash the app
+            Os.posix_fallocate(segmentFile.getFD(), 0, segmentBytes);
+        } catch (ErrnoException e) {
+            segmentFile.close();
+            segmentFile = null;
+            throw e.rethrowAsIOException();
+        }
+        segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segmentName = file.getName();
+        metaFile = new File(path + "." + SigMfWriter.EXTENSION);
+        sigMf = new SigMfWriter(metadata, format, segmentName);
+        sigMf.addCapture(0, metadata.getFrequency(), sampleIndex, wallMillis);
+        synchronized (segments) {
+            segments.add(file.getPath());
+        }
+        addIndexEntry(sampleIndex, timestampNanos);
+    }
+
+    /**
+     * Writes the current segment to the storage, cuts off the space which was not used and writes its metadata.
+     */
+    private void closeSegment() throws IOException {
+        if (segmentFile == null) return;
+        try {
+            segment.force();
+            segmentFile.setLength(segment.position());
+        } finally {
+            segmentFile.close();
+            segmentFile = null;
+            segment = null;
+        }
+        sigMf.write(metaFile);
+        sigMf = null;
+        // the entries of the closed segments can be read while recording
+        if (index != null) index.flush();
+    }
+
+    /**
+     * Returns the state of the recording as sent to flutter.
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("recording", !finished);
+        map.put("prefix", prefix.getPath());
+        synchronized (segments) {
+            map.put("segments", new ArrayList<>(segments));
+        }
+        map.put("index", indexFile.getPath());
+        map.put("bytesWritten", bytesWritten);
+        map.put("droppedSamples", droppedSamples);
+        map.put("droppedPackets", droppedPackets.get());
+        IOException error = this.error;
+        map.put("error", error == null ? null : error.getMessage());
+        return map;
+    }
+}
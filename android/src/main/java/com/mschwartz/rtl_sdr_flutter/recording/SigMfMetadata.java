@@ -0,0 +1,61 @@
+package com.mschwartz.rtl_sdr_flutter.recording;
+
+/**
+ * The settings of the device which are written into the SigMF metadata of a recording. The frequency and the sample
+ * rate may change while recording, see {@link RecordingSink#retune(long, long)}, the other values are taken when the
+ * recording starts.
+ */
+public class SigMfMetadata {
+
+    private final String hardware;
+
+    private final long samplerate;
+
+    private final long frequency;
+
+    private final int gain;
+
+    private final int ppm;
+
+    /**
+     * @param hardware   the name of the device
+     * @param samplerate the sample rate in Hz
+     * @param frequency  the center frequency in Hz
+     * @param gain       0 for the automatic gain, else the gain in 1/10 dB
+     * @param ppm        the frequency correction
+     */
+    public SigMfMetadata(String hardware, long samplerate, long frequency, int gain, int ppm) {
+        this.hardware = hardware;
+        this.samplerate = samplerate;
+        this.frequency = frequency;
+        this.gain = gain;
+        this.ppm = ppm;
+    }
+
+    /**
+     * Returns the metadata with another frequency and sample rate.
+     */
+    public SigMfMetadata withTuning(long frequency, long samplerate) {
+        return new SigMfMetadata(hardware, samplerate, frequency, gain, ppm);
+    }
+
+    public String getHardware() {
+        return hardware;
+    }
+
+    public long getSamplerate() {
+        return samplerate;
+    }
+
+    public long getFrequency() {
+        return frequency;
+    }
+
+    public int getGain() {
+        return gain;
+    }
+
+    public int getPpm() {
+        return ppm;
+    }
+}
@@ -0,0 +1,138 @@
+package com.mschwartz.rtl_sdr_flutter.recording;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Collects the captures and the annotations of a segment and writes them as SigMF metadata (version 1.0.0) next to
+ * it. The segments keep their extension .cu8, the metadata names them with core:dataset. The gain and the frequency
+ * correction are stored in the optional namespace rtl_sdr_flutter. All sample indices are relative to the segment.
+ */
+class SigMfWriter {
+
+    static final String EXTENSION = "sigmf-meta";
+
+    private static final String NAMESPACE = "rtl_sdr_flutter";
+
+    private final SigMfMetadata metadata;
+
+    private final SampleFormat format;
+
+    private final String dataset;
+
+    private final StringBuilder captures = new StringBuilder();
+
+    private final StringBuilder annotations = new StringBuilder();
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+
+    /**
+     * @param metadata the settings at the start of the segment, the sample rate applies to the whole segment
+     * @param dataset  the name of the file with the samples
+     */
+    SigMfWriter(SigMfMetadata metadata, SampleFormat format, String dataset) {
+        this.metadata = metadata;
+        this.format = format;
+        this.dataset = dataset;
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    SigMfMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Starts a capture, the samples from sampleStart on were received contiguously at the frequency.
+     *
+     * @param globalIndex the index of the sample within the stream of the device
+     * @param wallMillis  the time of the sample in milliseconds since the epoch
+     */
+    void addCapture(long sampleStart, long frequency, long globalIndex, long wallMillis) {
+        if (captures.length() > 0) captures.append(",\n");
+        captures.append("    {\"core:sample_start\": ").append(sampleStart)
+                .append(", \"core:frequency\": ").append(frequency)
+                .append(", \"core:global_index\": ").append(globalIndex)
+                .append(", \"core:datetime\": \"").append(dateFormat.format(new Date(wallMillis))).append("\"}");
+    }
+
+    /**
+     * Marks an event at the sample, e.g. a retune or a gap.
+     */
+    void addAnnotation(long sampleStart, String label, String comment) {
+        if (annotations.length() > 0) annotations.append(",\n");
+        annotations.append("    {\"core:sample_start\": ").append(sampleStart)
+                .append(", \"core:label\": ").append(quote(label))
+                .append(", \"core:comment\": ").append(quote(comment)).append("}");
+    }
+
+    void write(File file) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"global\": {\n");
+        json.append("    \"core:datatype\": ").append(quote(datatype(format))).append(",\n");
+        json.append("    \"core:sample_rate\": ").append(metadata.getSamplerate()).append(",\n");
+        json.append("    \"core:version\": \"1.0.0\",\n");
+        json.append("    \"core:num_channels\": 1,\n");
+        json.append("    \"core:dataset\": ").append(quote(dataset)).append(",\n");
+        json.append("    \"core:hw\": ").append(quote(metadata.getHardware())).append(",\n");
+        json.append("    \"core:recorder\": \"rtl_sdr_flutter\",\n");
+        json.append("    \"core:extensions\": [{\"name\": \"").append(NAMESPACE)
+                .append("\", \"version\": \"1.0.0\", \"optional\": true}],\n");
+        if (metadata.getGain() == 0) {
+            json.append("    \"").append(NAMESPACE).append(":agc\": true,\n");
+        } else {
+            json.append("    \"").append(NAMESPACE).append(":agc\": false,\n");
+            json.append("    \"").append(NAMESPACE).append(":gain_db\": ").append(metadata.getGain() / 10.0).append(",\n");
+        }
+        json.append("    \"").append(NAMESPACE).append(":ppm\": ").append(metadata.getPpm()).append("\n");
+        json.append("  },\n");
+        json.append("  \"captures\": [\n").append(captures).append("\n  ],\n");
+        json.append("  \"annotations\": [").append(annotations.length() > 0 ? "\n" : "").append(annotations)
+                .append(annotations.length() > 0 ? "\n  " : "").append("]\n");
+        json.append("}\n");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+    }
+
+    /**
+     * Returns the SigMF type of the samples, the amplitudes are real samples.
+     */
+    static String datatype(SampleFormat format) {
+        switch (format) {
+            case U8_AMPLITUDE:
+                return "ru8";
+            case CS16:
+                return "ci16_le";
+            case PCM16:
+                return "ri16_le";
+            default:
+                return "cu8";
+        }
+    }
+
+    private static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
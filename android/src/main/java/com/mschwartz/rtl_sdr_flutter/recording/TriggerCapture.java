@@ -0,0 +1,451 @@
+package com.mschwartz.rtl_sdr_flutter.recording;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleSink;
+import com.mschwartz.rtl_sdr_flutter.tools.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the last samples of the device in a circular buffer outside of the java heap and writes them to disk when a
+ * trigger fires, e.g. when the squelch opens ({@link #isSquelchTrigger()}) or the app asks for it. A dump contains
+ * the samples of preTriggerMs before the trigger and of postTriggerMs after it, a trigger during a dump extends it.
+ * <p>
+ * The device thread copies each packet into the buffer with one bulk put, two where it wraps around, and does nothing
+ * per sample. It never takes a lock: a trigger is queued for the dump thread, which is started once with the capture
+ * and writes the dumps one after the other. It follows the device through the buffer until the post trigger window
+ * is complete. The buffer holds {@link #SLACK_BYTES} more than the pre trigger window, the dump fails if the storage
+ * falls behind by more than that.
+ * <p>
+ * The dumps are named prefix_trigger_000.cu8 and so on (.u8 for amplitudes), each with its SigMF metadata, see
+ * {@link SigMfWriter}, an annotation marks each trigger. The samples of a dump are contiguous: the buffer starts over
+ * at a gap in the sample indices or a change of the format, a running dump ends there.
+ */
+public class TriggerCapture implements SampleSink {
+
+    /// the dump thread may fall behind the device by this number of bytes
+    public static final long SLACK_BYTES = 32L * 1024 * 1024;
+
+    /// how long the dump thread waits for new samples
+    private static final long POLL_MS = 20;
+
+    private final File prefix;
+
+    private final long preTriggerSamples;
+
+    private final long postTriggerSamples;
+
+    private final boolean squelchTrigger;
+
+    private final int capacity;
+
+    /// the circular buffer, released by stop
+    private volatile ByteBuffer ring;
+
+    /// the settings of the device, replaced by retune
+    private volatile SigMfMetadata metadata;
+
+    /// the number of bytes written into the ring since the start, the newest byte is at (written - 1) % capacity
+    private volatile long written;
+
+    /// the largest packet seen, the device may be writing it while the dump thread reads
+    private volatile int maxPacketBytes;
+
+    private volatile boolean stopped;
+
+    /// the view of the ring used by the device thread
+    private volatile ByteBuffer ringWriter;
+
+    /// the contiguous samples the device is writing, null before the first packet
+    private volatile Segment segment;
+
+    /// the triggers which the dump thread has not handled yet
+    private final ConcurrentLinkedQueue<Trigger> triggers = new ConcurrentLinkedQueue<>();
+
+    private final Thread dumpThread = new Thread(this::dumpLoop, "TriggerCapture");
+
+    private volatile boolean dumping;
+
+    // the state of the device thread
+
+    private long expectedIndex = -1;
+
+    // the state of the dump thread
+
+    /// the dumps which are not complete yet in the order of their samples, the first one is written
+    private final ArrayDeque<Dump> pending = new ArrayDeque<>();
+
+    // guarded by this
+
+    private final List<String> dumps = new ArrayList<>();
+
+    private IOException error;
+
+    /**
+     * @param prefix         the path of the dumps without the number and the extension
+     * @param preTriggerMs   the time before the trigger which is dumped
+     * @param postTriggerMs  the time after the trigger which is dumped
+     * @param squelchTrigger true if the squelch triggers a dump whenever it opens
+     * @param metadata       the settings of the device, the sample rate converts the times to samples
+     */
+    public TriggerCapture(File prefix, long preTriggerMs, long postTriggerMs, boolean squelchTrigger, SigMfMetadata metadata) {
+        if (preTriggerMs < 0 || postTriggerMs < 0) throw new IllegalArgumentException("preTriggerMs and postTriggerMs must not be negative");
+        if (metadata.getSamplerate() <= 0) throw new IllegalArgumentException("the sample rate of the device is unknown");
+        this.prefix = prefix;
+        this.preTriggerSamples = preTriggerMs * metadata.getSamplerate() / 1000;
+        this.postTriggerSamples = postTriggerMs * metadata.getSamplerate() / 1000;
+        this.squelchTrigger = squelchTrigger;
+        this.metadata = metadata;
+        // room for I/Q pairs, the largest 8 bit format
+        long bytes = 2 * preTriggerSamples + SLACK_BYTES;
+        if (bytes > Integer.MAX_VALUE - 1) throw new IllegalArgumentException("the pre trigger window does not fit into a buffer of 2 GiB");
+        capacity = (int) bytes;
+        ring = ByteBuffer.allocateDirect(capacity);
+        ringWriter = ring.duplicate();
+        Log.appendLine("TriggerCapture: %d MiB for %d ms before the trigger", capacity >> 20, preTriggerMs);
+        dumpThread.start();
+    }
+
+    public boolean isSquelchTrigger() {
+        return squelchTrigger;
+    }
+
+    @Override
+    public void onSamples(SamplePacket packet) {
+        ByteBuffer ringWriter = this.ringWriter;
+        if (stopped || ringWriter == null) return;
+        ByteBuffer source = packet.getBuffer().duplicate();
+        int length = source.remaining();
+        if (length == 0 || length > SLACK_BYTES) return;
+        long position = written;
+        Segment segment = this.segment;
+        if (segment == null || packet.getFormat() != segment.format || packet.getSampleIndex() != expectedIndex) {
+            // the samples before a gap or with another format are not dumped together with the following ones
+            if (segment != null) segment.validUntil = position;
+            segment = new Segment(packet.getFormat(), position, packet.getSampleIndex());
+            this.segment = segment;
+        }
+        if (length > maxPacketBytes) maxPacketBytes = length;
+        expectedIndex = packet.getSampleIndex() + length / segment.format.getBytesPerSample();
+        int at = (int) (position % capacity);
+        int first = Math.min(length, capacity - at);
+        int end = source.limit();
+        source.limit(source.position() + first);
+        ringWriter.clear();
+        ringWriter.position(at);
+        ringWriter.put(source);
+        if (first < length) {
+            source.limit(end);
+            ringWriter.clear();
+            ringWriter.put(source);
+        }
+        written = position + length;
+    }
+
+    /**
+     * Marks a change of the frequency or the sample rate of the device for the next dumps.
+     */
+    public void retune(long frequency, long samplerate) {
+        metadata = metadata.withTuning(frequency, samplerate);
+    }
+
+    /**
+     * Dumps the samples around the sample, or around the newest sample if sampleIndex is negative. Extends the
+     * running dump if there is one. Only queues the trigger for the dump thread, so it may be called by the device
+     * thread.
+     *
+     * @param sampleIndex the index of the sample within the stream of the device
+     * @param source      the reason of the trigger, noted in the metadata
+     */
+    public void triggerLater(long sampleIndex, String source) {
+        queue(sampleIndex, source);
+    }
+
+    /**
+     * Like {@link #triggerLater(long, String)}, but waits until the dump thread took the trigger. Returns the path of
+     * the dump, null if the capture was stopped or no samples were received yet.
+     */
+    public String trigger(long sampleIndex, String source) {
+        Trigger trigger = queue(sampleIndex, source);
+        if (trigger == null) return null;
+        try {
+            // the dump thread may have ended just before the trigger was queued
+            while (!trigger.handled.await(POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (!dumpThread.isAlive()) return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return trigger.path;
+    }
+
+    private Trigger queue(long sampleIndex, String source) {
+        if (stopped) return null;
+        // written first, the segment is never older than the newest byte
+        long newest = written;
+        Trigger trigger = new Trigger(segment, sampleIndex, newest, System.currentTimeMillis(), source);
+        triggers.offer(trigger);
+        LockSupport.unpark(dumpThread);
+        return trigger;
+    }
+
+    /**
+     * Completes the running dump with the samples received so far, releases the buffer and waits for the dump.
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(dumpThread);
+        try {
+            dumpThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ring = null;
+        ringWriter = null;
+    }
+
+    /**
+     * Returns the state of the capture as sent to flutter.
+     */
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("capturing", !stopped);
+        map.put("prefix", prefix.getPath());
+        map.put("bufferBytes", capacity);
+        map.put("dumping", dumping);
+        map.put("dumps", new ArrayList<>(dumps));
+        map.put("error", error == null ? null : error.getMessage());
+        return map;
+    }
+
+    private void dumpLoop() {
+        while (true) {
+            boolean stopping = stopped;
+            Trigger trigger;
+            while ((trigger = triggers.poll()) != null) {
+                if (!stopping) trigger.path = start(trigger);
+                trigger.handled.countDown();
+            }
+            boolean progress = false;
+            Dump dump = pending.peekFirst();
+            if (dump != null) {
+                progress = dump.write(stopping);
+                if (dump.finished) pending.removeFirst();
+            }
+            dumping = !pending.isEmpty();
+            if (stopping && pending.isEmpty()) break;
+            if (!progress) LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(POLL_MS));
+        }
+        // a trigger queued while the loop ended
+        Trigger trigger;
+        while ((trigger = triggers.poll()) != null) {
+            trigger.handled.countDown();
+        }
+    }
+
+    /// extends the last dump by the trigger or starts a new one, returns the path of the dump
+    private String start(Trigger trigger) {
+        Segment segment = trigger.segment;
+        if (segment == null) return null;
+        int bytesPerSample = segment.format.getBytesPerSample();
+        long at = trigger.newest;
+        if (trigger.sampleIndex >= 0) {
+            at = Math.max(segment.validFrom, Math.min(at, segment.validFrom + (trigger.sampleIndex - segment.indexBase) * bytesPerSample));
+        }
+        long end = at + postTriggerSamples * bytesPerSample;
+        Dump last = pending.peekLast();
+        if (last != null && last.segment == segment) {
+            last.end = Math.max(last.end, end);
+            last.addTrigger(at, trigger.source);
+            return last.file.getPath();
+        }
+        long start = Math.max(segment.validFrom, at - preTriggerSamples * bytesPerSample);
+        String path;
+        synchronized (this) {
+            path = String.format(Locale.US, "%s_trigger_%03d", prefix.getPath(), dumps.size());
+        }
+        String extension = segment.format == SampleFormat.U8_AMPLITUDE ? "u8" : segment.format.name().toLowerCase(Locale.US);
+        Dump dump = new Dump(new File(path + "." + extension), new File(path + "." + SigMfWriter.EXTENSION), segment, start, end);
+        dump.sigMf.addCapture(0, metadata.getFrequency(), segment.indexBase + (start - segment.validFrom) / bytesPerSample,
+                trigger.wallMillis - (trigger.newest - start) / bytesPerSample * 1000 / metadata.getSamplerate());
+        dump.addTrigger(at, trigger.source);
+        synchronized (this) {
+            dumps.add(dump.file.getPath());
+        }
+        pending.addLast(dump);
+        return dump.file.getPath();
+    }
+
+    /**
+     * Samples which were received contiguously in one format.
+     */
+    private static class Segment {
+
+        final SampleFormat format;
+
+        /// the first byte of the segment in the ring
+        final long validFrom;
+
+        /// the index of the sample at validFrom within the stream of the device
+        final long indexBase;
+
+        /// the end of the segment, set by the device thread when the next one starts
+        volatile long validUntil = Long.MAX_VALUE;
+
+        Segment(SampleFormat format, long validFrom, long indexBase) {
+            this.format = format;
+            this.validFrom = validFrom;
+            this.indexBase = indexBase;
+        }
+    }
+
+    /**
+     * A trigger which waits for the dump thread.
+     */
+    private static class Trigger {
+
+        /// the segment when the trigger fired, null if no samples were received
+        final Segment segment;
+
+        final long sampleIndex;
+
+        /// the number of bytes written when the trigger fired
+        final long newest;
+
+        final long wallMillis;
+
+        final String source;
+
+        final CountDownLatch handled = new CountDownLatch(1);
+
+        /// the path of the dump, set before handled is counted down
+        String path;
+
+        Trigger(Segment segment, long sampleIndex, long newest, long wallMillis, String source) {
+            this.segment = segment;
+            this.sampleIndex = sampleIndex;
+            this.newest = newest;
+            this.wallMillis = wallMillis;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Writes the bytes start to end of the ring into a file as soon as they were received. Only used by the dump
+     * thread.
+     */
+    private class Dump {
+
+        final File file;
+
+        final File metaFile;
+
+        final Segment segment;
+
+        final long start;
+
+        long end;
+
+        long position;
+
+        boolean finished;
+
+        final SigMfWriter sigMf;
+
+        FileOutputStream out;
+
+        Dump(File file, File metaFile, Segment segment, long start, long end) {
+            this.file = file;
+            this.metaFile = metaFile;
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+            position = start;
+            sigMf = new SigMfWriter(metadata, segment.format, file.getName());
+        }
+
+        void addTrigger(long at, String source) {
+            sigMf.addAnnotation(Math.max(0, at - start) / segment.format.getBytesPerSample(), "trigger", source);
+        }
+
+        /// writes the samples received so far, returns false if there was nothing to do
+        boolean write(boolean stopping) {
+            // a gap or a change of the format ends the dump, stop ends it with the samples received
+            long limit = Math.min(end, segment.validUntil);
+            if (stopping) limit = Math.min(limit, written);
+            try {
+                if (out == null) out = new FileOutputStream(file);
+                if (position >= limit) {
+                    Log.appendLine("TriggerCapture: %d bytes dumped to %s", position - start, file.getName());
+                    finish(null);
+                    return true;
+                }
+                long available = Math.min(limit, written);
+                if (available == position) return false;
+                checkOverrun(position);
+                write(out.getChannel(), position, available);
+                // the device may have overwritten the bytes while they were written
+                checkOverrun(position);
+                position = available;
+            } catch (IOException e) {
+                Log.appendLine("TriggerCapture: dump failed due to %s", e.getMessage());
+                finish(e);
+            }
+            return true;
+        }
+
+        private void finish(IOException failure) {
+            finished = true;
+            IOException first = failure;
+            try {
+                if (out != null) out.close();
+            } catch (IOException e) {
+                if (first == null) first = e;
+            }
+            try {
+                sigMf.write(metaFile);
+            } catch (IOException e) {
+                if (first == null) first = e;
+            }
+            if (first != null) {
+                synchronized (TriggerCapture.this) {
+                    if (error == null) error = first;
+                }
+            }
+        }
+
+        private void checkOverrun(long position) throws IOException {
+            if (written + maxPacketBytes - position > capacity)
+                throw new IOException("the storage could not keep up, the samples were overwritten");
+        }
+
+        private void write(FileChannel channel, long from, long to) throws IOException {
+            ByteBuffer view = ring.duplicate();
+            while (from < to) {
+                int at = (int) (from % capacity);
+                int count = (int) Math.min(to - from, capacity - at);
+                view.clear();
+                view.position(at);
+                view.limit(at + count);
+                while (view.hasRemaining()) channel.write(view);
+                from += count;
+            }
+        }
+    }
+}
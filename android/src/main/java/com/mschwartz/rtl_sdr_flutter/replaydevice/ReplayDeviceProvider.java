@@ -0,0 +1,56 @@
+package com.mschwartz.rtl_sdr_flutter.replaydevice;
+
+import android.content.Context;
+
+import com.mschwartz.rtl_sdr_flutter.MethodHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.StreamHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.devices.SdrDevice;
+import com.mschwartz.rtl_sdr_flutter.devices.SdrDeviceProvider;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Offers each recording in the directory "replay" of the app files as a {@link ReplaySdrDevice}. The recordings
+ * can be copied to the external app files, e.g. with
+ * {@code adb push capture.cu8 /sdcard/Android/data/<package>/files/replay/}, or be written by the app itself
+ * into its internal files.
+ */
+public class ReplayDeviceProvider implements SdrDeviceProvider {
+
+    public static final String REPLAY_DIRECTORY = "replay";
+
+    @Override
+    public List<SdrDevice> listDevices(Context ctx, StreamHandlerImpl streamHandler, MethodHandlerImpl methodhandler, boolean forceRoot) {
+        List<SdrDevice> devices = new LinkedList<>();
+        addRecordings(devices, ctx.getExternalFilesDir(null), streamHandler, methodhandler);
+        addRecordings(devices, ctx.getFilesDir(), streamHandler, methodhandler);
+        return devices;
+    }
+
+    private static void addRecordings(List<SdrDevice> devices, File filesDir, StreamHandlerImpl streamHandler, MethodHandlerImpl methodhandler) {
+        // the external files are not available if the storage is not mounted
+        if (filesDir == null) return;
+        File[] files = new File(filesDir, REPLAY_DIRECTORY).listFiles((dir, name) -> {
+            String lower = name.toLowerCase();
+            return lower.endsWith(".cu8") || lower.endsWith(".cs8");
+        });
+        if (files == null) return;
+        Arrays.sort(files);
+        for (File file : files)
+            devices.add(new ReplaySdrDevice(streamHandler, methodhandler, file));
+    }
+
+    @Override
+    public String getName() {
+        return "Replay";
+    }
+
+    @Override
+    public boolean loadNativeLibraries() {
+        // No native libraries to load
+        return true;
+    }
+}
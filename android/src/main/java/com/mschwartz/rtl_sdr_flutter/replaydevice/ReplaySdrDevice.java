@@ -0,0 +1,86 @@
+package com.mschwartz.rtl_sdr_flutter.replaydevice;
+
+import com.mschwartz.rtl_sdr_flutter.MethodHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.SdrArguments;
+import com.mschwartz.rtl_sdr_flutter.StreamHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.devices.SoftwareSdrDevice;
+import com.mschwartz.rtl_sdr_flutter.tools.Log;
+import com.mschwartz.rtl_sdr_flutter.tools.SampleConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays a recording back as if it was received by a device, e.g. to test the processing without hardware. The file
+ * contains 8 bit I/Q pairs without a header, unsigned (.cu8, as written by rtl_sdr) or signed (.cs8, as written by
+ * hackrf_transfer). It is mapped into memory window by window and copied packet by packet into the slots of the
+ * buffer pool, see {@link SoftwareSdrDevice}. The sample rate of the recording is not stored in the file, it is taken
+ * from the arguments.
+ * <p>
+ * At the end of the file the device closes or starts again ({@link SdrArguments#isReplayLoop()}), the sample index
+ * keeps counting then.
+ */
+public class ReplaySdrDevice extends SoftwareSdrDevice {
+
+    /// the file is mapped in windows of this size, so long recordings do not need the whole address space
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private final File file;
+
+    /// true for .cs8 files, the samples are converted to unsigned ones
+    private final boolean signed;
+
+    /// the window of the file which is replayed, positioned at the next packet
+    private MappedByteBuffer mapped;
+
+    public ReplaySdrDevice(StreamHandlerImpl streamHandler, MethodHandlerImpl methodhandler, File file) {
+        super(streamHandler, methodhandler);
+        this.file = file;
+        this.signed = file.getName().toLowerCase().endsWith(".cs8");
+    }
+
+    @Override
+    protected void produce(SdrArguments sdrArguments) throws IOException {
+        int packetLength = getPacketLength();
+        // only the last packet of the file may be shorter
+        long windowSize = Math.max(1, MAP_WINDOW / packetLength) * packetLength;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size() & ~1L;
+            if (size == 0) throw new IOException(file.getName() + " contains no samples");
+            Log.appendLine("ReplaySdrDevice: replaying %s, %d bytes at %d Hz", file.getName(), size, getSamplingrate());
+            announceOnOpen();
+            do {
+                for (long window = 0; window < size; window += windowSize) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, window, Math.min(windowSize, size - window));
+                    while (mapped.hasRemaining()) {
+                        if (!deliver(Math.min(packetLength, mapped.remaining()) / 2)) return;
+                    }
+                }
+            } while (sdrArguments.isReplayLoop() && !isCanceled());
+        } finally {
+            mapped = null;
+        }
+    }
+
+    @Override
+    protected void fill(ByteBuffer slot, int length) {
+        int start = mapped.position();
+        ByteBuffer source = mapped.duplicate();
+        source.limit(start + length);
+        slot.put(source);
+        mapped.position(start + length);
+        if (signed) {
+            slot.flip();
+            SampleConverter.flipSign(slot);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "replay " + file.getName();
+    }
+}
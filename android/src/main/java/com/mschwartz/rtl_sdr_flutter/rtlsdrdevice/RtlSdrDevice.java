@@ -27,21 +27,58 @@ import android.hardware.usb.UsbDeviceConnection;
 import com.mschwartz.rtl_sdr_flutter.MethodHandlerImpl;
 import com.mschwartz.rtl_sdr_flutter.SdrArguments;
 import com.mschwartz.rtl_sdr_flutter.StreamHandlerImpl;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleBufferPool;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
 import com.mschwartz.rtl_sdr_flutter.devices.SdrDevice;
 import com.mschwartz.rtl_sdr_flutter.exceptions.SdrException;
+import com.mschwartz.rtl_sdr_flutter.tcp.TcpCommand;
+import com.mschwartz.rtl_sdr_flutter.tcp.TcpServer;
 import com.mschwartz.rtl_sdr_flutter.tools.Log;
 import com.mschwartz.rtl_sdr_flutter.tools.UsbPermissionObtainer;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
 
 public class RtlSdrDevice extends SdrDevice {
+    /// the length of the buffers librtlsdr uses for the async reading, see DEFAULT_BUF_LENGTH in librtlsdr.c
+    private static final int DEFAULT_BUF_LENGTH = 16 * 32 * 512;
+
+    /// the time in milliseconds the usb transfers in flight should cover if the phone does not schedule the reader
+    private static final int SUGGESTED_TOLERANCE_MS = 500;
+
+    private static final int MIN_SUGGESTED_BUFFERS = 4;
+
+    private static final int MAX_SUGGESTED_BUFFERS = 128;
+
+    /// upper bound of the memory librtlsdr allocates for the suggested buffers
+    private static final int MAX_SUGGESTED_MEMORY = 32 * 1024 * 1024;
+
     private final UsbDevice usbDevice;
-    private Long nativeHandler;
+
+    /// the native device, null as soon as openAsync returned and the memory is about to be freed
+    private volatile Long nativeHandler;
+
+    /// the read lock is held while the native device is used from java, the write lock while it is freed. The read
+    /// lock is shared, so the release of a slot in the usb thread never waits for a usb transfer of another thread.
+    private final ReentrantReadWriteLock nativeLock = new ReentrantReadWriteLock();
+
+    /// the slot drops of the native device which are already counted in the metrics, guarded by this
+    private long countedSlotDrops;
 
     private UsbDeviceConnection deviceConnection;
 
     private final Context context;
 
+    private SdrArguments sdrArguments;
+
+    /// serves the samples to rtl_tcp clients if requested by the arguments, created as soon as the device is open
+    private volatile TcpServer tcpServer;
+
     public RtlSdrDevice(Context context, StreamHandlerImpl streamHandler, MethodHandlerImpl methodhandler, UsbDevice usbDevice) {
         super(streamHandler, methodhandler);
         this.context = context;
@@ -54,27 +91,232 @@ public class RtlSdrDevice extends SdrDevice {
         Thread thread = new Thread() {
             @Override
             public void run() {
+                long handler;
+                nativeLock.writeLock().lock();
                 try {
+                    // the native device of the last session was freed when it ended
+                    if (nativeHandler == null) nativeHandler = initialize();
+                    handler = nativeHandler;
+                } finally {
+                    nativeLock.writeLock().unlock();
+                }
+                Throwable error = null;
+                try {
+                    RtlSdrDevice.this.sdrArguments = sdrArguments;
                     int fd = openSessionAndGetFd();
                     String path = usbDevice.getDeviceName();
-                    if (!openAsync(nativeHandler, fd, sdrArguments.getGain(), sdrArguments.getSamplerateHz(), sdrArguments.getFrequencyHz(), sdrArguments.getPpm(), sdrArguments.getAmplitude(), path)) {
-                        announceOnClosed(new SdrException(SdrException.EXIT_UNKNOWN));
-                    } else {
-                        announceOnClosed(null);
+                    int bufferLength = sdrArguments.getAsyncBufferLength() > 0 ? sdrArguments.getAsyncBufferLength() : DEFAULT_BUF_LENGTH;
+                    int poolSize = sdrArguments.getBufferPoolSize();
+                    if (sdrArguments.isTcpServer()) {
+                        // the tcp clients keep the slots until the data are sent, no byte array is involved
+                        poolSize = Math.max(poolSize, sdrArguments.getTcpClientQueueSize() + 1);
+                    }
+                    if (poolSize > 0) {
+                        bufferPool = new SampleBufferPool(poolSize, bufferLength, RtlSdrDevice.this::releaseBuffer);
+                        if (!registerBuffers(handler, bufferPool.getBuffers()))
+                            throw new RuntimeException("Could not register the buffer pool");
+                    }
+                    if (!openAsync(handler, fd, sdrArguments.getGain(), sdrArguments.getSamplerateHz(), sdrArguments.getFrequencyHz(), sdrArguments.getPpm(), sdrArguments.getAmplitude(),
+                            sdrArguments.getAsyncBufferCount(), sdrArguments.getAsyncBufferLength(), path)) {
+                        error = new SdrException(SdrException.EXIT_UNKNOWN);
                     }
                 } catch (Throwable e) {
-                    announceOnClosed(e);
+                    error = e;
                 }
+                // the read loop ended, e.g. because the dongle was unplugged: the slots which java still holds must
+                // not be released into the freed memory
+                // the port is released and the clients are disconnected also if the device stopped by itself
+                stopTcpServer();
+                collectSlotDrops();
+                nativeLock.writeLock().lock();
+                try {
+                    nativeHandler = null;
+                } finally {
+                    nativeLock.writeLock().unlock();
+                }
+                synchronized (RtlSdrDevice.this) {
+                    // the next native device counts from 0
+                    countedSlotDrops = 0;
+                }
+                dispose(handler);
+                announceOnClosed(error);
             }
         };
         thread.start();
     }
 
+    /**
+     * Suggests the number and length of the librtlsdr buffers, see {@link SdrArguments#setAsyncBufferCount(int)} and
+     * {@link SdrArguments#setAsyncBufferLength(int)}. One buffer holds about targetLatencyMs of samples, so a packet
+     * is delivered at least that often. Enough buffers are kept in flight to bridge about half a second in which
+     * the reader is not scheduled, as long as they fit into 32 MiB.
+     */
+    public static Map<String, Object> suggestAsyncBuffers(long samplerateHz, int targetLatencyMs) {
+        if (samplerateHz <= 0) throw new IllegalArgumentException("samplerateHz must be positive");
+        if (targetLatencyMs <= 0) throw new IllegalArgumentException("targetLatencyMs must be positive");
+        // two bytes per I/Q pair
+        long bytes = 2 * samplerateHz * targetLatencyMs / 1000;
+        // bigger transfers are kept aligned to the default granularity of librtlsdr
+        int granularity = bytes >= 16 * 1024 ? 16 * 1024 : 512;
+        int length = (int) Math.max(512, Math.min(4 * 1024 * 1024, bytes / granularity * granularity));
+        double bufferMs = length * 1000.0 / (2 * samplerateHz);
+        int count = (int) Math.ceil(SUGGESTED_TOLERANCE_MS / bufferMs);
+        count = Math.min(count, MAX_SUGGESTED_MEMORY / length);
+        count = Math.max(MIN_SUGGESTED_BUFFERS, Math.min(MAX_SUGGESTED_BUFFERS, count));
+        Map<String, Object> map = new HashMap<>();
+        map.put("asyncBufferCount", count);
+        map.put("asyncBufferLength", length);
+        return map;
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        collectSlotDrops();
+        return super.getMetrics();
+    }
+
+    /// counts the packets which the driver dropped because java still held the next slot of the buffer pool
+    private synchronized void collectSlotDrops() {
+        nativeLock.readLock().lock();
+        try {
+            Long handler = nativeHandler;
+            if (handler == null) return;
+            long dropped = getDroppedSlots(handler);
+            metrics.onDropped(dropped - countedSlotDrops);
+            countedSlotDrops = dropped;
+        } finally {
+            nativeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void announceOnOpen() {
+        if (sdrArguments != null && sdrArguments.isTcpServer()) {
+            startTcpServer();
+        }
+        super.announceOnOpen();
+    }
+
+    private void startTcpServer() {
+        if (sdrArguments.getAmplitude() != 0)
+            Log.appendLine("RtlSdrDevice: amplitudes are sent to the tcp clients, they usually expect I/Q samples");
+        try {
+            TcpServer server = new TcpServer(sdrArguments, dongleInfo(), this::executeCommand);
+            server.bind();
+            server.start();
+            tcpServer = server;
+            addSampleSink(server);
+        } catch (Exception e) {
+            Log.appendLine("RtlSdrDevice: tcp server could not be started due to " + e.getMessage());
+        }
+    }
+
+    private void stopTcpServer() {
+        TcpServer server = tcpServer;
+        tcpServer = null;
+        if (server != null) {
+            removeSampleSink(server);
+            server.close();
+        }
+    }
+
+    /// magic "RTL0", tuner type and number of gains, all big endian
+    private byte[] dongleInfo() {
+        ByteBuffer info = ByteBuffer.allocate(12).order(ByteOrder.BIG_ENDIAN);
+        info.put((byte) 'R').put((byte) 'T').put((byte) 'L').put((byte) '0');
+        info.putInt(getTunerType(nativeHandler));
+        info.putInt(getTunerGainCount(nativeHandler));
+        return info.array();
+    }
+
+    /// executes the commands of the primary tcp client
+    private void executeCommand(int code, long argument) {
+        TcpCommand command = TcpCommand.fromCode(code);
+        if (command == null) {
+            Log.appendLine("RtlSdrDevice: unknown tcp command " + code);
+            return;
+        }
+        if (command == TcpCommand.TCP_ANDROID_EXIT) {
+            Log.appendLine("RtlSdrDevice: tcp client requested to close the device");
+            close();
+            return;
+        }
+        nativeLock.readLock().lock();
+        try {
+            Long handler = nativeHandler;
+            if (handler == null) return;
+            executeCommand(handler, command, argument);
+        } finally {
+            nativeLock.readLock().unlock();
+        }
+        if (command == TcpCommand.TCP_SET_FREQ || command == TcpCommand.TCP_SET_SAMPLE_RATE) tuningChanged();
+    }
+
+    private void executeCommand(long handler, TcpCommand command, long argument) {
+        switch (command) {
+            case TCP_SET_FREQ:
+                setFrequency(handler, argument);
+                break;
+            case TCP_SET_SAMPLE_RATE:
+                setSamplingrate(handler, argument);
+                metrics.setConfiguredSamplerate(argument);
+                break;
+            case TCP_SET_GAIN_MODE:
+                setTunerGainModeOnly(handler, (int) argument);
+                break;
+            case TCP_SET_GAIN:
+                // 0 is a valid manual gain of 0.0 dB, the mode is set by TCP_SET_GAIN_MODE
+                setTunerGainOnly(handler, (int) argument);
+                break;
+            case TCP_SET_FREQ_CORRECTION:
+                setFrequencyCorrection(handler, (int) argument);
+                break;
+            case TCP_SET_IF_TUNER_GAIN:
+                setIfTunerGain(handler, (int) (argument >>> 16), (short) (argument & 0xFFFF));
+                break;
+            case TCP_SET_TEST_MODE:
+                setTestmode(handler, (int) argument);
+                break;
+            case TCP_SET_AGC_MODE:
+                setAgcMode(handler, (int) argument);
+                break;
+            case TCP_SET_DIRECT_SAMPLING:
+                setDirectSampling(handler, (int) argument);
+                break;
+            case TCP_SET_OFFSET_TUNING:
+                setOffsetTuning(handler, (int) argument);
+                break;
+            case TCP_SET_RTL_XTAL:
+                setRtlXtalFreq(handler, argument);
+                break;
+            case TCP_SET_TUNER_XTAL:
+                setTunerXtalFreq(handler, argument);
+                break;
+            case TCP_SET_TUNER_GAIN_BY_ID:
+                setTunerGainByIndex(handler, (int) argument);
+                break;
+            case TCP_ANDROID_GAIN_BY_PERCENTAGE:
+                setTunergainByPercentage(handler, (int) argument);
+                break;
+            default:
+                Log.appendLine("RtlSdrDevice: unsupported tcp command " + command);
+                break;
+        }
+    }
+
     @Override
     public void close() {
         Log.appendLine("RtlSdrDevice: close");
-        cancelAsync(nativeHandler);
-        nativeHandler = null;
+        stopTcpServer();
+        // the thread of openAsync frees the native device as soon as the read loop ended
+        nativeLock.readLock().lock();
+        try {
+            Long handler = nativeHandler;
+            if (handler != null)
+                cancelAsync(handler);
+        } finally {
+            nativeLock.readLock().unlock();
+        }
         if (deviceConnection != null)
             deviceConnection.close();
         deviceConnection = null;
@@ -86,59 +328,79 @@ public class RtlSdrDevice extends SdrDevice {
     }
 
     public void setFrequency(long frequency) {
-        setFrequency(nativeHandler, frequency);
+        withHandler(handler -> setFrequency(handler, frequency));
+        tuningChanged();
     }
 
     public long getFrequency() {
-        return getFrequency(nativeHandler);
+        return withHandler(this::getFrequency);
     }
 
     public void setSamplingrate(long samplingrate) {
-        setSamplingrate(nativeHandler, samplingrate);
+        withHandler(handler -> setSamplingrate(handler, samplingrate));
+        metrics.setConfiguredSamplerate(samplingrate);
+        tuningChanged();
     }
 
     public long getSamplingrate() {
-        return getSamplingrate(nativeHandler);
+        return withHandler(this::getSamplingrate);
     }
 
     public void setFrequencyCorrection(int ppm) {
-        setFrequencyCorrection(nativeHandler, ppm);
+        withHandler(handler -> setFrequencyCorrection(handler, ppm));
     }
 
     public int getFrequencyCorrection() {
-        return getFrequencyCorrection(nativeHandler);
+        return withHandler(this::getFrequencyCorrection);
     }
 
     public long getRtlXtalFrequency() {
-        return getRtlXtalFreq(nativeHandler);
+        return withHandler(this::getRtlXtalFreq);
     }
 
     public long getTunerXtalFrequency() {
-        return getTunerXtalFreq(nativeHandler);
+        return withHandler(this::getTunerXtalFreq);
     }
 
     public int getTunergain() {
-        return getTunergain(nativeHandler);
+        return withHandler(this::getTunergain);
     }
 
-    public int getMargin() {
-        return getMargin(nativeHandler);
+    public void setTunergainMode(int gain) {
+        withHandler(handler -> setTunergainMode(handler, gain));
     }
 
-    public void setMargin(int margin) {
-        setMargin(nativeHandler, margin);
+    public void setTunergainByPercentage(int tunergain) {
+        withHandler(handler -> setTunergainByPercentage(handler, tunergain));
     }
 
-    public void setTunergainMode(int gain) {
-        setTunergainMode(nativeHandler, gain);
+    public boolean setAmplitude(boolean on) {
+        setDeviceFormat(on ? SampleFormat.U8_AMPLITUDE : SampleFormat.CU8);
+        return withHandler(handler -> setAmplitude(handler, on ? 1 : 0));
     }
 
-    public void setTunergainByPercentage(int tunergain) {
-        setTunergainByPercentage(nativeHandler, tunergain);
+    /// calls the native device with the read lock held, throws if the device is closed
+    private <T> T withHandler(LongFunction<T> call) {
+        nativeLock.readLock().lock();
+        try {
+            Long handler = nativeHandler;
+            if (handler == null) throw new IllegalStateException("the device is closed");
+            return call.apply(handler);
+        } finally {
+            nativeLock.readLock().unlock();
+        }
     }
 
-    public boolean setAmplitude(boolean on) {
-        return setAmplitude(nativeHandler, on ? 1 : 0);
+    @Override
+    protected void releaseBuffer(int slot) {
+        nativeLock.readLock().lock();
+        try {
+            Long handler = nativeHandler;
+            if (handler != null)
+                releaseBuffer(handler, slot);
+        } finally {
+            nativeLock.readLock().unlock();
+        }
     }
 
     private int openSessionAndGetFd() throws ExecutionException, InterruptedException {
@@ -151,8 +413,9 @@ public class RtlSdrDevice extends SdrDevice {
 
     @Override
     protected void finalize() throws Throwable {
-        if (nativeHandler != null)
-            dispose(nativeHandler);
+        Long handler = nativeHandler;
+        if (handler != null)
+            dispose(handler);
         if (deviceConnection != null)
             deviceConnection.close();
         super.finalize();
@@ -165,7 +428,11 @@ public class RtlSdrDevice extends SdrDevice {
 
     private native void dispose(long pointer);
 
-    private native boolean openAsync(long pointer, int fd, int gain, long samplingrate, long frequency, int ppm, int amplitude, String devicePath) throws Exception;
+    private native boolean openAsync(long pointer, int fd, int gain, long samplingrate, long frequency, int ppm, int amplitude, int bufNum, int bufLen, String devicePath) throws Exception;
+
+    private native boolean registerBuffers(long pointer, ByteBuffer[] buffers);
+
+    private native void releaseBuffer(long pointer, int slot);
 
     private native boolean setFrequency(long pointer, long frequency);
 
@@ -189,10 +456,20 @@ public class RtlSdrDevice extends SdrDevice {
 
     private native boolean setTunergainMode(long pointer, int gain);
 
+    private native boolean setTunerGainModeOnly(long pointer, int manual);
+
+    private native boolean setTunerGainOnly(long pointer, int gain);
+
     private native boolean setTunerGainByIndex(long pointer, int index);
 
     private native boolean setTunergainByPercentage(long pointer, int percentage);
 
+    private native boolean setIfTunerGain(long pointer, int stage, int gain);
+
+    private native int getTunerType(long pointer);
+
+    private native int getTunerGainCount(long pointer);
+
     private native long getRtlXtalFreq(long pointer);
 
     private native long getTunerXtalFreq(long pointer);
@@ -209,9 +486,7 @@ public class RtlSdrDevice extends SdrDevice {
 
     private native long getSamplingrate(long pointer);
 
-    private native int getMargin(long pointer);
-
-    private native boolean setMargin(long pointer, int margin);
-
     private native boolean setAmplitude(long pointer, int on);
+
+    private native long getDroppedSlots(long pointer);
 }
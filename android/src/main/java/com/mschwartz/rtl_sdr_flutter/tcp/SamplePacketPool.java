@@ -0,0 +1,41 @@
+package com.mschwartz.rtl_sdr_flutter.tcp;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A fixed number of {@link SamplePacket}s with direct buffers of the same capacity, so the socket writes them
+ * without an intermediate copy. If all packets are referenced by clients no packet is available and the producer has
+ * to drop the data.
+ */
+public class SamplePacketPool implements SamplePacket.Recycler {
+
+    private final ArrayBlockingQueue<SamplePacket> free;
+
+    public SamplePacketPool(int count, int capacity) {
+        if (count <= 0) throw new IllegalArgumentException("count must be positive");
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        free = new ArrayBlockingQueue<>(count);
+        for (int i = 0; i < count; ++i) {
+            free.add(new SamplePacket(ByteBuffer.allocateDirect(capacity), this));
+        }
+    }
+
+    /**
+     * Returns a cleared packet holding one reference or null if all packets are in use.
+     */
+    public SamplePacket acquire() {
+        SamplePacket packet = free.poll();
+        if (packet == null) return null;
+        packet.getBuffer().clear();
+        packet.retain();
+        return packet;
+    }
+
+    @Override
+    public void recycle(SamplePacket packet) {
+        free.offer(packet);
+    }
+}
@@ -0,0 +1,237 @@
+package com.mschwartz.rtl_sdr_flutter.tcp;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.tools.Log;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One non-blocking connection of the {@link TcpServer}. The producer queues packets into a fixed ring, the I/O thread
+ * sends all queued packets with one gathering write and parses the 5 byte rtl_tcp commands as they arrive.
+ */
+class TcpClient {
+
+    static final int QUEUED = 0;
+
+    /// the packet has been queued and the queue was empty before, the I/O thread must be woken up
+    static final int QUEUED_FIRST = 1;
+
+    static final int DROPPED = 2;
+
+    /// code (1 byte) and argument (4 bytes, big endian)
+    private static final int COMMAND_SIZE = 5;
+
+    private final TcpServer server;
+
+    private final SocketChannel channel;
+
+    private final SocketAddress address;
+
+    /// the index of the view of the packets used by this client
+    private final int slot;
+
+    /// the dongle info, sent before the first packet
+    private final ByteBuffer header;
+
+    private final ByteBuffer commands = ByteBuffer.allocate(COMMAND_SIZE * 16);
+
+    /// the packets not yet sent completely, guarded by this
+    private final SamplePacket[] ring;
+
+    /// the views of the packets in the order of the ring, the first one is the header while it is not sent
+    private final ByteBuffer[] gather;
+
+    private int first;
+
+    private int count;
+
+    private boolean closed;
+
+    private final AtomicBoolean flushRequest = new AtomicBoolean();
+
+    /// set by the publishing thread for a slow client, the I/O thread closes the connection
+    private final AtomicBoolean disconnectRequest = new AtomicBoolean();
+
+    private SelectionKey key;
+
+    private boolean warned;
+
+    /// the following fields are only accessed by the publishing thread
+    private long droppedPackets;
+
+    private long droppingSince;
+
+    TcpClient(TcpServer server, SocketChannel channel, int slot, int queueSize, byte[] dongleInfo) {
+        this.server = server;
+        this.channel = channel;
+        this.address = channel.socket().getRemoteSocketAddress();
+        this.slot = slot;
+        this.header = ByteBuffer.wrap(dongleInfo.clone());
+        this.ring = new SamplePacket[queueSize];
+        this.gather = new ByteBuffer[queueSize + 1];
+    }
+
+    void register(Selector selector) throws IOException {
+        // the header is sent as soon as the socket is writable
+        key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, this);
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Queues the packet for this client, see QUEUED, QUEUED_FIRST and DROPPED.
+     */
+    int offer(SamplePacket packet, long now) {
+        synchronized (this) {
+            // a closed client is about to be removed from the server, it does not count as slow
+            if (closed) return QUEUED;
+            if (count < ring.length) {
+                packet.retain();
+                int index = (first + count) % ring.length;
+                ring[index] = packet;
+                packet.prepareView(slot);
+                count++;
+                droppingSince = 0;
+                if (count > 1) return QUEUED;
+                flushRequest.set(true);
+                return QUEUED_FIRST;
+            }
+        }
+        droppedPackets++;
+        if (droppingSince == 0) droppingSince = now;
+        return DROPPED;
+    }
+
+    /// true if the client drops packets for longer than allowed
+    boolean isSlow(long now) {
+        return droppingSince != 0 && now - droppingSince > TimeUnit.MILLISECONDS.toNanos(TcpServer.SLOW_CLIENT_TIMEOUT_MS);
+    }
+
+    long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    /**
+     * Asks the I/O thread to close the connection with the next flush. Returns false if this was requested before.
+     */
+    boolean requestDisconnect() {
+        if (disconnectRequest.getAndSet(true)) return false;
+        flushRequest.set(true);
+        return true;
+    }
+
+    boolean takeFlushRequest() {
+        return flushRequest.getAndSet(false);
+    }
+
+    /**
+     * Writes as much of the queued data as the socket accepts, called in the I/O thread.
+     */
+    void flush() {
+        if (disconnectRequest.get()) {
+            close();
+            return;
+        }
+        int length = 0;
+        int packets;
+        synchronized (this) {
+            if (closed) return;
+            if (header.hasRemaining()) gather[length++] = header;
+            packets = count;
+            for (int i = 0; i < packets; ++i) {
+                // the view has been positioned when the packet was queued
+                gather[length++] = ring[(first + i) % ring.length].view(slot);
+            }
+        }
+        try {
+            if (length > 0) channel.write(gather, 0, length);
+        } catch (IOException e) {
+            Log.appendLine("Client %s closing due to %s", address, e.getMessage());
+            close();
+            return;
+        }
+        boolean pending = header.hasRemaining();
+        synchronized (this) {
+            if (closed) return;
+            int offset = length - packets;
+            for (int i = 0; i < packets; ++i) {
+                if (gather[offset + i].hasRemaining()) {
+                    pending = true;
+                    break;
+                }
+                ring[first].release();
+                ring[first] = null;
+                first = (first + 1) % ring.length;
+                count--;
+            }
+            pending |= count > 0;
+        }
+        for (int i = 0; i < length; ++i) {
+            gather[i] = null;
+        }
+        try {
+            // wait for the socket if the data did not fit, otherwise the producer requests the next flush
+            key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IllegalStateException e) {
+            // the key has been cancelled or the selector closed
+            close();
+        }
+    }
+
+    /**
+     * Reads the available commands, called in the I/O thread.
+     */
+    void read() {
+        int read;
+        try {
+            read = channel.read(commands);
+        } catch (IOException e) {
+            Log.appendLine("Client %s closing due to %s", address, e.getMessage());
+            close();
+            return;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+        commands.flip();
+        while (commands.remaining() >= COMMAND_SIZE) {
+            int code = commands.get() & 0xFF;
+            long argument = commands.getInt() & 0xFFFFFFFFL;
+            if (!server.onCommand(this, code, argument) && !warned) {
+                Log.appendLine("Ignoring commands of client %s, it is not the primary client", address);
+                warned = true;
+            }
+        }
+        commands.compact();
+    }
+
+    void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            while (count > 0) {
+                ring[first].release();
+                ring[first] = null;
+                first = (first + 1) % ring.length;
+                count--;
+            }
+        }
+        TcpServer.closeQuietly(channel);
+        server.onClosed(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(address);
+    }
+}
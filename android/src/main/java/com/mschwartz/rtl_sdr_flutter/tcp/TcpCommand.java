@@ -18,7 +18,7 @@
  *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package com.mschwartz.rtl_sdr_flutter.hackrfdevice;
+package com.mschwartz.rtl_sdr_flutter.tcp;
 
 import android.util.SparseArray;
 
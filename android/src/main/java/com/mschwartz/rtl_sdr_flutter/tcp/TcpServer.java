@@ -0,0 +1,306 @@
+package com.mschwartz.rtl_sdr_flutter.tcp;
+
+import com.mschwartz.rtl_sdr_flutter.SdrArguments;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.devices.SampleSink;
+import com.mschwartz.rtl_sdr_flutter.tools.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A rtl_tcp compatible server which fans one stream of samples out to several clients. Each client has its own
+ * bounded queue of {@link SamplePacket}s. If a client cannot keep up the packets for this client are dropped, and if
+ * it does not catch up within {@link #SLOW_CLIENT_TIMEOUT_MS} it is disconnected, so a slow client never stalls the
+ * others.
+ * <p>
+ * Only the primary client, which is the client connected for the longest time, may control the device. Commands of
+ * the other clients are ignored. If the primary client disconnects the next client takes over.
+ * <p>
+ * All sockets are non-blocking and served by a single I/O thread. The queued packets of a client are sent with one
+ * gathering write, the selector is only woken up if the queue of a client was empty before.
+ */
+public class TcpServer implements SampleSink {
+
+    private static final long SELECT_TIMEOUT_MS = 1_000;
+
+    /// a client which drops packets for this time is disconnected
+    static final long SLOW_CLIENT_TIMEOUT_MS = 5_000;
+
+    private final Selector selector;
+
+    private final ServerSocketChannel serverChannel;
+
+    private final String address;
+
+    private final int port;
+
+    private final int maxClients;
+
+    private final int clientQueueSize;
+
+    private final byte[] dongleInfo;
+
+    private final CommandHandler commandHandler;
+
+    /// the clients in the order they connected, the first one is the primary client
+    private final CopyOnWriteArrayList<TcpClient> clients = new CopyOnWriteArrayList<>();
+
+    /// the view index of the packets for each client, see SamplePacket.prepareView
+    private final boolean[] usedSlots;
+
+    private final Object clientsChanged = new Object();
+
+    /// true if at least one client has new data and the selector has been woken up
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private Thread ioThread;
+
+    private volatile boolean closed;
+
+    private volatile Exception error;
+
+    public TcpServer(SdrArguments sdrArguments, byte[] dongleInfo, CommandHandler commandHandler) throws IOException {
+        this.address = sdrArguments.getTcpAddress();
+        this.port = sdrArguments.getTcpPort();
+        this.maxClients = sdrArguments.getTcpMaxClients();
+        this.clientQueueSize = sdrArguments.getTcpClientQueueSize();
+        this.dongleInfo = dongleInfo;
+        this.commandHandler = commandHandler;
+        this.usedSlots = new boolean[maxClients];
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+    }
+
+    public void bind() throws IOException {
+        serverChannel.socket().bind(new InetSocketAddress(address, port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Starts serving the clients in a separate thread.
+     */
+    public void start() {
+        ioThread = new Thread(this::ioLoop, "TcpServer");
+        ioThread.start();
+    }
+
+    private void ioLoop() {
+        Log.appendLine("Waiting for clients on " + serverChannel.socket().getInetAddress().getHostAddress() + ":" + port + "...");
+        try {
+            while (!closed) {
+                selector.select(SELECT_TIMEOUT_MS);
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    TcpClient client = (TcpClient) key.attachment();
+                    if (key.isReadable()) client.read();
+                    if (key.isValid() && key.isWritable()) client.flush();
+                }
+                if (flushRequested.getAndSet(false)) {
+                    for (TcpClient client : clients) {
+                        if (client.takeFlushRequest()) client.flush();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) fail(e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        int slot = acquireSlot();
+        if (slot < 0) {
+            Log.appendLine("Rejecting client %s, already %d clients connected", channel.socket().getRemoteSocketAddress(), maxClients);
+            closeQuietly(channel);
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            TcpClient client = new TcpClient(this, channel, slot, clientQueueSize, dongleInfo);
+            client.register(selector);
+            clients.add(client);
+            Log.appendLine("Client %s connected%s, %d clients", client, isPrimary(client) ? " as primary" : "", clients.size());
+            synchronized (clientsChanged) {
+                clientsChanged.notifyAll();
+            }
+        } catch (IOException e) {
+            Log.appendLine("Client could not be initialized due to " + e.getMessage());
+            releaseSlot(slot);
+            closeQuietly(channel);
+        }
+    }
+
+    private synchronized int acquireSlot() {
+        for (int i = 0; i < usedSlots.length; ++i) {
+            if (!usedSlots[i]) {
+                usedSlots[i] = true;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private synchronized void releaseSlot(int slot) {
+        usedSlots[slot] = false;
+    }
+
+    /**
+     * Waits until at least one client is connected. Returns false if the timeout elapsed or the server is closed.
+     */
+    public boolean awaitClient(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (clientsChanged) {
+            while (clients.isEmpty() && !closed) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) return false;
+                clientsChanged.wait(remaining);
+            }
+        }
+        return !clients.isEmpty();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Queues the packet for every client. Each client holds its own reference to the packet, the caller keeps its
+     * reference and has to release it. A slow client is only marked here, the I/O thread closes it.
+     */
+    public void publish(SamplePacket packet) {
+        long now = System.nanoTime();
+        boolean wakeup = false;
+        for (TcpClient client : clients) {
+            switch (client.offer(packet, now)) {
+                case TcpClient.QUEUED_FIRST:
+                    wakeup = true;
+                    break;
+                case TcpClient.DROPPED:
+                    if (client.isSlow(now) && client.requestDisconnect()) {
+                        Log.appendLine("Client %s is too slow, %d packets dropped", client, client.getDroppedPackets());
+                        wakeup = true;
+                    }
+                    break;
+            }
+        }
+        if (wakeup && !flushRequested.getAndSet(true)) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void onSamples(SamplePacket packet) {
+        publish(packet);
+    }
+
+    boolean isPrimary(TcpClient client) {
+        for (TcpClient first : clients) {
+            return first == client;
+        }
+        return false;
+    }
+
+    /// called in the I/O thread for each complete command of a client
+    boolean onCommand(TcpClient client, int code, long argument) {
+        if (!isPrimary(client)) return false;
+        try {
+            commandHandler.onCommand(code, argument);
+        } catch (Exception e) {
+            // e.g. a bad argument or the device is about to close, the other clients keep being served
+            Log.appendLine("Command %d of client %s failed due to %s", code, client, e.getMessage());
+        }
+        return true;
+    }
+
+    /// called by the client when its connection is closed
+    void onClosed(TcpClient client) {
+        boolean wasPrimary = isPrimary(client);
+        if (!clients.remove(client)) return;
+        releaseSlot(client.getSlot());
+        Log.appendLine("Client %s disconnected, %d clients", client, clients.size());
+        if (wasPrimary && !closed) {
+            for (TcpClient primary : clients) {
+                Log.appendLine("Client %s is the primary client now", primary);
+                break;
+            }
+        }
+    }
+
+    private void fail(Exception e) {
+        if (error == null) error = e;
+        close();
+    }
+
+    /**
+     * Returns the exception which caused the server to close or null.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (TcpClient client : clients) {
+            client.close();
+        }
+        selector.wakeup();
+        synchronized (clientsChanged) {
+            clientsChanged.notifyAll();
+        }
+        if (ioThread != null && ioThread != Thread.currentThread()) {
+            try {
+                ioThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            Log.appendLine("TCP server could not be closed cleanly due to " + e.getMessage());
+        }
+        Log.appendLine("TCP server closed");
+    }
+
+    static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Executes the commands of the primary client.
+     */
+    public interface CommandHandler {
+        /**
+         * Called in the I/O thread of the server. An exception is logged, the server keeps serving the clients.
+         */
+        void onCommand(int code, long argument) throws Exception;
+    }
+}
@@ -0,0 +1,55 @@
+package com.mschwartz.rtl_sdr_flutter.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversions of 8 bit samples.
+ */
+public class SampleConverter {
+
+    private static final long SIGN_BITS = 0x8080808080808080L;
+
+    /**
+     * Maps an unsigned 8 bit sample (the byte value & 0xFF) to a float between -1 and +1.
+     */
+    public static final float[] UNSIGNED_TO_FLOAT = new float[256];
+
+    /**
+     * Maps an unsigned 8 bit I/Q pair ((i & 0xFF) << 8 | (q & 0xFF)) to its magnitude as unsigned byte, on the same
+     * scale as the amplitude mode of the native driver.
+     */
+    public static final byte[] MAGNITUDE = new byte[256 * 256];
+
+    static {
+        for (int i = 0; i < 256; ++i) {
+            UNSIGNED_TO_FLOAT[i] = (i - 127.5f) / 127.5f;
+        }
+        for (int i = 0; i < 256; ++i) {
+            for (int q = 0; q < 256; ++q) {
+                int magI = i * 2 - 255;
+                int magQ = q * 2 - 255;
+                long mag = Math.round(Math.sqrt(magI * magI + magQ * magQ) * 0.71 - 1.4142);
+                MAGNITUDE[(i << 8) | q] = (byte) Math.min(mag, 255);
+            }
+        }
+    }
+
+    /**
+     * Converts the signed samples between position and limit of the buffer to unsigned samples with an offset of
+     * 128 (as delivered by rtl-sdr dongles) or back. Adding 128 to a byte is the same as flipping its sign bit, so
+     * eight samples are converted at once. The byte order of the buffer does not matter.
+     */
+    public static void flipSign(ByteBuffer buffer) {
+        int i = buffer.position();
+        int limit = buffer.limit();
+        for (; i + 8 <= limit; i += 8) {
+            buffer.putLong(i, buffer.getLong(i) ^ SIGN_BITS);
+        }
+        for (; i < limit; ++i) {
+            buffer.put(i, (byte) (buffer.get(i) ^ 0x80));
+        }
+    }
+
+    private SampleConverter() {
+    }
+}
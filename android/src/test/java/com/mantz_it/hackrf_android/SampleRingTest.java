@@ -0,0 +1,97 @@
+package com.mantz_it.hackrf_android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+public class SampleRingTest {
+
+    @Test
+    public void poll_morePacketsThanSlots_keepsTheOrderAcrossTheWrapAround() throws InterruptedException {
+        SampleRing ring = new SampleRing(4, 8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+        for (int packet = 0; packet < 20; ++packet) {
+            buffer.clear();
+            buffer.putInt(0, packet);
+            buffer = ring.exchange(buffer, packet);
+            if (packet % 3 == 2) {
+                // drain in batches, so head and tail wrap at different positions
+                while (ring.size() > 0) {
+                    int expected = packet - ring.size() + 1;
+                    ByteBuffer polled = ring.poll(0, TimeUnit.MILLISECONDS);
+                    assertEquals(expected, polled.getInt(0));
+                    assertEquals(expected, ring.getSequence());
+                    assertEquals(expected, ring.getTimestamp());
+                    ring.release();
+                }
+            }
+        }
+        assertEquals(0, ring.getDroppedPackets());
+    }
+
+    @Test
+    public void exchange_fullRing_dropsThePacketAndLeavesAGap() throws InterruptedException {
+        SampleRing ring = new SampleRing(2, 8);
+        for (int packet = 0; packet < 2; ++packet) {
+            ring.exchange(ByteBuffer.allocateDirect(8), 0);
+        }
+        ByteBuffer dropped = ByteBuffer.allocateDirect(8);
+        assertSame(dropped, ring.exchange(dropped, 0));
+        assertEquals(1, ring.getDroppedPackets());
+        for (int packet = 0; packet < 2; ++packet) {
+            ring.poll(0, TimeUnit.MILLISECONDS);
+            assertEquals(packet, ring.getSequence());
+            ring.release();
+        }
+        ring.exchange(ByteBuffer.allocateDirect(8), 0);
+        ring.poll(0, TimeUnit.MILLISECONDS);
+        // the dropped packet had the sequence number 2
+        assertEquals(3, ring.getSequence());
+    }
+
+    @Test
+    public void poll_emptyRing_returnsNullAfterTheTimeout() throws InterruptedException {
+        SampleRing ring = new SampleRing(2, 8);
+        assertNull(ring.poll(20, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void poll_producerThread_receivesEveryPacketInOrder() throws Exception {
+        int packets = 200000;
+        SampleRing ring = new SampleRing(8, 8);
+        Thread producer = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+            for (int packet = 0; packet < packets; ) {
+                buffer.putInt(0, packet);
+                ByteBuffer free = ring.exchange(buffer, packet);
+                if (free == buffer) {
+                    // the ring is full, retry the same packet
+                    Thread.yield();
+                    continue;
+                }
+                buffer = free;
+                packet++;
+            }
+        });
+        producer.start();
+        long dropped = 0;
+        for (int packet = 0; packet < packets; ++packet) {
+            ByteBuffer polled = ring.poll(10, TimeUnit.SECONDS);
+            assertTrue("timeout at packet " + packet, polled != null);
+            assertEquals(packet, polled.getInt(0));
+            // each retry of a full ring counts as a dropped packet
+            assertTrue(ring.getSequence() >= packet + dropped);
+            dropped = ring.getSequence() - packet;
+            ring.release();
+        }
+        producer.join();
+        assertEquals(0, ring.size());
+        assertEquals(dropped, ring.getDroppedPackets());
+    }
+}
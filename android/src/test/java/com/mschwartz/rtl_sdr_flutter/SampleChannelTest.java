@@ -0,0 +1,330 @@
+package com.mschwartz.rtl_sdr_flutter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mockStatic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+public class SampleChannelTest {
+
+    private MockedStatic<android.util.Log> log;
+
+    private MockedStatic<android.os.SystemClock> clock;
+
+    private final FakeMessenger messenger = new FakeMessenger();
+
+    private final FakeMainThread mainThread = new FakeMainThread();
+
+    private final List<byte[]> payloads = new ArrayList<>();
+
+    /// usb sequence number of the next packet
+    private long nextSequence;
+
+    @Before
+    public void setUp() {
+        log = mockStatic(android.util.Log.class);
+        // the metrics of the channel read the clock
+        clock = mockStatic(android.os.SystemClock.class);
+    }
+
+    @After
+    public void tearDown() {
+        clock.close();
+        log.close();
+    }
+
+    @Test
+    public void offer_withoutBatching_sendsOneFramePerBuffer() {
+        SampleChannel channel = channel(0, 0, 4, OverflowPolicy.DROP_NEWEST);
+        mainThread.now = 1234;
+        channel.offer(packet(0, 10));
+        channel.offer(packet(10, 20));
+        mainThread.runPosted();
+        assertEquals(2, messenger.frames.size());
+        for (int k = 0; k < 2; ++k) {
+            ByteBuffer frame = frame(k);
+            assertEquals(SampleChannel.VERSION, frame.get(0));
+            assertEquals(0, frame.get(1));
+            assertEquals(SampleChannel.HEADER_SIZE, frame.getShort(2));
+            assertEquals(10, frame.getInt(4));
+            assertEquals(k, frame.getLong(8));
+            assertEquals(1234, frame.getLong(16));
+            assertEquals(k, frame.getLong(24));
+            // two bytes per I/Q pair
+            assertEquals(5 * k, frame.getLong(32));
+            assertEquals(1, frame.getInt(40));
+        }
+        assertArrayEquals(bytes(10, 20), payload(1));
+    }
+
+    @Test
+    public void offer_batchBytes_fillsEachFrameCompletely() {
+        SampleChannel channel = channel(100, 0, 4, OverflowPolicy.DROP_NEWEST);
+        for (int k = 0; k < 3; ++k) {
+            channel.offer(packet(40 * k, 40 * k + 40));
+        }
+        mainThread.runPosted();
+        // the third buffer is split, its rest waits for more data
+        assertEquals(1, messenger.frames.size());
+        assertArrayEquals(bytes(0, 100), payload(0));
+    }
+
+    @Test
+    public void offer_batchLatency_sendsTheFrameWhenItExpires() {
+        SampleChannel channel = channel(1000, 10, 4, OverflowPolicy.DROP_NEWEST);
+        channel.offer(packet(0, 10));
+        mainThread.runPosted();
+        assertEquals(0, messenger.frames.size());
+        assertEquals(Arrays.asList(10L), mainThread.delays);
+        mainThread.now += TimeUnit.MILLISECONDS.toNanos(10);
+        mainThread.runDelayed();
+        assertEquals(1, messenger.frames.size());
+        assertArrayEquals(bytes(0, 10), payload(0));
+    }
+
+    @Test
+    public void offer_dropNewest_dropsTheNewBuffersAndFlagsTheNextFrame() {
+        SampleChannel channel = channel(0, 0, 2, OverflowPolicy.DROP_NEWEST);
+        for (int k = 0; k < 4; ++k) {
+            channel.offer(packet(10 * k, 10 * k + 10));
+        }
+        mainThread.runPosted();
+        channel.offer(packet(40, 50));
+        mainThread.runPosted();
+        assertEquals(3, messenger.frames.size());
+        assertArrayEquals(bytes(0, 10), payload(0));
+        assertArrayEquals(bytes(10, 20), payload(1));
+        assertArrayEquals(bytes(40, 50), payload(2));
+        assertEquals(0, frame(1).get(1));
+        assertEquals(SampleChannel.FLAG_DISCONTINUITY, frame(2).get(1));
+        assertEquals(2L, channel.getStatistics().get("droppedBuffers"));
+        assertEquals(20L, channel.getStatistics().get("droppedBytes"));
+    }
+
+    @Test
+    public void offer_dropOldest_dropsTheQueuedFramesAndFlagsTheNextFrame() {
+        SampleChannel channel = channel(0, 0, 2, OverflowPolicy.DROP_OLDEST);
+        for (int k = 0; k < 4; ++k) {
+            channel.offer(packet(10 * k, 10 * k + 10));
+        }
+        mainThread.runPosted();
+        assertEquals(2, messenger.frames.size());
+        assertArrayEquals(bytes(20, 30), payload(0));
+        assertArrayEquals(bytes(30, 40), payload(1));
+        assertEquals(SampleChannel.FLAG_DISCONTINUITY, frame(0).get(1));
+        assertEquals(0, frame(1).get(1));
+        assertEquals(2L, channel.getStatistics().get("droppedBuffers"));
+        assertEquals(20L, channel.getStatistics().get("droppedBytes"));
+    }
+
+    @Test
+    public void offer_block_waitsUntilTheFramesAreSent() throws InterruptedException {
+        SampleChannel channel = channel(0, 0, 1, OverflowPolicy.BLOCK);
+        Thread producer = new Thread(() -> {
+            for (int k = 0; k < 5; ++k) {
+                channel.offer(packet(10 * k, 10 * k + 10));
+            }
+        });
+        producer.start();
+        while (producer.isAlive()) {
+            mainThread.runPosted();
+            producer.join(1);
+        }
+        mainThread.runPosted();
+        assertEquals(5, messenger.frames.size());
+        for (int k = 0; k < 5; ++k) {
+            assertArrayEquals(bytes(10 * k, 10 * k + 10), payload(k));
+        }
+        assertEquals(0L, channel.getStatistics().get("droppedBuffers"));
+    }
+
+    @Test
+    public void offer_bufferSplitAcrossFrames_isCountedOnce() {
+        SampleChannel channel = channel(100, 0, 1, OverflowPolicy.DROP_NEWEST);
+        channel.offer(packet(0, 60));
+        // fills the only frame, the rest of the buffer does not fit anymore
+        channel.offer(packet(60, 120));
+        assertEquals(0L, channel.getStatistics().get("droppedBuffers"));
+        assertEquals(20L, channel.getStatistics().get("droppedBytes"));
+        channel.offer(packet(120, 130));
+        assertEquals(1L, channel.getStatistics().get("droppedBuffers"));
+        assertEquals(30L, channel.getStatistics().get("droppedBytes"));
+    }
+
+    @Test
+    public void offer_missingBuffers_startsANewFrameFlaggedAsGap() {
+        SampleChannel channel = channel(60, 0, 4, OverflowPolicy.DROP_NEWEST);
+        channel.offer(packet(0, 10));
+        channel.offer(packet(10, 20));
+        // the buffers 2 and 3 did not reach java
+        channel.offer(packet(4, 40, 50));
+        channel.offer(packet(50, 100));
+        mainThread.runPosted();
+        assertEquals(2, messenger.frames.size());
+        assertEquals(0, frame(0).get(1));
+        assertEquals(2, frame(0).getInt(40));
+        assertArrayEquals(bytes(0, 20), payload(0));
+        ByteBuffer frame = frame(1);
+        assertEquals(SampleChannel.FLAG_GAP, frame.get(1));
+        assertEquals(4, frame.getLong(24));
+        assertEquals(20, frame.getLong(32));
+        assertEquals(2, frame.getInt(40));
+        assertArrayEquals(bytes(40, 100), payload(1));
+    }
+
+    @Test
+    public void offer_bufferSplitAcrossFrames_startsTheNextFrameWithinTheBuffer() {
+        SampleChannel channel = channel(100, 0, 4, OverflowPolicy.DROP_NEWEST);
+        channel.offer(packet(0, 60));
+        channel.offer(packet(60, 120));
+        channel.offer(packet(120, 200));
+        mainThread.runPosted();
+        assertEquals(2, messenger.frames.size());
+        assertEquals(2, frame(0).getInt(40));
+        // the second buffer is counted in the first frame only
+        assertEquals(1, frame(1).getInt(40));
+        assertEquals(1, frame(1).getLong(24));
+        assertEquals(50, frame(1).getLong(32));
+        assertArrayEquals(bytes(100, 200), payload(1));
+    }
+
+    @Test
+    public void offer_channelDisabled_handsThePayloadToTheListener() {
+        SampleChannel channel = channel(0, 0, 4, OverflowPolicy.DROP_NEWEST);
+        channel.setEnabled(false);
+        channel.offer(packet(0, 10));
+        mainThread.runPosted();
+        assertEquals(0, messenger.frames.size());
+        assertEquals(1, payloads.size());
+        assertArrayEquals(bytes(0, 10), payloads.get(0));
+    }
+
+    private SampleChannel channel(int maxBatchBytes, int maxBatchLatencyMs, int queueSize, OverflowPolicy overflowPolicy) {
+        SdrArguments sdrArguments = new SdrArguments(0, 0, 0, 0, 0);
+        sdrArguments.setMaxBatchBytes(maxBatchBytes);
+        sdrArguments.setMaxBatchLatencyMs(maxBatchLatencyMs);
+        sdrArguments.setQueueSize(queueSize);
+        sdrArguments.setOverflowPolicy(overflowPolicy);
+        SampleChannel channel = new SampleChannel(messenger, payload -> {
+            byte[] copy = new byte[payload.remaining()];
+            payload.duplicate().get(copy);
+            payloads.add(copy);
+        }, mainThread);
+        channel.configure(sdrArguments);
+        channel.setEnabled(true);
+        return channel;
+    }
+
+    /// the next usb buffer, its bytes are their index within the stream
+    private SamplePacket packet(int from, int to) {
+        return packet(nextSequence, from, to);
+    }
+
+    private SamplePacket packet(long sequence, int from, int to) {
+        SamplePacket packet = new SamplePacket(ByteBuffer.wrap(bytes(from, to)), p -> {
+        });
+        packet.setMetadata(sequence, from / 2, mainThread.now);
+        nextSequence = sequence + 1;
+        return packet;
+    }
+
+    private static byte[] bytes(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; ++i) {
+            bytes[i - from] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private ByteBuffer frame(int index) {
+        return ByteBuffer.wrap(messenger.frames.get(index)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private byte[] payload(int index) {
+        byte[] frame = messenger.frames.get(index);
+        return Arrays.copyOfRange(frame, SampleChannel.HEADER_SIZE, frame.length);
+    }
+
+    /// keeps a copy of the sent frames, the channel reuses them
+    private static class FakeMessenger implements BinaryMessenger {
+        final List<byte[]> frames = new ArrayList<>();
+
+        @Override
+        public void send(String channel, ByteBuffer message) {
+            assertEquals(SampleChannel.CHANNEL_NAME, channel);
+            // flutter sends the bytes up to the position
+            ByteBuffer source = message.duplicate();
+            byte[] copy = new byte[source.position()];
+            source.position(0);
+            source.get(copy);
+            frames.add(copy);
+        }
+
+        @Override
+        public void send(String channel, ByteBuffer message, BinaryReply callback) {
+            send(channel, message);
+        }
+
+        @Override
+        public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+        }
+    }
+
+    /// runs the tasks when the test asks for it
+    private static class FakeMainThread implements SampleChannel.MainThread {
+        final Queue<Runnable> posted = new ConcurrentLinkedQueue<>();
+
+        final Queue<Runnable> delayed = new ConcurrentLinkedQueue<>();
+
+        final List<Long> delays = new ArrayList<>();
+
+        volatile long now;
+
+        @Override
+        public void post(Runnable task) {
+            posted.add(task);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            delayed.add(task);
+            delays.add(delayMs);
+        }
+
+        @Override
+        public long elapsedRealtimeNanos() {
+            return now;
+        }
+
+        void runPosted() {
+            Runnable task;
+            while ((task = posted.poll()) != null) {
+                task.run();
+            }
+        }
+
+        void runDelayed() {
+            Runnable task;
+            while ((task = delayed.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class ChannelizerTest {
+
+    private static final long SAMPLERATE = 2400000;
+
+    @Test
+    public void process_packetsNotAlignedToTheDecimation_outputAtTheDecimatedRate() {
+        Channelizer channelizer = new Channelizer(SAMPLERATE, 0, 10, 0);
+        long outputs = 0;
+        for (int sequence = 0; sequence < 5; ++sequence) {
+            SamplePacket output = channelizer.process(tone(sequence, 1001, 0));
+            assertEquals(SampleFormat.CS16, output.getFormat());
+            // the index counts the output samples
+            assertEquals(outputs, output.getSampleIndex());
+            outputs += output.getBuffer().remaining() / SampleFormat.CS16.getBytesPerSample();
+        }
+        assertEquals(5 * 1001 / 10, outputs);
+    }
+
+    @Test
+    public void process_toneAtTheOffset_passesAndOtherTonesAreAttenuated() {
+        long offsetHz = 300000;
+        double inside = power(new Channelizer(SAMPLERATE, offsetHz, 10, 0), offsetHz + 10000);
+        double outside = power(new Channelizer(SAMPLERATE, offsetHz, 10, 0), offsetHz + 400000);
+        assertTrue("inside " + inside + ", outside " + outside, inside > 100 * outside);
+    }
+
+    /// the mean power of the output of the channelizer for a tone, without the settling of the filter
+    private static double power(Channelizer channelizer, long frequencyHz) {
+        double sum = 0;
+        int count = 0;
+        for (int sequence = 0; sequence < 4; ++sequence) {
+            ByteBuffer output = channelizer.process(tone(sequence, 16384, frequencyHz)).getBuffer();
+            if (sequence == 0) continue;
+            while (output.remaining() >= 4) {
+                double re = output.getShort();
+                double im = output.getShort();
+                sum += re * re + im * im;
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    /// unsigned 8 bit I/Q pairs of a complex tone, the packets of consecutive sequence numbers are continuous
+    private static SamplePacket tone(long sequence, int pairs, long frequencyHz) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * pairs);
+        for (int n = 0; n < pairs; ++n) {
+            double phase = 2 * Math.PI * frequencyHz * (sequence * pairs + n) / SAMPLERATE;
+            buffer.put((byte) Math.round(127.5 + 100 * Math.cos(phase)));
+            buffer.put((byte) Math.round(127.5 + 100 * Math.sin(phase)));
+        }
+        buffer.flip();
+        SamplePacket packet = new SamplePacket(buffer, p -> {});
+        packet.setMetadata(sequence, sequence * pairs, 0);
+        return packet;
+    }
+}
@@ -0,0 +1,61 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FftTest {
+
+    private static final int SIZE = 64;
+
+    @Test
+    public void transform_positiveTone_landsInItsBin() {
+        assertEquals(5, peakBin(tone(5)));
+    }
+
+    @Test
+    public void transform_negativeTone_landsInTheUpperHalf() {
+        assertEquals(SIZE - 3, peakBin(tone(-3)));
+    }
+
+    @Test
+    public void transform_tone_hasAllEnergyInOneBin() {
+        float[][] spectrum = tone(7);
+        new Fft(SIZE).transform(spectrum[0], spectrum[1]);
+        for (int bin = 0; bin < SIZE; ++bin) {
+            double magnitude = Math.hypot(spectrum[0][bin], spectrum[1][bin]);
+            assertEquals("bin " + bin, bin == 7 ? SIZE : 0, magnitude, 1e-3);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_sizeNotPowerOfTwo_throws() {
+        new Fft(48);
+    }
+
+    /// a complex tone with the given number of cycles per transform
+    private static float[][] tone(int cycles) {
+        float[] re = new float[SIZE];
+        float[] im = new float[SIZE];
+        for (int n = 0; n < SIZE; ++n) {
+            double phase = 2 * Math.PI * cycles * n / SIZE;
+            re[n] = (float) Math.cos(phase);
+            im[n] = (float) Math.sin(phase);
+        }
+        return new float[][]{re, im};
+    }
+
+    private static int peakBin(float[][] signal) {
+        new Fft(SIZE).transform(signal[0], signal[1]);
+        int peak = 0;
+        double max = -1;
+        for (int bin = 0; bin < SIZE; ++bin) {
+            double power = signal[0][bin] * signal[0][bin] + signal[1][bin] * signal[1][bin];
+            if (power > max) {
+                max = power;
+                peak = bin;
+            }
+        }
+        return peak;
+    }
+}
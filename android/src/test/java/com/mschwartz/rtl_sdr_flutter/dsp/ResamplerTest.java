@@ -0,0 +1,50 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ResamplerTest {
+
+    @Test
+    public void process_integerRatio_outputAtTheOutputRate() {
+        assertEquals(48000, outputs(240000, 48000, 24000), 1);
+    }
+
+    @Test
+    public void process_fractionalRatio_outputAtTheOutputRate() {
+        assertEquals(48000, outputs(250000, 48000, 1000), 1);
+    }
+
+    @Test
+    public void process_constantInput_keepsTheLevel() {
+        Resampler resampler = new Resampler(250000, 48000, 15000);
+        float[] input = new float[25000];
+        Arrays.fill(input, 1);
+        float[] output = new float[resampler.getMaxOutput(input.length)];
+        int count = resampler.process(input, input.length, output);
+        assertTrue(count > 100);
+        // the filter has settled after the first outputs
+        for (int n = count / 2; n < count; ++n) {
+            assertEquals(1, output[n], 0.01);
+        }
+    }
+
+    /// the number of outputs of one second of input, processed in chunks of the given size
+    private static int outputs(int inputRate, int outputRate, int chunk) {
+        Resampler resampler = new Resampler(inputRate, outputRate, 15000);
+        float[] input = new float[chunk];
+        float[] output = new float[resampler.getMaxOutput(chunk)];
+        int total = 0;
+        for (int done = 0; done < inputRate; done += chunk) {
+            int count = Math.min(chunk, inputRate - done);
+            int produced = resampler.process(input, count, output);
+            assertTrue(produced <= resampler.getMaxOutput(count));
+            total += produced;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,112 @@
+package com.mschwartz.rtl_sdr_flutter.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SquelchTest {
+
+    private static final int PACKET_SAMPLES = 100;
+
+    /// the first and the end index of each burst
+    private long[][] bursts;
+
+    private final List<Long> opened = new ArrayList<>();
+
+    /// sequence, sample index and number of samples of each output packet
+    private final List<long[]> outputs = new ArrayList<>();
+
+    private final List<byte[]> contents = new ArrayList<>();
+
+    @Test
+    public void process_burstsAcrossPackets_windowsReachAcrossTheBoundaries() {
+        // the pre windows reach into the previous packets, the post window of the first burst into the next one
+        run(new long[][]{{110, 170}, {415, 450}}, 5);
+        assertEquals(Arrays.asList(110L, 415L), opened);
+        assertOutputs(new long[][]{{0, 80, 120}, {1, 200, 11}, {3, 385, 106}});
+    }
+
+    @Test
+    public void process_burstWithinThePostWindow_continuesTheBurst() {
+        run(new long[][]{{110, 150}, {170, 180}}, 3);
+        assertEquals(Arrays.asList(110L), opened);
+        assertOutputs(new long[][]{{0, 80, 120}, {1, 200, 21}});
+    }
+
+    @Test
+    public void process_preWindowOfTheNextBurst_doesNotRepeatPassedSamples() {
+        run(new long[][]{{110, 150}, {200, 210}}, 3);
+        assertOutputs(new long[][]{{0, 80, 111}, {2, 191, 60}});
+    }
+
+    @Test
+    public void process_thresholdZero_passesThePacketUnchanged() {
+        bursts = new long[0][];
+        Squelch squelch = new Squelch(0, 0, 1, 1, 30, 40);
+        SamplePacket packet = packet(0);
+        List<SamplePacket> passed = new ArrayList<>();
+        squelch.process(packet, passed::add);
+        assertEquals(1, passed.size());
+        assertSame(packet, passed.get(0));
+    }
+
+    /// feeds the packets through a squelch with the threshold 50, attack and release of one sample, a pre window of
+    /// 30 and a post window of 40 samples
+    private void run(long[][] bursts, int packets) {
+        this.bursts = bursts;
+        Squelch squelch = new Squelch(50, 0, 1, 1, 30, 40);
+        squelch.setListener(opened::add);
+        for (int sequence = 0; sequence < packets; ++sequence) {
+            squelch.process(packet(sequence), output -> {
+                // the output packet is reused
+                ByteBuffer buffer = output.getBuffer();
+                byte[] samples = new byte[buffer.remaining()];
+                buffer.duplicate().get(samples);
+                outputs.add(new long[]{output.getSequence(), output.getSampleIndex(), samples.length});
+                contents.add(samples);
+            });
+        }
+    }
+
+    private void assertOutputs(long[][] expected) {
+        assertEquals(expected.length, outputs.size());
+        for (int k = 0; k < expected.length; ++k) {
+            assertEquals("sequence of " + k, expected[k][0], outputs.get(k)[0]);
+            assertEquals("index of " + k, expected[k][1], outputs.get(k)[1]);
+            assertEquals("samples of " + k, expected[k][2], outputs.get(k)[2]);
+            byte[] samples = contents.get(k);
+            for (int n = 0; n < samples.length; ++n) {
+                assertEquals("sample " + n + " of " + k, level(expected[k][1] + n), samples[n] & 0xFF);
+            }
+        }
+    }
+
+    /// the amplitude of a sample, above 100 within the bursts and below 40 between them
+    private int level(long index) {
+        for (long[] burst : bursts) {
+            if (index >= burst[0] && index < burst[1]) return (int) (100 + index % 50);
+        }
+        return (int) (index % 40);
+    }
+
+    private SamplePacket packet(long sequence) {
+        ByteBuffer buffer = ByteBuffer.allocate(PACKET_SAMPLES);
+        for (int n = 0; n < PACKET_SAMPLES; ++n) {
+            buffer.put((byte) level(sequence * PACKET_SAMPLES + n));
+        }
+        buffer.flip();
+        SamplePacket packet = new SamplePacket(buffer, p -> {});
+        packet.setFormat(SampleFormat.U8_AMPLITUDE);
+        packet.setMetadata(sequence, sequence * PACKET_SAMPLES, 0);
+        return packet;
+    }
+}
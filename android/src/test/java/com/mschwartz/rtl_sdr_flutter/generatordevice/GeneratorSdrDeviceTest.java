@@ -0,0 +1,41 @@
+package com.mschwartz.rtl_sdr_flutter.generatordevice;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+import com.mschwartz.rtl_sdr_flutter.modes.ModeSDecoder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GeneratorSdrDeviceTest {
+
+    private static final byte[] IDENTIFICATION = {
+            (byte) 0x8D, 0x48, 0x40, (byte) 0xD6, 0x20, 0x2C, (byte) 0xC3, 0x71, (byte) 0xC3, 0x2C, (byte) 0xE0, 0x57, 0x60, (byte) 0x98
+    };
+
+    @Test
+    public void createTable_modes_decodesEveryBurst() {
+        int pairs = 1 << 18;
+        byte[] table = GeneratorSdrDevice.createTable(GeneratorSignal.MODES, ModeSDecoder.SAMPLERATE, 0, 20, pairs);
+        List<byte[]> messages = new ArrayList<>();
+        ModeSDecoder decoder = new ModeSDecoder((message, length, sampleIndex, timestampNanos, signal, correctedBits) ->
+                messages.add(Arrays.copyOf(message, length)));
+        int packetBytes = 16 * 32 * 512;
+        for (int offset = 0; offset < table.length; offset += packetBytes) {
+            SamplePacket packet = new SamplePacket(ByteBuffer.wrap(table, offset, packetBytes).slice(), p -> {});
+            packet.setMetadata(offset / packetBytes, offset / 2, 0);
+            decoder.onSamples(packet);
+        }
+        // a burst every millisecond, the last one must fit completely
+        assertEquals(pairs / 2000, messages.size());
+        for (byte[] message : messages) {
+            assertArrayEquals(IDENTIFICATION, message);
+        }
+    }
+}
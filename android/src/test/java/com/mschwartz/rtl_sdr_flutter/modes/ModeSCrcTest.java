@@ -0,0 +1,42 @@
+package com.mschwartz.rtl_sdr_flutter.modes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ModeSCrcTest {
+
+    /// an ADS-B identification message (KLM1023) with a valid parity
+    static final byte[] IDENTIFICATION = {
+            (byte) 0x8D, 0x48, 0x40, (byte) 0xD6, 0x20, 0x2C, (byte) 0xC3, 0x71, (byte) 0xC3, 0x2C, (byte) 0xE0, 0x57, 0x60, (byte) 0x98
+    };
+
+    @Test
+    public void syndrome_validMessage_isZero() {
+        assertEquals(0, ModeSCrc.syndrome(IDENTIFICATION, 112));
+    }
+
+    @Test
+    public void errorBit_singleWrongBit_isFound() {
+        for (int bit = 5; bit < 112; ++bit) {
+            int syndrome = ModeSCrc.syndrome(flip(IDENTIFICATION, bit), 112);
+            assertTrue(syndrome != 0);
+            assertEquals("bit " + bit, bit, ModeSCrc.errorBit(syndrome, 112));
+        }
+    }
+
+    @Test
+    public void errorBit_wrongDownlinkFormat_isNotCorrected() {
+        for (int bit = 0; bit < 5; ++bit) {
+            int syndrome = ModeSCrc.syndrome(flip(IDENTIFICATION, bit), 112);
+            assertEquals("bit " + bit, -1, ModeSCrc.errorBit(syndrome, 112));
+        }
+    }
+
+    static byte[] flip(byte[] message, int bit) {
+        byte[] flipped = message.clone();
+        flipped[bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+        return flipped;
+    }
+}
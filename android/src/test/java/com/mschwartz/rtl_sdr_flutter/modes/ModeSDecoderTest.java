@@ -0,0 +1,127 @@
+package com.mschwartz.rtl_sdr_flutter.modes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+import com.mschwartz.rtl_sdr_flutter.devices.SamplePacket;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ModeSDecoderTest {
+
+    private static final int HIGH = 200;
+
+    private static final int LOW = 10;
+
+    /// the samples between two messages
+    private static final int SPACING = 300;
+
+    private static final int ADDRESS = 0x4840D6;
+
+    private final List<byte[]> messages = new ArrayList<>();
+
+    private final List<Integer> corrections = new ArrayList<>();
+
+    private final ModeSDecoder decoder = new ModeSDecoder((message, length, sampleIndex, timestampNanos, signal, correctedBits) -> {
+        messages.add(Arrays.copyOf(message, length));
+        corrections.add(correctedBits);
+    });
+
+    private long sampleIndex;
+
+    @Test
+    public void onSamples_validSquitter_isDecoded() {
+        feed(amplitudes(ModeSCrcTest.IDENTIFICATION));
+        assertEquals(1, messages.size());
+        assertArrayEquals(ModeSCrcTest.IDENTIFICATION, messages.get(0));
+        assertEquals(0, (int) corrections.get(0));
+    }
+
+    @Test
+    public void onSamples_squitterWithOneWrongBit_isCorrected() {
+        feed(amplitudes(ModeSCrcTest.flip(ModeSCrcTest.IDENTIFICATION, 60)));
+        assertEquals(1, messages.size());
+        assertArrayEquals(ModeSCrcTest.IDENTIFICATION, messages.get(0));
+        assertEquals(1, (int) corrections.get(0));
+        assertEquals(1, decoder.getCorrectedMessages());
+    }
+
+    @Test
+    public void onSamples_squitterWithWrongDownlinkFormat_isDropped() {
+        feed(amplitudes(ModeSCrcTest.flip(ModeSCrcTest.IDENTIFICATION, 4)));
+        assertEquals(0, messages.size());
+    }
+
+    @Test
+    public void onSamples_messageAcrossTwoPackets_isDecoded() {
+        int[] samples = amplitudes(ModeSCrcTest.IDENTIFICATION);
+        int split = SPACING + 100;
+        feed(Arrays.copyOfRange(samples, 0, split));
+        feed(Arrays.copyOfRange(samples, split, samples.length));
+        assertEquals(1, messages.size());
+        assertArrayEquals(ModeSCrcTest.IDENTIFICATION, messages.get(0));
+    }
+
+    @Test
+    public void onSamples_surveillanceReplyOfAKnownAddress_isDecoded() {
+        byte[] reply = addressParity(new byte[]{0x20, 0x00, 0x05, 0x18, 0, 0, 0}, ADDRESS);
+        feed(amplitudes(reply));
+        assertEquals(0, messages.size());
+        feed(amplitudes(ModeSCrcTest.IDENTIFICATION));
+        feed(amplitudes(reply));
+        assertEquals(2, messages.size());
+        assertArrayEquals(reply, messages.get(1));
+    }
+
+    @Test
+    public void onSamples_allCallReplyWithInterrogatorId_doesNotTeachTheAddress() {
+        // DF11 of the address with the interrogator id 5 in the parity
+        byte[] allCall = addressParity(new byte[]{0x5D, 0x48, 0x40, (byte) 0xD6, 0, 0, 0}, 5);
+        byte[] reply = addressParity(new byte[]{0x20, 0x00, 0x05, 0x18, 0, 0, 0}, ADDRESS);
+        feed(amplitudes(allCall));
+        feed(amplitudes(reply));
+        assertEquals(1, messages.size());
+        assertArrayEquals(allCall, messages.get(0));
+    }
+
+    /// sets the parity of the message so its syndrome is the value
+    private static byte[] addressParity(byte[] message, int value) {
+        int bits = 8 * message.length;
+        int parity = ModeSCrc.syndrome(message, bits) ^ value;
+        message[message.length - 3] = (byte) (parity >>> 16);
+        message[message.length - 2] = (byte) (parity >>> 8);
+        message[message.length - 1] = (byte) parity;
+        return message;
+    }
+
+    /// the magnitudes of the message at 2 MS/s, preceded and followed by quiet samples
+    private static int[] amplitudes(byte[] message) {
+        int[] samples = new int[SPACING + 16 + 16 * message.length + SPACING];
+        Arrays.fill(samples, LOW);
+        int p = SPACING;
+        // pulses at 0, 1, 3.5 and 4.5 us
+        samples[p] = samples[p + 2] = samples[p + 7] = samples[p + 9] = HIGH;
+        for (int bit = 0; bit < 8 * message.length; ++bit) {
+            boolean one = (message[bit / 8] & (0x80 >>> (bit % 8))) != 0;
+            samples[p + 16 + 2 * bit + (one ? 0 : 1)] = HIGH;
+        }
+        return samples;
+    }
+
+    private void feed(int[] samples) {
+        ByteBuffer buffer = ByteBuffer.allocate(samples.length);
+        for (int sample : samples) buffer.put((byte) sample);
+        buffer.flip();
+        SamplePacket packet = new SamplePacket(buffer, p -> {});
+        packet.setFormat(SampleFormat.U8_AMPLITUDE);
+        packet.setMetadata(0, sampleIndex, 0);
+        sampleIndex += samples.length;
+        decoder.onSamples(packet);
+    }
+}
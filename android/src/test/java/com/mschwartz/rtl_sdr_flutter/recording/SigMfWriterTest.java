@@ -0,0 +1,80 @@
+package com.mschwartz.rtl_sdr_flutter.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mschwartz.rtl_sdr_flutter.devices.SampleFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class SigMfWriterTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("recording", "." + SigMfWriter.EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void write_captureAndGap_writesTheGlobalCapturesAndAnnotations() throws IOException {
+        SigMfWriter writer = new SigMfWriter(new SigMfMetadata("rtl-sdr \"usb\"", 2048000, 100000000, 0, 3),
+                SampleFormat.CU8, "recording-0.cu8");
+        writer.addCapture(0, 100000000, 4096, 0);
+        writer.addAnnotation(1000, "gap", "5 packets \"lost\"\n");
+        String json = write(writer);
+        assertContains(json, "\"core:datatype\": \"cu8\",");
+        assertContains(json, "\"core:sample_rate\": 2048000,");
+        assertContains(json, "\"core:dataset\": \"recording-0.cu8\",");
+        assertContains(json, "\"core:hw\": \"rtl-sdr \\\"usb\\\"\",");
+        assertContains(json, "\"rtl_sdr_flutter:agc\": true,");
+        assertContains(json, "\"rtl_sdr_flutter:ppm\": 3\n");
+        assertContains(json, "\"captures\": [\n"
+                + "    {\"core:sample_start\": 0, \"core:frequency\": 100000000, \"core:global_index\": 4096,"
+                + " \"core:datetime\": \"1970-01-01T00:00:00.000Z\"}\n  ]");
+        // the quotes are escaped, the control characters written as unicode escapes
+        assertContains(json, "\"annotations\": [\n"
+                + "    {\"core:sample_start\": 1000, \"core:label\": \"gap\","
+                + " \"core:comment\": \"5 packets \\\"lost\\\"\\u000a\"}\n  ]");
+    }
+
+    @Test
+    public void write_manualGain_writesTheGainInDb() throws IOException {
+        SigMfWriter writer = new SigMfWriter(new SigMfMetadata("rtl-sdr", 1024000, 433920000, 297, 0),
+                SampleFormat.CU8, "recording-1.cu8");
+        writer.addCapture(0, 433920000, 0, 0);
+        String json = write(writer);
+        assertContains(json, "\"rtl_sdr_flutter:agc\": false,");
+        assertContains(json, "\"rtl_sdr_flutter:gain_db\": 29.7,");
+        assertContains(json, "\"annotations\": []");
+    }
+
+    @Test
+    public void datatype_eachFormat_returnsTheSigMfType() {
+        assertEquals("cu8", SigMfWriter.datatype(SampleFormat.CU8));
+        assertEquals("ru8", SigMfWriter.datatype(SampleFormat.U8_AMPLITUDE));
+        assertEquals("ci16_le", SigMfWriter.datatype(SampleFormat.CS16));
+        assertEquals("ri16_le", SigMfWriter.datatype(SampleFormat.PCM16));
+    }
+
+    private String write(SigMfWriter writer) throws IOException {
+        writer.write(file);
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void assertContains(String json, String expected) {
+        assertTrue("missing " + expected + " in " + json, json.contains(expected));
+    }
+}
@@ -0,0 +1,47 @@
+/// Counters of the data path of the device since the server was started, to tell a missing signal apart from data
+/// which was lost on the way to flutter.
+class DeviceMetrics {
+  /// number of buckets of [latencyHistogram]
+  static const int LATENCY_BUCKETS = 12;
+
+  final int receivedBytes;
+
+  final int receivedPackets;
+
+  final int deliveredBytes;
+
+  final int deliveredPackets;
+
+  /// number of packets of the device which were dropped completely or partially
+  final int droppedPackets;
+
+  /// the maximum number of packets which were waiting for the consumer at the same time
+  final int queueHighWater;
+
+  /// bucket i counts the packets delivered within less than 2^i milliseconds after they were received, the last
+  /// bucket everything above
+  final List<int> latencyHistogram;
+
+  final int configuredSamplerate;
+
+  /// the sample rate measured from the received bytes since [configuredSamplerate] was set
+  final int effectiveSamplerate;
+
+  DeviceMetrics.fromMap(Map<dynamic, dynamic> map)
+      : receivedBytes = map["receivedBytes"],
+        receivedPackets = map["receivedPackets"],
+        deliveredBytes = map["deliveredBytes"],
+        deliveredPackets = map["deliveredPackets"],
+        droppedPackets = map["droppedPackets"],
+        queueHighWater = map["queueHighWater"],
+        latencyHistogram = List<int>.from(map["latencyHistogram"]),
+        configuredSamplerate = map["configuredSamplerate"],
+        effectiveSamplerate = map["effectiveSamplerate"];
+
+  @override
+  String toString() {
+    return 'DeviceMetrics{received: $receivedBytes bytes/$receivedPackets packets, delivered: $deliveredBytes bytes/$deliveredPackets packets, '
+        'droppedPackets: $droppedPackets, queueHighWater: $queueHighWater, latencyHistogram: $latencyHistogram, '
+        'samplerate: $effectiveSamplerate/$configuredSamplerate}';
+  }
+}
@@ -0,0 +1,26 @@
+/// Statistics about the data which could not be delivered to flutter since the server was started.
+class DropStatistics {
+  /// number of packets of the device which were dropped completely or partially
+  final int droppedBuffers;
+
+  final int droppedBytes;
+
+  /// number of frames currently waiting to be sent
+  final int queued;
+
+  final int queueSize;
+
+  final String overflowPolicy;
+
+  DropStatistics.fromMap(Map<dynamic, dynamic> map)
+      : droppedBuffers = map["droppedBuffers"],
+        droppedBytes = map["droppedBytes"],
+        queued = map["queued"],
+        queueSize = map["queueSize"],
+        overflowPolicy = map["overflowPolicy"];
+
+  @override
+  String toString() {
+    return 'DropStatistics{droppedBuffers: $droppedBuffers, droppedBytes: $droppedBytes, queued: $queued/$queueSize, overflowPolicy: $overflowPolicy}';
+  }
+}
@@ -0,0 +1,55 @@
+import 'dart:typed_data';
+
+/// A Mode-S or ADS-B message decoded by the plugin, see [SdrArguments.modeS]. Only messages with a valid parity are
+/// sent.
+class ModeSMessage {
+  /// the 7 or 14 bytes of the message including the parity
+  final Uint8List data;
+
+  /// the mean magnitude of the preamble pulses, 0 to 255
+  final int signal;
+
+  /// number of bits corrected by the parity
+  final int correctedBits;
+
+  /// index of the first sample of the preamble within the stream of the device
+  final int sampleIndex;
+
+  /// the time in nanoseconds (android elapsedRealtimeNanos) when the preamble was received
+  final int timestampNanos;
+
+  ModeSMessage(this.data, this.signal, this.correctedBits, this.sampleIndex, this.timestampNanos);
+
+  /// the downlink format, e.g. 17 for ADS-B
+  int get downlinkFormat => data[0] >> 3;
+
+  /// the address of the aircraft for DF11, DF17 and DF18. The other formats carry it in the parity.
+  int get address => (data[1] << 16) | (data[2] << 8) | data[3];
+
+  /// the message as hex string like it is shown by dump1090
+  String get hex => data.map((b) => b.toRadixString(16).padLeft(2, '0')).join().toUpperCase();
+
+  /// parses the records of a "ModeS" event
+  static List<ModeSMessage> fromRecords(Uint8List records) {
+    ByteData view = ByteData.sublistView(records);
+    List<ModeSMessage> messages = [];
+    int offset = 0;
+    while (offset + 20 <= records.length) {
+      int length = view.getUint8(offset);
+      messages.add(ModeSMessage(
+        Uint8List.sublistView(records, offset + 20, offset + 20 + length),
+        view.getUint8(offset + 1),
+        view.getUint8(offset + 2),
+        view.getUint64(offset + 4, Endian.little),
+        view.getUint64(offset + 12, Endian.little),
+      ));
+      offset += 20 + length;
+    }
+    return messages;
+  }
+
+  @override
+  String toString() {
+    return 'ModeSMessage{$hex, signal: $signal, correctedBits: $correctedBits, sampleIndex: $sampleIndex}';
+  }
+}
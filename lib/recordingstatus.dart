@@ -0,0 +1,43 @@
+/// The state of a recording started with [RtlSdrFlutter.startRecording].
+class RecordingStatus {
+  /// false as soon as the recording was stopped or reached its limit
+  final bool recording;
+
+  /// the path of the segments without the number and the extension
+  final String prefix;
+
+  /// the paths of the segments written so far, prefix_0000.cu8, prefix_0001.cu8 and so on (.u8 for amplitudes)
+  /// each segment has its SigMF metadata in prefix_0000.sigmf-meta and so on
+  final List<String> segments;
+
+  /// the path of the sparse index, the segment and the byte offset of a sample at the start of each segment and
+  /// capture and every few million samples
+  final String index;
+
+  final int bytesWritten;
+
+  /// number of packets which were not recorded because the storage could not keep up
+  final int droppedPackets;
+
+  /// number of samples missing between the recorded packets, dropped by the driver or the recording, each gap is
+  /// annotated in the SigMF metadata
+  final int droppedSamples;
+
+  /// the reason why the recording failed, null if it did not fail
+  final String? error;
+
+  RecordingStatus.fromMap(Map<dynamic, dynamic> map)
+      : recording = map["recording"],
+        prefix = map["prefix"],
+        segments = List<String>.from(map["segments"]),
+        index = map["index"],
+        bytesWritten = map["bytesWritten"],
+        droppedPackets = map["droppedPackets"],
+        droppedSamples = map["droppedSamples"],
+        error = map["error"];
+
+  @override
+  String toString() {
+    return 'RecordingStatus{recording: $recording, prefix: $prefix, segments: ${segments.length}, bytesWritten: $bytesWritten, droppedPackets: $droppedPackets, droppedSamples: $droppedSamples, error: $error}';
+  }
+}
@@ -1,4 +1,11 @@
+import 'package:rtl_sdr_flutter/devicemetrics.dart';
+import 'package:rtl_sdr_flutter/dropstatistics.dart';
+import 'package:rtl_sdr_flutter/modesmessage.dart';
+import 'package:rtl_sdr_flutter/recordingstatus.dart';
+import 'package:rtl_sdr_flutter/sampleframe.dart';
 import 'package:rtl_sdr_flutter/sdrarguments.dart';
+import 'package:rtl_sdr_flutter/spectrum.dart';
+import 'package:rtl_sdr_flutter/triggercapturestatus.dart';
 
 import 'rtl_sdr_flutter_platform_interface.dart';
 
@@ -29,14 +36,40 @@ class RtlSdrFlutter {
     return RtlSdrFlutterPlatform.instance.stopService();
   }
 
+  /// Adds the generator devices ("generator tone", "generator chirp", "generator noise" and "generator modes") to
+  /// listDevices(). They produce test signals without hardware and are meant for benchmarks, so they are off by default.
+  Future<void> enableGeneratorDevices(bool enabled) {
+    return RtlSdrFlutterPlatform.instance.enableGeneratorDevices(enabled);
+  }
+
   /// Listens to the device. The stream returns a map with the following items:
-  ///  "event": "Data", "UsbAttached", "UsbDetached", "DeviceOpen", "DeviceClose"
+  ///  "event": "Data", "UsbAttached", "UsbDetached", "DeviceOpen", "DeviceClose", "Metrics", "Spectrum", "ModeS"
   /// "content": List<int>
   /// "length": length of the content
+  /// The "Metrics" event contains the fields of [DeviceMetrics] if [SdrArguments.metricsIntervalMs] is set.
   Stream<Map<String, dynamic>> listen() {
     return RtlSdrFlutterPlatform.instance.listen();
   }
 
+  /// Listens to the samples via the binary sample channel. While listening the "Data" events are no longer
+  /// sent to [listen], the other events are not affected. Each frame carries a sequence number and a timestamp,
+  /// see [SampleFrame].
+  Stream<SampleFrame> listenSamples() {
+    return RtlSdrFlutterPlatform.instance.listenSamples();
+  }
+
+  /// Listens to the spectra computed by the plugin if [SdrArguments.spectrumFftSize] is set. The spectra are taken
+  /// from the "Spectrum" events of [listen], which may be listened to at the same time.
+  Stream<Spectrum> listenSpectrum() {
+    return RtlSdrFlutterPlatform.instance.listenSpectrum();
+  }
+
+  /// Listens to the Mode-S and ADS-B messages decoded by the plugin if [SdrArguments.modeS] is set. The messages
+  /// are taken from the "ModeS" events of [listen], which carry the messages of about 50 ms each.
+  Stream<ModeSMessage> listenModeS() {
+    return RtlSdrFlutterPlatform.instance.listenModeS();
+  }
+
   /// Stops the server
   Future<void> stopServer(String name) {
     return RtlSdrFlutterPlatform.instance.stopServer(name);
@@ -72,10 +105,9 @@ class RtlSdrFlutter {
     return RtlSdrFlutterPlatform.instance.getTunergain();
   }
 
-  /// Sets the margin for the received data. If margin is not zero, packets will
-  /// be trimmed by amplitudes not exceeding the margin (e.g. with margin == 1
-  /// the leading and trailing bytes where the value is -1, 0 or +1 will be trimmed).
-  /// This could save cpu since the trimming is done in C++
+  /// Sets the threshold of the squelch while the device is running, see [SdrArguments.squelchThreshold]. If margin
+  /// is not zero only the bursts whose magnitude exceeds the margin are sent, the attack, release and trigger
+  /// windows of the [SdrArguments] apply.
   Future<void> setMargin(int margin) async {
     return RtlSdrFlutterPlatform.instance.setMargin(margin);
   }
@@ -97,4 +129,75 @@ class RtlSdrFlutter {
   Future<void> setAmplitude(bool on) async {
     return RtlSdrFlutterPlatform.instance.setAmplitude(on);
   }
+
+  /// Returns the number of buffers and bytes which were dropped because flutter could not keep up
+  Future<DropStatistics> getDropStatistics() async {
+    return RtlSdrFlutterPlatform.instance.getDropStatistics();
+  }
+
+  /// Suggests [SdrArguments.asyncBufferCount] and [SdrArguments.asyncBufferLength] for a rtl-sdr device. One buffer
+  /// holds about [targetLatencyMs] of samples, enough buffers are kept in flight to bridge about half a second.
+  /// The map contains the keys "asyncBufferCount" and "asyncBufferLength".
+  Future<Map<String, int>> suggestAsyncBuffers(int samplerateHz, int targetLatencyMs) async {
+    return RtlSdrFlutterPlatform.instance.suggestAsyncBuffers(samplerateHz, targetLatencyMs);
+  }
+
+  /// Returns the received, delivered and dropped data of the device, the latency of the delivery and the effective
+  /// sample rate
+  Future<DeviceMetrics> getMetrics() async {
+    return RtlSdrFlutterPlatform.instance.getMetrics();
+  }
+
+  /// Demodulates the channel at [offsetHz] from the center frequency and sends 16 bit audio at 48 kHz to
+  /// [listenSamples] instead of the samples, without reopening the device. [DemodulatorMode.OFF] sends the samples
+  /// again. [deemphasisUs] is the time constant of the FM de-emphasis, zero turns it off.
+  Future<void> setDemodulator(DemodulatorMode mode,
+      {int offsetHz = 0, int deemphasisUs = SdrArguments.DEFAULT_DEEMPHASIS_US}) async {
+    return RtlSdrFlutterPlatform.instance.setDemodulator(mode, offsetHz, deemphasisUs);
+  }
+
+  /// Records the raw samples of the device on the phone, without sending them through flutter. The samples are
+  /// written into files of [segmentBytes] each, see [RecordingStatus.segments]. [prefix] is the path of the files
+  /// without the number and the extension, by default a new name in the directory "recordings" of the app files.
+  /// The recording stops itself after [maxBytes] or [maxDurationMs], zero means no limit. A running recording is
+  /// stopped first. Returns the prefix.
+  Future<String> startRecording(
+      {String? prefix, int segmentBytes = 64 * 1024 * 1024, int maxBytes = 0, int maxDurationMs = 0}) async {
+    return RtlSdrFlutterPlatform.instance.startRecording(prefix, segmentBytes, maxBytes, maxDurationMs);
+  }
+
+  /// Stops the recording and returns its final state, null if no recording was started
+  Future<RecordingStatus?> stopRecording() async {
+    return RtlSdrFlutterPlatform.instance.stopRecording();
+  }
+
+  /// Returns the state of the last recording, null if no recording was started
+  Future<RecordingStatus?> getRecordingStatus() async {
+    return RtlSdrFlutterPlatform.instance.getRecordingStatus();
+  }
+
+  /// Keeps the last [preTriggerMs] of the raw samples in a circular buffer on the phone and writes them to disk
+  /// together with the following [postTriggerMs] when [trigger] is called or, if [squelchTrigger] is set, whenever
+  /// the squelch opens. The squelch only runs while the samples are sent to flutter. A trigger during a dump extends
+  /// it. [prefix] is the path of the dumps without the number and the extension, by default a new name in the
+  /// directory "recordings" of the app files. A running trigger capture is stopped first. Returns the prefix.
+  Future<String> startTriggerCapture(
+      {String? prefix, int preTriggerMs = 10000, int postTriggerMs = 5000, bool squelchTrigger = false}) async {
+    return RtlSdrFlutterPlatform.instance.startTriggerCapture(prefix, preTriggerMs, postTriggerMs, squelchTrigger);
+  }
+
+  /// Dumps the samples around the newest one and returns the path of the dump, null if no trigger capture is running
+  Future<String?> trigger() async {
+    return RtlSdrFlutterPlatform.instance.trigger();
+  }
+
+  /// Completes the running dump, releases the buffer and returns the final state, null if none was started
+  Future<TriggerCaptureStatus?> stopTriggerCapture() async {
+    return RtlSdrFlutterPlatform.instance.stopTriggerCapture();
+  }
+
+  /// Returns the state of the last trigger capture, null if none was started
+  Future<TriggerCaptureStatus?> getTriggerCaptureStatus() async {
+    return RtlSdrFlutterPlatform.instance.getTriggerCaptureStatus();
+  }
 }
@@ -1,6 +1,15 @@
+import 'dart:async';
+
 import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
+import 'package:rtl_sdr_flutter/devicemetrics.dart';
+import 'package:rtl_sdr_flutter/dropstatistics.dart';
+import 'package:rtl_sdr_flutter/modesmessage.dart';
+import 'package:rtl_sdr_flutter/recordingstatus.dart';
+import 'package:rtl_sdr_flutter/sampleframe.dart';
 import 'package:rtl_sdr_flutter/sdrarguments.dart';
+import 'package:rtl_sdr_flutter/spectrum.dart';
+import 'package:rtl_sdr_flutter/triggercapturestatus.dart';
 
 import 'rtl_sdr_flutter_platform_interface.dart';
 
@@ -12,6 +21,14 @@ class MethodChannelRtlSdrFlutter extends RtlSdrFlutterPlatform {
 
   final streamChannel = const EventChannel('rtl_sdr_flutter_stream');
 
+  static const String sampleChannelName = 'rtl_sdr_flutter_samples';
+
+  /// The events of the device. All listeners share one subscription of the event channel, a second call of
+  /// receiveBroadcastStream would cancel the stream of the first one on the native side.
+  late final Stream<Map<String, dynamic>> _events = streamChannel
+      .receiveBroadcastStream()
+      .map<Map<String, dynamic>>((element) => Map<String, dynamic>.from(element));
+
   @override
   Future<List<String>?> listDevices() async {
     return await methodChannel.invokeListMethod("listDevices");
@@ -25,6 +42,43 @@ class MethodChannelRtlSdrFlutter extends RtlSdrFlutterPlatform {
     map["ppm"] = sdrArguments.ppm;
     map["samplerateHz"] = sdrArguments.samplerateHz;
     map["amplitude"] = sdrArguments.amplitudes ? 1 : 0;
+    map["bufferPoolSize"] = sdrArguments.bufferPoolSize;
+    map["maxBatchBytes"] = sdrArguments.maxBatchBytes;
+    map["maxBatchLatencyMs"] = sdrArguments.maxBatchLatencyMs;
+    map["queueSize"] = sdrArguments.queueSize;
+    map["overflowPolicy"] = sdrArguments.overflowPolicy.name;
+    map["hackrfUsbRequests"] = sdrArguments.hackrfUsbRequests;
+    map["hackrfTransferSize"] = sdrArguments.hackrfTransferSize;
+    map["hackrfBufferTimeMs"] = sdrArguments.hackrfBufferTimeMs;
+    map["tcpServer"] = sdrArguments.tcpServer;
+    map["tcpAddress"] = sdrArguments.tcpAddress;
+    map["tcpPort"] = sdrArguments.tcpPort;
+    map["signedSamples"] = sdrArguments.signedSamples;
+    map["tcpMaxClients"] = sdrArguments.tcpMaxClients;
+    map["tcpClientQueueSize"] = sdrArguments.tcpClientQueueSize;
+    map["asyncBufferCount"] = sdrArguments.asyncBufferCount;
+    map["asyncBufferLength"] = sdrArguments.asyncBufferLength;
+    map["metricsIntervalMs"] = sdrArguments.metricsIntervalMs;
+    map["sendSamples"] = sdrArguments.sendSamples;
+    map["spectrumFftSize"] = sdrArguments.spectrumFftSize;
+    map["spectrumAverages"] = sdrArguments.spectrumAverages;
+    map["spectrumWindow"] = sdrArguments.spectrumWindow.name;
+    map["channelDecimation"] = sdrArguments.channelDecimation;
+    map["channelOffsetHz"] = sdrArguments.channelOffsetHz;
+    map["channelTaps"] = sdrArguments.channelTaps;
+    map["demodulator"] = sdrArguments.demodulator.name;
+    map["deemphasisUs"] = sdrArguments.deemphasisUs;
+    map["modeS"] = sdrArguments.modeS;
+    map["squelchThreshold"] = sdrArguments.squelchThreshold;
+    map["squelchHysteresis"] = sdrArguments.squelchHysteresis;
+    map["squelchAttack"] = sdrArguments.squelchAttack;
+    map["squelchRelease"] = sdrArguments.squelchRelease;
+    map["squelchPreTrigger"] = sdrArguments.squelchPreTrigger;
+    map["squelchPostTrigger"] = sdrArguments.squelchPostTrigger;
+    map["replayPaced"] = sdrArguments.replayPaced;
+    map["replayLoop"] = sdrArguments.replayLoop;
+    map["generatorSnrDb"] = sdrArguments.generatorSnrDb;
+    map["generatorOffsetHz"] = sdrArguments.generatorOffsetHz;
     return await methodChannel.invokeMethod("startServer", [name, map]);
   }
 
@@ -43,9 +97,45 @@ class MethodChannelRtlSdrFlutter extends RtlSdrFlutterPlatform {
     await methodChannel.invokeMethod("stopService");
   }
 
+  @override
+  Future<void> enableGeneratorDevices(bool enabled) async {
+    await methodChannel.invokeMethod("enableGeneratorDevices", enabled ? 1 : 0);
+  }
+
   @override
   Stream<Map<String, dynamic>> listen() {
-    return streamChannel.receiveBroadcastStream().map<Map<String, dynamic>>((element) => Map<String, dynamic>.from(element));
+    return _events;
+  }
+
+  @override
+  Stream<Spectrum> listenSpectrum() {
+    return _events.where((event) => event["event"] == "Spectrum").map((event) => Spectrum.fromMap(event));
+  }
+
+  @override
+  Stream<ModeSMessage> listenModeS() {
+    return _events
+        .where((event) => event["event"] == "ModeS")
+        .expand((event) => ModeSMessage.fromRecords(event["records"]));
+  }
+
+  @override
+  Stream<SampleFrame> listenSamples() {
+    late StreamController<SampleFrame> controller;
+    controller = StreamController<SampleFrame>(
+      onListen: () {
+        ServicesBinding.instance.defaultBinaryMessenger.setMessageHandler(sampleChannelName, (ByteData? data) async {
+          if (data != null) controller.add(SampleFrame.fromByteData(data));
+          return null;
+        });
+        methodChannel.invokeMethod("enableSampleChannel", 1);
+      },
+      onCancel: () {
+        methodChannel.invokeMethod("enableSampleChannel", 0);
+        ServicesBinding.instance.defaultBinaryMessenger.setMessageHandler(sampleChannelName, null);
+      },
+    );
+    return controller.stream;
   }
 
   @override
@@ -107,4 +197,64 @@ class MethodChannelRtlSdrFlutter extends RtlSdrFlutterPlatform {
   Future<void> setAmplitude(bool on) async {
     await methodChannel.invokeMethod("setAmplitude", on ? 1 : 0);
   }
+
+  @override
+  Future<DropStatistics> getDropStatistics() async {
+    return DropStatistics.fromMap(await methodChannel.invokeMethod("getDropStatistics"));
+  }
+
+  @override
+  Future<Map<String, int>> suggestAsyncBuffers(int samplerateHz, int targetLatencyMs) async {
+    Map map = await methodChannel.invokeMethod("suggestAsyncBuffers", [samplerateHz, targetLatencyMs]);
+    return Map<String, int>.from(map);
+  }
+
+  @override
+  Future<DeviceMetrics> getMetrics() async {
+    return DeviceMetrics.fromMap(await methodChannel.invokeMethod("getMetrics"));
+  }
+
+  @override
+  Future<void> setDemodulator(DemodulatorMode mode, int offsetHz, int deemphasisUs) async {
+    await methodChannel.invokeMethod("setDemodulator", [mode.name, offsetHz, deemphasisUs]);
+  }
+
+  @override
+  Future<String> startRecording(String? prefix, int segmentBytes, int maxBytes, int maxDurationMs) async {
+    return await methodChannel.invokeMethod("startRecording", [prefix, segmentBytes, maxBytes, maxDurationMs]);
+  }
+
+  @override
+  Future<RecordingStatus?> stopRecording() async {
+    Map? map = await methodChannel.invokeMethod("stopRecording");
+    return map == null ? null : RecordingStatus.fromMap(map);
+  }
+
+  @override
+  Future<RecordingStatus?> getRecordingStatus() async {
+    Map? map = await methodChannel.invokeMethod("getRecordingStatus");
+    return map == null ? null : RecordingStatus.fromMap(map);
+  }
+
+  @override
+  Future<String> startTriggerCapture(String? prefix, int preTriggerMs, int postTriggerMs, bool squelchTrigger) async {
+    return await methodChannel.invokeMethod("startTriggerCapture", [prefix, preTriggerMs, postTriggerMs, squelchTrigger]);
+  }
+
+  @override
+  Future<String?> trigger() async {
+    return await methodChannel.invokeMethod("trigger");
+  }
+
+  @override
+  Future<TriggerCaptureStatus?> stopTriggerCapture() async {
+    Map? map = await methodChannel.invokeMethod("stopTriggerCapture");
+    return map == null ? null : TriggerCaptureStatus.fromMap(map);
+  }
+
+  @override
+  Future<TriggerCaptureStatus?> getTriggerCaptureStatus() async {
+    Map? map = await methodChannel.invokeMethod("getTriggerCaptureStatus");
+    return map == null ? null : TriggerCaptureStatus.fromMap(map);
+  }
 }
@@ -1,5 +1,12 @@
 import 'package:plugin_platform_interface/plugin_platform_interface.dart';
+import 'package:rtl_sdr_flutter/devicemetrics.dart';
+import 'package:rtl_sdr_flutter/dropstatistics.dart';
+import 'package:rtl_sdr_flutter/modesmessage.dart';
+import 'package:rtl_sdr_flutter/recordingstatus.dart';
+import 'package:rtl_sdr_flutter/sampleframe.dart';
 import 'package:rtl_sdr_flutter/sdrarguments.dart';
+import 'package:rtl_sdr_flutter/spectrum.dart';
+import 'package:rtl_sdr_flutter/triggercapturestatus.dart';
 
 import 'rtl_sdr_flutter_method_channel.dart';
 
@@ -47,11 +54,31 @@ abstract class RtlSdrFlutterPlatform extends PlatformInterface {
     throw UnimplementedError();
   }
 
+  /// Adds the generator devices to the device list or removes them again
+  Future<void> enableGeneratorDevices(bool enabled) {
+    throw UnimplementedError();
+  }
+
   /// listen for events from the device
   Stream<Map<String, dynamic>> listen() {
     throw UnimplementedError();
   }
 
+  /// listen for the samples on the binary sample channel
+  Stream<SampleFrame> listenSamples() {
+    throw UnimplementedError();
+  }
+
+  /// listen for the spectra of the device
+  Stream<Spectrum> listenSpectrum() {
+    throw UnimplementedError();
+  }
+
+  /// listen for the Mode-S and ADS-B messages of the device
+  Stream<ModeSMessage> listenModeS() {
+    throw UnimplementedError();
+  }
+
   Future<void> stopServer(String name) {
     throw UnimplementedError();
   }
@@ -99,4 +126,48 @@ abstract class RtlSdrFlutterPlatform extends PlatformInterface {
   Future<void> setAmplitude(bool on) async {
     throw UnimplementedError();
   }
+
+  Future<DropStatistics> getDropStatistics() async {
+    throw UnimplementedError();
+  }
+
+  Future<Map<String, int>> suggestAsyncBuffers(int samplerateHz, int targetLatencyMs) async {
+    throw UnimplementedError();
+  }
+
+  Future<DeviceMetrics> getMetrics() async {
+    throw UnimplementedError();
+  }
+
+  Future<void> setDemodulator(DemodulatorMode mode, int offsetHz, int deemphasisUs) async {
+    throw UnimplementedError();
+  }
+
+  Future<String> startRecording(String? prefix, int segmentBytes, int maxBytes, int maxDurationMs) async {
+    throw UnimplementedError();
+  }
+
+  Future<RecordingStatus?> stopRecording() async {
+    throw UnimplementedError();
+  }
+
+  Future<RecordingStatus?> getRecordingStatus() async {
+    throw UnimplementedError();
+  }
+
+  Future<String> startTriggerCapture(String? prefix, int preTriggerMs, int postTriggerMs, bool squelchTrigger) async {
+    throw UnimplementedError();
+  }
+
+  Future<String?> trigger() async {
+    throw UnimplementedError();
+  }
+
+  Future<TriggerCaptureStatus?> stopTriggerCapture() async {
+    throw UnimplementedError();
+  }
+
+  Future<TriggerCaptureStatus?> getTriggerCaptureStatus() async {
+    throw UnimplementedError();
+  }
 }
@@ -0,0 +1,77 @@
+import 'dart:typed_data';
+
+/// One frame received via the binary sample channel. See SampleChannel.java for the layout.
+class SampleFrame {
+  static const int FLAG_DISCONTINUITY = 1;
+  static const int FLAG_GAP = 2;
+
+  /// unsigned 8 bit I/Q pairs with an offset of 127.5
+  static const int FORMAT_CU8 = 0;
+
+  /// unsigned 8 bit amplitudes
+  static const int FORMAT_U8_AMPLITUDE = 1;
+
+  /// signed 16 bit little endian I/Q pairs, e.g. the output of the channelizer
+  static const int FORMAT_CS16 = 2;
+
+  /// signed 16 bit little endian mono audio
+  static const int FORMAT_PCM16 = 3;
+
+  /// the flags of the frame, see FLAG_xxx
+  final int flags;
+
+  /// sequence number of the frame, increases by one for each frame
+  final int sequence;
+
+  /// the time in nanoseconds (android elapsedRealtimeNanos) when the usb buffer of the first payload was received
+  final int timestampNanos;
+
+  /// sequence number of the usb buffer of the first payload. The usb buffers of a frame are consecutive.
+  final int bufferSequence;
+
+  /// index of the first sample of the payload within the stream of the device
+  final int sampleIndex;
+
+  /// number of usb buffers which start in the payload, a buffer split across two frames counts in the first one
+  final int bufferCount;
+
+  /// the format of the payload, see FORMAT_xxx
+  final int format;
+
+  /// the payload, I/Q pairs or amplitudes depending on the SdrArguments
+  final Uint8List content;
+
+  SampleFrame({
+    required this.flags,
+    required this.sequence,
+    required this.timestampNanos,
+    required this.bufferSequence,
+    required this.sampleIndex,
+    required this.bufferCount,
+    required this.format,
+    required this.content,
+  });
+
+  /// true if at least one frame before this one has been dropped
+  bool get discontinuity => (flags & FLAG_DISCONTINUITY) != 0;
+
+  /// true if usb buffers of the device between the previous frame and this one never reached the plugin, e.g.
+  /// because they were dropped by the driver, or removed between two bursts by the squelch
+  bool get gap => (flags & FLAG_GAP) != 0;
+
+  /// parses the binary message. The payload is not copied.
+  factory SampleFrame.fromByteData(ByteData data) {
+    int headerSize = data.getUint16(2, Endian.little);
+    int length = data.getUint32(4, Endian.little);
+    return SampleFrame(
+      flags: data.getUint8(1),
+      sequence: data.getUint64(8, Endian.little),
+      timestampNanos: data.getUint64(16, Endian.little),
+      bufferSequence: data.getUint64(24, Endian.little),
+      sampleIndex: data.getUint64(32, Endian.little),
+      bufferCount: data.getUint32(40, Endian.little),
+      format: data.getUint8(44),
+      content: data.buffer.asUint8List(data.offsetInBytes + headerSize, length),
+    );
+  }
+}
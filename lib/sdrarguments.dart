@@ -18,11 +18,82 @@
  *  aint with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+/// what happens to new data if flutter falls behind and [SdrArguments.queueSize] frames are waiting
+enum OverflowPolicy {
+  /// the oldest waiting frame is discarded
+  DROP_OLDEST,
+
+  /// the new data is discarded
+  DROP_NEWEST,
+
+  /// the device waits until flutter consumed a frame
+  BLOCK,
+}
+
+/// the window applied to each frame before the FFT of the spectrum, see [SdrArguments.spectrumWindow]
+enum WindowType {
+  RECTANGULAR,
+  HANN,
+  HAMMING,
+
+  /// 4 term Blackman-Harris, side lobes below -92 dB
+  BLACKMAN_HARRIS,
+}
+
+/// the modulation of the channel which is demodulated to audio, see [SdrArguments.demodulator]
+enum DemodulatorMode {
+  /// no demodulation, the samples are sent as I/Q pairs
+  OFF,
+
+  /// broadcast FM, 75 kHz deviation
+  WFM,
+
+  /// narrow band FM, 5 kHz deviation
+  NFM,
+  AM,
+
+  /// upper side band, 0 to 3 kHz above the channel frequency
+  USB,
+
+  /// lower side band, 0 to 3 kHz below the channel frequency
+  LSB,
+}
+
 class SdrArguments {
   static const int DEFAULT_GAIN = 0;
   static const int DEFAULT_PPM = 0;
   static const int DEFAULT_FREQUENCY = 100000000;
   static const int DEFAULT_SAMPLING_RATE = 2048000;
+  static const int DEFAULT_BUFFER_POOL_SIZE = 0;
+  static const int DEFAULT_MAX_BATCH_BYTES = 0;
+  static const int DEFAULT_MAX_BATCH_LATENCY_MS = 20;
+  static const int DEFAULT_QUEUE_SIZE = 8;
+  static const OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_NEWEST;
+  static const int DEFAULT_HACKRF_USB_REQUESTS = 4;
+  static const int DEFAULT_HACKRF_TRANSFER_SIZE = 16 * 1024;
+  static const int DEFAULT_HACKRF_BUFFER_TIME_MS = 100;
+  static const String DEFAULT_TCP_ADDRESS = "localhost";
+  static const int DEFAULT_TCP_PORT = 7777;
+  static const int DEFAULT_TCP_MAX_CLIENTS = 4;
+  static const int DEFAULT_TCP_CLIENT_QUEUE_SIZE = 64;
+  static const int DEFAULT_ASYNC_BUFFER_COUNT = 0;
+  static const int DEFAULT_ASYNC_BUFFER_LENGTH = 0;
+  static const int DEFAULT_METRICS_INTERVAL_MS = 0;
+  static const int DEFAULT_SPECTRUM_FFT_SIZE = 0;
+  static const int DEFAULT_SPECTRUM_AVERAGES = 8;
+  static const WindowType DEFAULT_SPECTRUM_WINDOW = WindowType.HANN;
+  static const int DEFAULT_CHANNEL_DECIMATION = 1;
+  static const int DEFAULT_CHANNEL_TAPS = 0;
+  static const DemodulatorMode DEFAULT_DEMODULATOR = DemodulatorMode.OFF;
+  static const int DEFAULT_DEEMPHASIS_US = 50;
+  static const int DEFAULT_SQUELCH_THRESHOLD = 0;
+  static const int DEFAULT_SQUELCH_HYSTERESIS = 0;
+  static const int DEFAULT_SQUELCH_ATTACK = 1;
+  static const int DEFAULT_SQUELCH_RELEASE = 64;
+  static const int DEFAULT_SQUELCH_PRE_TRIGGER = 0;
+  static const int DEFAULT_SQUELCH_POST_TRIGGER = 0;
+  static const int DEFAULT_GENERATOR_SNR_DB = 20;
+  static const int DEFAULT_GENERATOR_OFFSET_HZ = 100000;
 
   /// gain mode: 0=automatic, else gain in /10th of dB, e.g. 24 = 2.4dB
   final int gain;
@@ -39,11 +110,176 @@ class SdrArguments {
   /// true if amplitudes should be sent. Default is false (I/Q pairs)
   final bool amplitudes;
 
+  /// number of direct buffers the native driver fills with the received data. Zero means that a new buffer
+  /// is allocated for every packet.
+  final int bufferPoolSize;
+
+  /// packets are collected until this number of bytes is reached before they are sent to flutter, e.g. 65536.
+  /// Zero sends every packet on its own.
+  final int maxBatchBytes;
+
+  /// the maximum time in milliseconds a packet waits for further packets if [maxBatchBytes] is set. Zero waits
+  /// until [maxBatchBytes] is reached.
+  final int maxBatchLatencyMs;
+
+  /// the maximum number of frames waiting to be sent to flutter
+  final int queueSize;
+
+  /// what happens to new data if [queueSize] frames are waiting
+  final OverflowPolicy overflowPolicy;
+
+  /// number of usb requests a HackRF keeps in flight. More requests tolerate longer scheduling delays of the phone.
+  final int hackrfUsbRequests;
+
+  /// size of each usb transfer of a HackRF in bytes, a multiple of 512. Bigger transfers need less cpu, smaller
+  /// transfers lower the latency.
+  final int hackrfTransferSize;
+
+  /// the time in milliseconds of samples a HackRF buffers. Must hold at least two transfers at the sample rate.
+  final int hackrfBufferTimeMs;
+
+  /// true if a rtl-sdr device serves its samples to rtl_tcp clients in addition to flutter. HackRF devices always
+  /// serve via tcp.
+  final bool tcpServer;
+
+  /// the address the rtl_tcp server binds to, e.g. "0.0.0.0" to accept clients of other hosts
+  final String tcpAddress;
+
+  /// the port of the rtl_tcp server for devices which serve their samples via tcp
+  final int tcpPort;
+
+  /// true if a HackRF sends its signed 8 bit samples to the tcp clients as they are. By default they are converted
+  /// to unsigned samples like the ones of a rtl-sdr dongle.
+  final bool signedSamples;
+
+  /// the maximum number of clients connected to the rtl_tcp server at the same time
+  final int tcpMaxClients;
+
+  /// the number of packets queued per client of the rtl_tcp server. Further packets are dropped for this client.
+  final int tcpClientQueueSize;
+
+  /// number of usb transfers librtlsdr keeps in flight for a rtl-sdr device. Zero uses the default of librtlsdr (15).
+  /// See [RtlSdrFlutter.suggestAsyncBuffers].
+  final int asyncBufferCount;
+
+  /// size of each usb transfer of a rtl-sdr device in bytes, a multiple of 512. Smaller buffers lower the latency,
+  /// bigger buffers need less cpu. Zero uses the default of librtlsdr (256 KiB).
+  final int asyncBufferLength;
+
+  /// the interval in milliseconds the metrics of the device are sent as "Metrics" event to [RtlSdrFlutter.listen].
+  /// Zero sends them only on request, see [RtlSdrFlutter.getMetrics].
+  final int metricsIntervalMs;
+
+  /// false if the samples are not sent to flutter, e.g. if only the spectrum is needed
+  final bool sendSamples;
+
+  /// number of bins of the spectrum which is computed from the I/Q samples and sent as "Spectrum" event, a power of
+  /// two between 16 and 65536. Zero computes no spectrum. See [RtlSdrFlutter.listenSpectrum].
+  final int spectrumFftSize;
+
+  /// number of frames which are averaged for one spectrum
+  final int spectrumAverages;
+
+  final WindowType spectrumWindow;
+
+  /// the samples sent to flutter are reduced to a channel at [channelOffsetHz] from the center frequency and
+  /// [samplerateHz] / [channelDecimation], as signed 16 bit I/Q pairs (see [SampleFrame.format]). One sends the
+  /// samples of the device as they are.
+  final int channelDecimation;
+
+  /// the center of the channel relative to the center frequency of the device
+  final int channelOffsetHz;
+
+  /// number of taps of the channel filter, zero chooses 8 taps per decimation
+  final int channelTaps;
+
+  /// the channel at [channelOffsetHz] is demodulated and sent to flutter as 16 bit audio at 48 kHz
+  /// ([SampleFrame.FORMAT_PCM16]) instead of the samples, see [RtlSdrFlutter.setDemodulator]
+  final DemodulatorMode demodulator;
+
+  /// time constant of the FM de-emphasis in microseconds, 50 in Europe and 75 in America, zero turns it off
+  final int deemphasisUs;
+
+  /// decodes Mode-S and ADS-B messages and sends them as "ModeS" event, see [RtlSdrFlutter.listenModeS]. Needs
+  /// [samplerateHz] 2000000, together with [sendSamples] false only the messages are sent.
+  final bool modeS;
+
+  /// only the bursts whose magnitude (0 to 255) exceeds this threshold are sent to flutter, zero sends everything.
+  /// Works for I/Q pairs and amplitudes, can be changed with [RtlSdrFlutter.setMargin]. Each burst starts a new
+  /// frame with [SampleFrame.gap] set.
+  final int squelchThreshold;
+
+  /// the squelch closes below [squelchThreshold] - [squelchHysteresis]
+  final int squelchHysteresis;
+
+  /// number of samples in a row above the threshold which open the squelch
+  final int squelchAttack;
+
+  /// number of samples in a row below the closing level which close the squelch
+  final int squelchRelease;
+
+  /// number of samples sent before the attack of a burst
+  final int squelchPreTrigger;
+
+  /// number of samples sent after the release of a burst
+  final int squelchPostTrigger;
+
+  /// true if a replayed recording (a device named "replay ...") or a generated signal (a device named
+  /// "generator ...") is delivered at [samplerateHz] like a real device, false delivers it as fast as the consumers
+  /// can take it
+  final bool replayPaced;
+
+  /// true if a replayed recording starts again at its end instead of closing the device
+  final bool replayLoop;
+
+  /// the ratio of the power of a generated signal to the power of the noise in dB, between -30 and 60
+  final int generatorSnrDb;
+
+  /// the frequency of a generated tone and of the carrier of generated Mode-S bursts relative to the center
+  final int generatorOffsetHz;
+
   SdrArguments({
     this.gain = DEFAULT_GAIN,
     this.samplerateHz = DEFAULT_SAMPLING_RATE,
     this.frequencyHz = DEFAULT_FREQUENCY,
     this.ppm = DEFAULT_PPM,
     this.amplitudes = false,
+    this.bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE,
+    this.maxBatchBytes = DEFAULT_MAX_BATCH_BYTES,
+    this.maxBatchLatencyMs = DEFAULT_MAX_BATCH_LATENCY_MS,
+    this.queueSize = DEFAULT_QUEUE_SIZE,
+    this.overflowPolicy = DEFAULT_OVERFLOW_POLICY,
+    this.hackrfUsbRequests = DEFAULT_HACKRF_USB_REQUESTS,
+    this.hackrfTransferSize = DEFAULT_HACKRF_TRANSFER_SIZE,
+    this.hackrfBufferTimeMs = DEFAULT_HACKRF_BUFFER_TIME_MS,
+    this.tcpServer = false,
+    this.tcpAddress = DEFAULT_TCP_ADDRESS,
+    this.tcpPort = DEFAULT_TCP_PORT,
+    this.signedSamples = false,
+    this.tcpMaxClients = DEFAULT_TCP_MAX_CLIENTS,
+    this.tcpClientQueueSize = DEFAULT_TCP_CLIENT_QUEUE_SIZE,
+    this.asyncBufferCount = DEFAULT_ASYNC_BUFFER_COUNT,
+    this.asyncBufferLength = DEFAULT_ASYNC_BUFFER_LENGTH,
+    this.metricsIntervalMs = DEFAULT_METRICS_INTERVAL_MS,
+    this.sendSamples = true,
+    this.spectrumFftSize = DEFAULT_SPECTRUM_FFT_SIZE,
+    this.spectrumAverages = DEFAULT_SPECTRUM_AVERAGES,
+    this.spectrumWindow = DEFAULT_SPECTRUM_WINDOW,
+    this.channelDecimation = DEFAULT_CHANNEL_DECIMATION,
+    this.channelOffsetHz = 0,
+    this.channelTaps = DEFAULT_CHANNEL_TAPS,
+    this.demodulator = DEFAULT_DEMODULATOR,
+    this.deemphasisUs = DEFAULT_DEEMPHASIS_US,
+    this.modeS = false,
+    this.squelchThreshold = DEFAULT_SQUELCH_THRESHOLD,
+    this.squelchHysteresis = DEFAULT_SQUELCH_HYSTERESIS,
+    this.squelchAttack = DEFAULT_SQUELCH_ATTACK,
+    this.squelchRelease = DEFAULT_SQUELCH_RELEASE,
+    this.squelchPreTrigger = DEFAULT_SQUELCH_PRE_TRIGGER,
+    this.squelchPostTrigger = DEFAULT_SQUELCH_POST_TRIGGER,
+    this.replayPaced = true,
+    this.replayLoop = false,
+    this.generatorSnrDb = DEFAULT_GENERATOR_SNR_DB,
+    this.generatorOffsetHz = DEFAULT_GENERATOR_OFFSET_HZ,
   });
 }
@@ -0,0 +1,24 @@
+import 'dart:typed_data';
+
+/// An averaged power spectrum computed by the plugin, see [SdrArguments.spectrumFftSize].
+class Spectrum {
+  /// the power of each bin in dB relative to a full scale tone. The first bin is the lowest frequency, the center
+  /// frequency is in the middle.
+  final Float32List bins;
+
+  /// index of the first sample of the last frame within the stream of the device
+  final int sampleIndex;
+
+  /// the time in nanoseconds (android elapsedRealtimeNanos) when the last samples of the spectrum were received
+  final int timestampNanos;
+
+  Spectrum.fromMap(Map<dynamic, dynamic> map)
+      : bins = map["bins"],
+        sampleIndex = map["sampleIndex"],
+        timestampNanos = map["timestampNanos"];
+
+  @override
+  String toString() {
+    return 'Spectrum{bins: ${bins.length}, sampleIndex: $sampleIndex, timestampNanos: $timestampNanos}';
+  }
+}
@@ -0,0 +1,33 @@
+/// The state of a trigger capture started with [RtlSdrFlutter.startTriggerCapture].
+class TriggerCaptureStatus {
+  /// false as soon as the trigger capture was stopped
+  final bool capturing;
+
+  /// the path of the dumps without the number and the extension
+  final String prefix;
+
+  /// the size of the circular buffer outside of the java heap
+  final int bufferBytes;
+
+  /// true while a dump is written
+  final bool dumping;
+
+  /// the paths of the dumps, prefix_trigger_000.cu8 and so on (.u8 for amplitudes), each with its .sigmf-meta
+  final List<String> dumps;
+
+  /// the reason why the last failed dump failed, null if none failed
+  final String? error;
+
+  TriggerCaptureStatus.fromMap(Map<dynamic, dynamic> map)
+      : capturing = map["capturing"],
+        prefix = map["prefix"],
+        bufferBytes = map["bufferBytes"],
+        dumping = map["dumping"],
+        dumps = List<String>.from(map["dumps"]),
+        error = map["error"];
+
+  @override
+  String toString() {
+    return 'TriggerCaptureStatus{capturing: $capturing, prefix: $prefix, bufferBytes: $bufferBytes, dumping: $dumping, dumps: ${dumps.length}, error: $error}';
+  }
+}
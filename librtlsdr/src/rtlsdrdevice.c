@@ -25,6 +25,7 @@
 #include "SdrException.h"
 #include <string.h>
 #include <math.h>
+#include <time.h>
 
 #define RUN_OR(command, exit_command) { \
     int cmd_result = command; \
@@ -36,21 +37,64 @@
 
 #define RUN_OR_GOTO(command, label) RUN_OR(command, goto label);
 
+/// the buffer length librtlsdr uses if rtlsdr_read_async is called with buf_len 0
+#define DEFAULT_ASYNC_BUF_LENGTH (16 * 32 * 512)
+
 /// a structure which holds the data necessary to identify the underlying device. This structure is
 /// handled to java and sent back and forth for most of the calls.
 typedef struct rtlsdr_android {
     rtlsdr_dev_t *rtl_dev;
     jclass instance;
-    /// if not zero, the packets will be trimmed by all items which are not exceeding the amplitude specified by this margin.
-    /// no packet will be sent if the whole packet does not exceed the specified amplitude
-    int margin;
     u_int8_t *maglut;
+    /// the direct buffers registered by java (see registerBuffers). If slot_count is not zero the data are
+    /// copied into the next free slot instead of a newly allocated byte array.
+    int slot_count;
+    uint32_t slot_capacity;
+    uint8_t **slot_addr;
+    /// 1 if the slot is filled and not yet released by java. Accessed atomically from both threads.
+    int *slot_busy;
+    int next_slot;
+    /// number of packets dropped because java still held the next slot. Written by the usb thread, read atomically
+    /// by java, see getDroppedSlots.
+    uint64_t dropped_slots;
+    /// the environment of the thread which runs rtlsdr_read_async. The callbacks are executed in this thread and
+    /// the thread stays attached to the jvm for the whole session, see bind_java.
+    JNIEnv *env;
+    /// global reference to the class of instance, it keeps the cached method ids valid
+    jclass clazz;
+    jmethodID data_received;
+    jmethodID data_received_debug;
+    jmethodID buffer_received;
+    /// scratch buffer for the amplitudes of one packet, allocated when the device is opened
+    uint8_t *mag_buf;
+    uint32_t mag_capacity;
+    /// number of usb buffers and of I/Q pairs received since rtlsdr_read_async was started
+    uint64_t sequence;
+    uint64_t sample_index;
 } rtlsdr_android_t;
 
-void send_to_java(rtlsdr_android_t *dev, unsigned char *buf, uint32_t len, void *pointer);
+/// describes the data of one usb buffer which are sent to java
+typedef struct packet_meta {
+    /// number of the usb buffer, buffers which are dropped or trimmed completely leave a gap
+    uint64_t sequence;
+    /// index of the first sent I/Q pair within the stream of the device
+    uint64_t sample_index;
+    /// CLOCK_BOOTTIME (android's elapsedRealtimeNanos) in nanoseconds when the usb buffer was completed
+    int64_t timestamp;
+} packet_meta_t;
+
+void send_to_java(rtlsdr_android_t *dev, unsigned char *buf, uint32_t len, const packet_meta_t *meta);
 
 void send_to_javaDebug(rtlsdr_android_t *dev, unsigned char *buf, uint32_t len, void *pointer, unsigned char *debugBuf);
 
+void send_to_slot(rtlsdr_android_t *dev, unsigned char *buf, uint32_t len, const packet_meta_t *meta);
+
+void release_slots(rtlsdr_android_t *dev);
+
+int bind_java(rtlsdr_android_t *dev);
+
+void unbind_java(rtlsdr_android_t *dev, int resultFromBindJava);
+
 void closeAsync(JNIEnv *env, rtlsdr_android_t *dev);
 
 #define WITH_DEV(x) rtlsdr_android_t* x = (rtlsdr_android_t*) pointer
@@ -133,136 +177,155 @@ void prepare_amplitude_calculation(jlong pointer) {
 
 }
 
+/// makes sure the scratch buffer for the amplitudes holds at least capacity bytes. Called when the device is
+/// opened so the callback does not allocate memory. Returns 0 on success.
+static int ensure_mag_buf(rtlsdr_android_t *dev, uint32_t capacity) {
+    if (dev->mag_capacity >= capacity) return 0;
+    uint8_t *mag_buf = realloc(dev->mag_buf, capacity);
+    if (mag_buf == NULL) {
+        LOGI("ERROR: Failed to allocate %u bytes for the amplitudes", capacity);
+        return -1;
+    }
+    dev->mag_buf = mag_buf;
+    dev->mag_capacity = capacity;
+    return 0;
+}
+
+/// computes the amplitudes of the I/Q pairs in buf into the scratch buffer of the device. Returns the number of
+/// amplitudes. Quiet samples are removed in java by the squelch, which also sees across the buffer boundaries.
+static uint32_t magnitude(rtlsdr_android_t *dev, const uint8_t *lut, const unsigned char *buf, uint32_t len) {
+    uint8_t *out = dev->mag_buf;
+    uint32_t pairs = len / 2;
+    for (uint32_t i = 0; i < pairs; ++i) {
+        out[i] = lut[(buf[2 * i] << 8) | buf[2 * i + 1]];
+    }
+    return pairs;
+}
+
 /// called whenever data are received from the stick. It will call dataRevceived from java in turn.
 void rtlsdr_callback(unsigned char *buf, uint32_t len, void *pointer) {
     WITH_DEV(dev);
     if (dev->rtl_dev == NULL) return;
 
-    if (dev->maglut != NULL) {
-        // calculate the amplitudes
-        unsigned char *buf2 = malloc(len / 2);
-        unsigned char *m = buf2;
-        for (int i = 0; i < len; i += 2) {
-            *m++ = (dev->maglut[buf[i] * 256 + buf[i + 1]]);
-        }
-        len = len / 2;
-        if (dev->margin > 0) {
-            // User wants to trim the amplitudes by margin, remove them now
-            uint32_t firstIndex = 0;
-            int found = 0;
-            for (uint32_t i = 0; i < len; ++i) {
-                if (buf2[i] > dev->margin) {
-                    firstIndex = i;
-                    found = 1;
-                    break;
-                }
-            }
-            if (found) {
-                // if the loop does not find any amplitude exceeding the margin we take the firstIndex IQ tuple only.
-                uint32_t lastIndex = firstIndex;
-                for (uint32_t i = len - 1; i > firstIndex; --i) {
-                    if (buf2[i] > dev->margin) {
-                        lastIndex = i;
-                        break;
-                    }
-                }
-                // send remaining items towards flutter
-                len = lastIndex - firstIndex + 1;
-                send_to_java(dev, buf2 + firstIndex, len, pointer);
-                free(buf2);
-                return;
-            } else {
-                // no relevant data, do not send it
-                free(buf2);
-                return;
-            }
-        }
-        send_to_java(dev, buf2, len, pointer);
-        //send_to_javaDebug(dev, buf2, len, pointer, buf);
-        free(buf2);
+    // the buffer is counted and stamped before anything else, even if it is not sent at all
+    struct timespec now;
+    clock_gettime(CLOCK_BOOTTIME, &now);
+    packet_meta_t meta;
+    meta.timestamp = (int64_t) now.tv_sec * 1000000000LL + now.tv_nsec;
+    meta.sequence = dev->sequence++;
+    meta.sample_index = dev->sample_index;
+    dev->sample_index += len / 2;
+
+    uint8_t *lut = dev->maglut;
+    if (lut != NULL) {
+        // the scratch buffer is sized when the device is opened, this only grows it if the driver delivers more
+        if (ensure_mag_buf(dev, len / 2) != 0) return;
+        uint32_t count = magnitude(dev, lut, buf, len);
+        send_to_java(dev, dev->mag_buf, count, &meta);
         return;
     }
 
-    if (dev->margin == 0) {
-        // raw I/Q data
-        send_to_java(dev, buf, len, pointer);
-        return;
-    }
+    // raw I/Q data
+    send_to_java(dev, buf, len, &meta);
+}
 
-    uint32_t firstIndex = 0;
-    int found = 0;
-    for (uint32_t i = 0; i < len; i += 2) {
-        if (buf[i] < 127 - dev->margin || buf[i] > 127 + dev->margin) {
-            firstIndex = i;
-            found = 1;
-            break;
-        }
-        if (buf[i + 1] < 127 - dev->margin || buf[i + 1] > 127 + dev->margin) {
-            firstIndex = i;
-            found = 1;
-            break;
-        }
-    }
-    if (found) {
-        // if the loop does not find any amplitude exceeding the margin we take the firstIndex IQ tuple only.
-        uint32_t lastIndex = firstIndex;
-        for (uint32_t i = len - 2; i > firstIndex; i -= 2) {
-            if (buf[i] < 127 - dev->margin || buf[i] > 127 + dev->margin) {
-                lastIndex = i;
-                break;
-            }
-            if (buf[i + 1] < 127 - dev->margin || buf[i + 1] > 127 + dev->margin) {
-                lastIndex = i;
-                break;
-            }
-        }
-        // send remaining items towards flutter
-        len = lastIndex - firstIndex + 2;
-        send_to_java(dev, buf + firstIndex, len, pointer);
-        return;
-    } else {
-        // no relevant data, do not send it
+void send_to_java(rtlsdr_android_t *dev, unsigned char *buf, uint32_t len, const packet_meta_t *meta) {
+    if (dev->slot_count > 0 && len <= dev->slot_capacity) {
+        send_to_slot(dev, buf, len, meta);
         return;
     }
-
-}
-
-void send_to_java(rtlsdr_android_t *dev, unsigned char *buf, uint32_t len, void *pointer) {
-    JNIEnv *env;
-    int res = attachThread(&env);
+    JNIEnv *env = dev->env;
     jbyteArray jData = (*env)->NewByteArray(env, (jsize) len);
     if (!jData) return;
     (*env)->SetByteArrayRegion(env, jData, 0, (jsize) len, (jbyte *) buf);
 
-    jclass clazz = (*env)->GetObjectClass(env, dev->instance);
-    jmethodID dataRead = (*env)->GetMethodID(env, clazz, "dataReceived", "([BI)V");
-
-    (*env)->CallVoidMethod(env, dev->instance, dataRead, jData, (jint) len);
+    (*env)->CallVoidMethod(env, dev->instance, dev->data_received, jData, (jint) len, (jlong) meta->sequence,
+                           (jlong) meta->sample_index, (jlong) meta->timestamp);
     (*env)->DeleteLocalRef(env, jData);
-    detatchThread(res);
+}
+
+/// copies the data into the next slot of the buffer pool and tells java which slot is filled. Java hands the slot
+/// back with releaseBuffer. If java still holds the slot the packet is dropped, we never block the usb thread.
+void send_to_slot(rtlsdr_android_t *dev, unsigned char *buf, uint32_t len, const packet_meta_t *meta) {
+    int slot = dev->next_slot;
+    if (__atomic_load_n(&dev->slot_busy[slot], __ATOMIC_ACQUIRE)) {
+        __atomic_fetch_add(&dev->dropped_slots, 1, __ATOMIC_RELAXED);
+        return;
+    }
+    memcpy(dev->slot_addr[slot], buf, len);
+    __atomic_store_n(&dev->slot_busy[slot], 1, __ATOMIC_RELEASE);
+    dev->next_slot = (slot + 1) % dev->slot_count;
+
+    JNIEnv *env = dev->env;
+    (*env)->CallVoidMethod(env, dev->instance, dev->buffer_received, (jint) slot, (jint) len,
+                           (jlong) meta->sequence, (jlong) meta->sample_index, (jlong) meta->timestamp);
+}
+
+void release_slots(rtlsdr_android_t *dev) {
+    dev->slot_count = 0;
+    dev->slot_capacity = 0;
+    dev->next_slot = 0;
+    if (dev->slot_addr != NULL) {
+        free(dev->slot_addr);
+        dev->slot_addr = NULL;
+    }
+    if (dev->slot_busy != NULL) {
+        free(dev->slot_busy);
+        dev->slot_busy = NULL;
+    }
 }
 
 void send_to_javaDebug(rtlsdr_android_t *dev, unsigned char *buf, uint32_t len, void *pointer, unsigned char *debugBuf) {
-    JNIEnv *env;
-    int res = attachThread(&env);
+    JNIEnv *env = dev->env;
 
     jbyteArray jData = (*env)->NewByteArray(env, (jsize) len);
     if (!jData) return;
     (*env)->SetByteArrayRegion(env, jData, 0, (jsize) len, (jbyte *) buf);
 
     jbyteArray jDebugData = (*env)->NewByteArray(env, (jsize) len * 2);
-    if (!jDebugData) return;
+    if (!jDebugData) {
+        (*env)->DeleteLocalRef(env, jData);
+        return;
+    }
     (*env)->SetByteArrayRegion(env, jDebugData, 0, (jsize) len * 2, (jbyte *) debugBuf);
 
-    jclass clazz = (*env)->GetObjectClass(env, dev->instance);
-    jmethodID dataRead = (*env)->GetMethodID(env, clazz, "dataReceivedDebug", "([BI[B)V");
-
-    (*env)->CallVoidMethod(env, dev->instance, dataRead, jData, (jint) len, jDebugData);
+    (*env)->CallVoidMethod(env, dev->instance, dev->data_received_debug, jData, (jint) len, jDebugData);
 
     (*env)->DeleteLocalRef(env, jDebugData);
     (*env)->DeleteLocalRef(env, jData);
+}
 
-    detatchThread(res);
+/// resolves the java callbacks once per session and attaches the current thread to the jvm. librtlsdr calls
+/// rtlsdr_callback from the thread which executes rtlsdr_read_async, so the environment stays valid until
+/// unbind_java is called after rtlsdr_read_async returned. Returns the value for unbind_java or -1 on failure.
+int bind_java(rtlsdr_android_t *dev) {
+    JNIEnv *env;
+    int res = attachThread(&env);
+    if (res == 0) return -1;
+
+    jclass clazz = (*env)->GetObjectClass(env, dev->instance);
+    dev->clazz = (jclass) (*env)->NewGlobalRef(env, clazz);
+    (*env)->DeleteLocalRef(env, clazz);
+    dev->data_received = (*env)->GetMethodID(env, dev->clazz, "dataReceived", "([BIJJJ)V");
+    dev->data_received_debug = (*env)->GetMethodID(env, dev->clazz, "dataReceivedDebug", "([BI[B)V");
+    dev->buffer_received = (*env)->GetMethodID(env, dev->clazz, "bufferReceived", "(IIJJJ)V");
+    if ((*env)->ExceptionCheck(env)) {
+        (*env)->DeleteGlobalRef(env, dev->clazz);
+        dev->clazz = NULL;
+        detatchThread(res);
+        return -1;
+    }
+    dev->env = env;
+    return res;
+}
+
+void unbind_java(rtlsdr_android_t *dev, int resultFromBindJava) {
+    if (dev->clazz != NULL) {
+        (*dev->env)->DeleteGlobalRef(dev->env, dev->clazz);
+        dev->clazz = NULL;
+    }
+    dev->env = NULL;
+    detatchThread(resultFromBindJava);
 }
 
 JNIEXPORT jboolean JNICALL
@@ -272,6 +335,8 @@ Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_openAsync(JNIEnv
                                                                          jlong samplingrate,
                                                                          jlong frequency, jint ppm,
                                                                          int amplitude,
+                                                                         jint buf_num,
+                                                                         jint buf_len,
                                                                          jstring device_path) {
     WITH_DEV(dev);
     const char *devicePath = (*env)->GetStringUTFChars(env, device_path, 0);
@@ -328,11 +393,25 @@ Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_openAsync(JNIEnv
     EXCEPT_SAFE_NUM(
             jmethodID announceOnOpen = (*env)->GetMethodID(env, clazz, "announceOnOpen", "()V"));
     EXCEPT_DO((*env)->CallVoidMethod(env, thiz, announceOnOpen), succesful = 0);
-    if (rtlsdr_read_async(device, rtlsdr_callback, (void *) dev, 0, 0)) {
-        LOGI("rtlsdr_read_async failed");
+    // one amplitude per I/Q pair of a buffer, zero means the default of librtlsdr
+    uint32_t async_buf_len = buf_len > 0 ? (uint32_t) buf_len : DEFAULT_ASYNC_BUF_LENGTH;
+    if (ensure_mag_buf(dev, async_buf_len / 2) != 0) succesful = 0;
+    dev->sequence = 0;
+    dev->sample_index = 0;
+    int bound = succesful ? bind_java(dev) : -1;
+    if (bound < 0) {
+        LOGI("ERROR: Failed to bind the java callbacks");
         succesful = 0;
-    } else
-        LOGI("rtlsdr_read_async finished successfully");
+    } else {
+        LOGI("rtlsdr_read_async with %d buffers of %u bytes", buf_num, async_buf_len);
+        if (rtlsdr_read_async(device, rtlsdr_callback, (void *) dev, buf_num > 0 ? (uint32_t) buf_num : 0,
+                              buf_len > 0 ? (uint32_t) buf_len : 0)) {
+            LOGI("rtlsdr_read_async failed");
+            succesful = 0;
+        } else
+            LOGI("rtlsdr_read_async finished successfully");
+        unbind_java(dev, bound);
+    }
 
     /// will be called from java anyway
 //    EXCEPT_SAFE_NUM(
@@ -344,11 +423,7 @@ Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_openAsync(JNIEnv
     if (device) {
         rtlsdr_close(device);
     }
-    if (dev->maglut != NULL) {
-        free(dev->maglut);
-    }
-    (*env)->DeleteGlobalRef(env, dev->instance);
-    free((void *) dev);
+    // java may still hold slots and release them later, dev and the slots are freed by dispose
 
     (*env)->ReleaseStringUTFChars(env, device_path, devicePath);
 
@@ -372,22 +447,100 @@ Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_initialize(JNIEnv
     rtlsdr_android_t *ptr = malloc(sizeof(rtlsdr_android_t));
     ptr->rtl_dev = NULL;
     ptr->instance = (*env)->NewGlobalRef(env, instance);
-    ptr->margin = 0;
     ptr->maglut = NULL;
+    ptr->slot_count = 0;
+    ptr->slot_capacity = 0;
+    ptr->slot_addr = NULL;
+    ptr->slot_busy = NULL;
+    ptr->next_slot = 0;
+    ptr->dropped_slots = 0;
+    ptr->env = NULL;
+    ptr->clazz = NULL;
+    ptr->data_received = NULL;
+    ptr->data_received_debug = NULL;
+    ptr->buffer_received = NULL;
+    ptr->mag_buf = NULL;
+    ptr->mag_capacity = 0;
     //prepare_amplitude_calculation(ptr);
     return (jlong) ptr;
 }
 
+/// registers the direct buffers the data should be delivered in. Must be called before openAsync.
+JNIEXPORT jboolean JNICALL
+Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_registerBuffers(JNIEnv *env,
+                                                                               jobject thiz,
+                                                                               jlong pointer,
+                                                                               jobjectArray buffers) {
+    WITH_DEV(dev);
+    release_slots(dev);
+    jsize count = (*env)->GetArrayLength(env, buffers);
+    if (count <= 0) return JNI_TRUE;
+
+    uint8_t **slot_addr = malloc(sizeof(uint8_t *) * count);
+    uint32_t capacity = UINT32_MAX;
+    for (jsize i = 0; i < count; ++i) {
+        jobject buffer = (*env)->GetObjectArrayElement(env, buffers, i);
+        slot_addr[i] = (uint8_t *) (*env)->GetDirectBufferAddress(env, buffer);
+        jlong bufferCapacity = (*env)->GetDirectBufferCapacity(env, buffer);
+        (*env)->DeleteLocalRef(env, buffer);
+        if (slot_addr[i] == NULL || bufferCapacity <= 0) {
+            LOGI("ERROR: buffer %d is not a direct buffer", i);
+            free(slot_addr);
+            return JNI_FALSE;
+        }
+        if ((uint32_t) bufferCapacity < capacity) capacity = (uint32_t) bufferCapacity;
+    }
+
+    dev->slot_addr = slot_addr;
+    dev->slot_busy = calloc((size_t) count, sizeof(int));
+    dev->slot_capacity = capacity;
+    dev->next_slot = 0;
+    dev->slot_count = count;
+    return JNI_TRUE;
+}
+
+/// java is done with the data in the slot, it may be filled again
+JNIEXPORT void JNICALL
+Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_releaseBuffer(
+        __attribute__((unused)) JNIEnv *env,
+        __attribute__((unused)) jobject thiz,
+        jlong pointer,
+        jint slot) {
+    WITH_DEV(dev);
+    if (slot < 0 || slot >= dev->slot_count) return;
+    __atomic_store_n(&dev->slot_busy[slot], 0, __ATOMIC_RELEASE);
+}
+
+/// the number of packets dropped since the device was initialized because java still held the next slot
+JNIEXPORT jlong JNICALL
+Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_getDroppedSlots(
+        __attribute__((unused)) JNIEnv *env,
+        __attribute__((unused)) jobject thiz,
+        jlong pointer) {
+    WITH_DEV(dev);
+    return (jlong) __atomic_load_n(&dev->dropped_slots, __ATOMIC_RELAXED);
+}
+
+/// frees dev after openAsync returned. Java must not use the pointer afterwards, also not for releaseBuffer.
 JNIEXPORT void JNICALL
 Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_dispose(JNIEnv *env,
                                                                        jobject instance,
                                                                        jlong pointer) {
     WITH_DEV(dev);
     if (dev->rtl_dev != NULL) {
-        rtlsdr_dev_t *device = dev->rtl_dev;
+        // openAsync returned early, e.g. due to an exception of announceOnOpen
+        rtlsdr_close(dev->rtl_dev);
         dev->rtl_dev = NULL;
-        rtlsdr_cancel_async(device);
     }
+    if (dev->maglut != NULL) {
+        free(dev->maglut);
+    }
+    if (dev->mag_buf != NULL) {
+        free(dev->mag_buf);
+    }
+    release_slots(dev);
+    (*env)->DeleteGlobalRef(env, dev->instance);
+    free((void *) dev);
 }
 
 JNIEXPORT void JNICALL
@@ -574,14 +727,55 @@ Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_setTunergainByPer
     return (jboolean) JNI_TRUE;
 }
 
-//case TCP_SET_IF_TUNER_GAIN:
-//rtlsdr_set_tuner_if_gain(dev->rtl_dev, cmd->parameter >> 16,
-//(short) (cmd->parameter & 0xffff));
-//break;
-//case TCP_ANDROID_EXIT:
-//LOGI("tcpCommandCallback: client requested to close rtl_tcp_andro");
-//sdrtcp_stop_serving_client(tcpserv);
-//break;
+/// the argument of TCP_SET_IF_TUNER_GAIN holds the stage in the upper and the gain in the lower 16 bits
+JNIEXPORT jboolean JNICALL
+Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_setIfTunerGain(
+        __attribute__((unused)) JNIEnv *env,
+        __attribute__((unused)) jobject thiz,
+        jlong pointer, jint stage, jint gain) {
+    WITH_DEV(dev);
+    return rtlsdr_set_tuner_if_gain(dev->rtl_dev, stage, gain) < 0 ? (jboolean) JNI_FALSE : (jboolean) JNI_TRUE;
+}
+
+/// TCP_SET_GAIN_MODE: 0 is automatic, 1 is manual gain
+JNIEXPORT jboolean JNICALL
+Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_setTunerGainModeOnly(
+        __attribute__((unused)) JNIEnv *env,
+        __attribute__((unused)) jobject thiz,
+        jlong pointer, jint manual) {
+    WITH_DEV(dev);
+    return rtlsdr_set_tuner_gain_mode(dev->rtl_dev, manual) < 0 ? (jboolean) JNI_FALSE : (jboolean) JNI_TRUE;
+}
+
+/// TCP_SET_GAIN: the gain in tenths of a dB, the gain mode is left as it is
+JNIEXPORT jboolean JNICALL
+Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_setTunerGainOnly(
+        __attribute__((unused)) JNIEnv *env,
+        __attribute__((unused)) jobject thiz,
+        jlong pointer, jint gain) {
+    WITH_DEV(dev);
+    return rtlsdr_set_tuner_gain(dev->rtl_dev, gain) < 0 ? (jboolean) JNI_FALSE : (jboolean) JNI_TRUE;
+}
+
+/// the tuner type as sent in the rtl_tcp dongle info, see enum rtlsdr_tuner
+JNIEXPORT jint JNICALL
+Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_getTunerType(
+        __attribute__((unused)) JNIEnv *env,
+        __attribute__((unused)) jobject thiz,
+        jlong pointer) {
+    WITH_DEV(dev);
+    return (jint) rtlsdr_get_tuner_type(dev->rtl_dev);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_getTunerGainCount(
+        __attribute__((unused)) JNIEnv *env,
+        __attribute__((unused)) jobject thiz,
+        jlong pointer) {
+    WITH_DEV(dev);
+    int count = rtlsdr_get_tuner_gains(dev->rtl_dev, NULL);
+    return count < 0 ? 0 : count;
+}
 
 JNIEXPORT jlong JNICALL
 Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_getRtlXtalFreq(
@@ -688,26 +882,6 @@ Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_getSamplingrate(
 }
 
 
-JNIEXPORT jint JNICALL
-Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_getMargin(
-        __attribute__((unused)) JNIEnv *env,
-        __attribute__((unused)) jobject thiz,
-        jlong pointer) {
-    WITH_DEV(dev);
-    return dev->margin;
-}
-
-JNIEXPORT jboolean JNICALL
-Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_setMargin(
-        __attribute__((unused)) JNIEnv *env,
-        __attribute__((unused)) jobject thiz,
-        jlong pointer,
-        jint margin) {
-    WITH_DEV(dev);
-    dev->margin = margin;
-    return JNI_TRUE;
-}
-
 JNIEXPORT jboolean JNICALL
 Java_com_mschwartz_rtl_1sdr_1flutter_rtlsdrdevice_RtlSdrDevice_setAmplitude(JNIEnv *env,
                                                                             jobject thiz,
@@ -4,6 +4,13 @@ import 'package:rtl_sdr_flutter/rtl_sdr_flutter_platform_interface.dart';
 import 'package:rtl_sdr_flutter/rtl_sdr_flutter_method_channel.dart';
 import 'package:plugin_platform_interface/plugin_platform_interface.dart';
 import 'package:rtl_sdr_flutter/sdrarguments.dart';
+import 'package:rtl_sdr_flutter/devicemetrics.dart';
+import 'package:rtl_sdr_flutter/dropstatistics.dart';
+import 'package:rtl_sdr_flutter/modesmessage.dart';
+import 'package:rtl_sdr_flutter/recordingstatus.dart';
+import 'package:rtl_sdr_flutter/sampleframe.dart';
+import 'package:rtl_sdr_flutter/spectrum.dart';
+import 'package:rtl_sdr_flutter/triggercapturestatus.dart';
 
 class MockRtlSdrFlutterPlatform
     with MockPlatformInterfaceMixin
@@ -53,6 +60,12 @@ class MockRtlSdrFlutterPlatform
     throw UnimplementedError();
   }
 
+  @override
+  Future<void> enableGeneratorDevices(bool enabled) {
+    // TODO: implement enableGeneratorDevices
+    throw UnimplementedError();
+  }
+
   @override
   Future<int> getFrequency() {
     // TODO: implement getFrequency
@@ -118,6 +131,90 @@ class MockRtlSdrFlutterPlatform
     // TODO: implement setAmplitude
     throw UnimplementedError();
   }
+
+  @override
+  Stream<SampleFrame> listenSamples() {
+    // TODO: implement listenSamples
+    throw UnimplementedError();
+  }
+
+  @override
+  Stream<Spectrum> listenSpectrum() {
+    // TODO: implement listenSpectrum
+    throw UnimplementedError();
+  }
+
+  @override
+  Stream<ModeSMessage> listenModeS() {
+    // TODO: implement listenModeS
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<DropStatistics> getDropStatistics() {
+    // TODO: implement getDropStatistics
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<Map<String, int>> suggestAsyncBuffers(int samplerateHz, int targetLatencyMs) {
+    // TODO: implement suggestAsyncBuffers
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<DeviceMetrics> getMetrics() {
+    // TODO: implement getMetrics
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<void> setDemodulator(DemodulatorMode mode, int offsetHz, int deemphasisUs) {
+    // TODO: implement setDemodulator
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<String> startRecording(String? prefix, int segmentBytes, int maxBytes, int maxDurationMs) {
+    // TODO: implement startRecording
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<RecordingStatus?> stopRecording() {
+    // TODO: implement stopRecording
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<RecordingStatus?> getRecordingStatus() {
+    // TODO: implement getRecordingStatus
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<String> startTriggerCapture(String? prefix, int preTriggerMs, int postTriggerMs, bool squelchTrigger) {
+    // TODO: implement startTriggerCapture
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<String?> trigger() {
+    // TODO: implement trigger
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<TriggerCaptureStatus?> stopTriggerCapture() {
+    // TODO: implement stopTriggerCapture
+    throw UnimplementedError();
+  }
+
+  @override
+  Future<TriggerCaptureStatus?> getTriggerCaptureStatus() {
+    // TODO: implement getTriggerCaptureStatus
+    throw UnimplementedError();
+  }
 }
 
 void main() {